@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with full jitter: the delay before the nth retry is
+ * drawn uniformly up to base * 2^(n-1), capped. Clients that lost the same
+ * block to each other spread their retries instead of colliding again.
+ */
+public final class Backoff {
+
+    private final long baseMillis;
+    private final long capMillis;
+    private final Random random;
+
+    public Backoff(long baseMillis, long capMillis, Random random) {
+        if (baseMillis <= 0 || capMillis < baseMillis) {
+            throw new RuntimeException("The backoff needs a positive base no larger than its cap");
+        }
+        this.baseMillis = baseMillis;
+        this.capMillis = capMillis;
+        this.random = random;
+    }
+
+    public Backoff(long baseMillis, long capMillis) {
+        this(baseMillis, capMillis, new Random());
+    }
+
+    /**
+     * @param retry 1 for the first retry
+     */
+    public long delayMillis(int retry) {
+        long ceiling = capMillis;
+        int shift = retry - 1;
+        if (shift < Long.numberOfLeadingZeros(baseMillis) - 1) {
+            ceiling = Math.min(capMillis, baseMillis << shift);
+        }
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+/**
+ * How the block that holds a transaction validated it.
+ */
+public final class Commit {
+
+    public static final String VALID = "VALID";
+    public static final String MVCC_READ_CONFLICT = "MVCC_READ_CONFLICT";
+    public static final String PHANTOM_READ_CONFLICT = "PHANTOM_READ_CONFLICT";
+
+    private final String txId;
+    private final long blockNumber;
+    private final String validationCode;
+    private final String result;
+
+    public Commit(String txId, long blockNumber, String validationCode, String result) {
+        this.txId = txId;
+        this.blockNumber = blockNumber;
+        this.validationCode = validationCode;
+        this.result = result;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public String getValidationCode() {
+        return validationCode;
+    }
+
+    /**
+     * @return what the transaction returned when it was endorsed
+     */
+    public String getResult() {
+        return result;
+    }
+
+    public boolean isValid() {
+        return VALID.equals(validationCode);
+    }
+
+    /**
+     * A conflict is lost to a transaction earlier in the same or a previous
+     * block, resubmitting it endorses it again against the new state.
+     */
+    public boolean isConflict() {
+        return MVCC_READ_CONFLICT.equals(validationCode) || PHANTOM_READ_CONFLICT.equals(validationCode);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [txId=" + txId + ", block=" + blockNumber
+                + ", validationCode=" + validationCode + "]";
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What a transaction reads and writes, at the grain the contract conflicts
+ * on: a symbol, whose book every new order of the symbol scans, a trader
+ * and an order. Two transactions whose footprints share a
+ * resource invalidate each other when they land in the same block.
+ * {@link #ALL} stands for a transaction whose footprint is not known from
+ * its arguments, it conflicts with every other.
+ */
+public final class Footprint {
+
+    public static final Footprint NONE = new Footprint(Collections.emptySet(), false);
+    public static final Footprint ALL = new Footprint(Collections.emptySet(), true);
+
+    private final Set<String> resources;
+    private final boolean all;
+
+    private Footprint(Set<String> resources, boolean all) {
+        this.resources = resources;
+        this.all = all;
+    }
+
+    public Footprint symbol(String symbol) {
+        return with("symbol~" + symbol);
+    }
+
+    public Footprint trader(String hin) {
+        return hin == null || hin.isEmpty() ? this : with("trader~" + hin);
+    }
+
+    public Footprint order(String orderId) {
+        return with("order~" + orderId);
+    }
+
+    public Footprint and(Footprint other) {
+        if (all || other.all) {
+            return ALL;
+        }
+        Set<String> union = new TreeSet<>(resources);
+        union.addAll(other.resources);
+        return new Footprint(Collections.unmodifiableSet(union), false);
+    }
+
+    private Footprint with(String resource) {
+        if (all) {
+            return this;
+        }
+        Set<String> union = new TreeSet<>(resources);
+        union.add(resource);
+        return new Footprint(Collections.unmodifiableSet(union), false);
+    }
+
+    public boolean conflictsWith(Footprint other) {
+        if (all || other.all) {
+            return true;
+        }
+        for (String resource : other.resources) {
+            if (resources.contains(resource)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public Set<String> getResources() {
+        return resources;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Footprint other = (Footprint) obj;
+        return all == other.all && resources.equals(other.resources);
+    }
+
+    @Override
+    public int hashCode() {
+        return all ? 1 : resources.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return all ? "Footprint [all]" : "Footprint " + resources;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.List;
+
+
+/**
+ * The footprints of the submit functions of the SecurityContract, from
+ * their arguments and the HIN of the caller. New orders conflict over the
+ * book of their symbol, which matching scans; settlements only over the
+ * traders and orders they share. Batches, migrations and functions not
+ * listed here are {@link Footprint#ALL}.
+ */
+public final class Footprints {
+
+    private Footprints() {
+    }
+
+    /**
+     * @param callerHin the HIN of the identity that submits, null if unknown
+     */
+    public static Footprint of(String function, List<String> args, String callerHin) {
+        Footprint caller = Footprint.NONE.trader(callerHin);
+        switch (function) {
+            case "createOrder":
+            case "createExpiringOrder":
+                return caller.order(arg(args, 0)).symbol(arg(args, 2));
+            case "cancelOrder":
+                // The symbol of the order is not an argument
+                return Footprint.ALL;
+            case "createPrivateOrder":
+            case "cancelPrivateOrder":
+                // The terms are transient and private orders stay out of the book
+                return caller.order(arg(args, 0));
+            case "settleOrder":
+                return caller.order(arg(args, 0)).order(arg(args, 1)).trader(arg(args, 7));
+            case "settleOrders":
+                // The fills name their orders but not the owners whose cash and positions they move
+                return Footprint.ALL;
+            case "changeBalances":
+                return Footprint.NONE.trader(arg(args, 1)).trader(arg(args, 2));
+            case "expireOrders":
+            case "compactCandles":
+            case "migrateSecurity":
+                return Footprint.NONE.symbol(arg(args, 0));
+            case "createSecurity":
+            case "listSecurity":
+            case "deleteSecurity":
+                return caller.symbol(arg(args, 0));
+            case "buyFromIssuer":
+                // Sales draw from the inventory shard of their transaction id, which is not known
+                // before submission, so they only conflict over the buyer or when the shards collide
+                return callerHin == null ? Footprint.ALL : caller;
+            case "compactBalance":
+                return Footprint.NONE.trader(arg(args, 0));
+            case "createTrader":
+            case "removeMyTrader":
+            case "setBalanceMode":
+                return callerHin == null ? Footprint.ALL : caller;
+            default:
+                return Footprint.ALL;
+        }
+    }
+
+    private static String arg(List<String> args, int index) {
+        if (index >= args.size()) {
+            throw new RuntimeException("Expected at least " + (index + 1) + " arguments but got " + args.size());
+        }
+        return args.get(index);
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Submits transactions to the network: endorses, orders and waits for the
+ * block that validates them. A transaction that fails endorsement completes
+ * exceptionally; once ordered it completes with its {@link Commit}, valid or
+ * not.
+ */
+public interface Gateway {
+
+    CompletableFuture<Commit> submit(String function, List<String> args);
+}
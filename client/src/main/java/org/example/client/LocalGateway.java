@@ -0,0 +1,152 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * A stand-in for a Fabric gateway and its network, for testing clients
+ * without one. It keeps a version per key and follows execute-order-validate:
+ * a transaction reads the versions of its keys when it is submitted and
+ * waits for a block, which is cut once it holds blockSize transactions or
+ * batchTimeout after its first. Validating a block in order, a transaction
+ * whose keys changed since it read them is an {@link Commit#MVCC_READ_CONFLICT},
+ * any other is valid and takes the next version of its keys.
+ */
+public final class LocalGateway implements Gateway, AutoCloseable {
+
+    private final BiFunction<String, List<String>, Collection<String>> keys;
+    private final BiFunction<String, List<String>, String> chaincode;
+    private final int blockSize;
+    private final long batchTimeoutMillis;
+    private final ScheduledExecutorService orderer;
+
+    private final Map<String, Long> versions = new HashMap<>();
+    private final List<Endorsed> block = new ArrayList<>();
+    private long height;
+    private long txCounter;
+    private long valid;
+    private long invalid;
+
+    /**
+     * @param keys      the keys a transaction reads and writes
+     * @param chaincode what a transaction returns; throwing fails its endorsement
+     */
+    public LocalGateway(BiFunction<String, List<String>, Collection<String>> keys, BiFunction<String, List<String>, String> chaincode,
+            int blockSize, long batchTimeoutMillis) {
+        this.keys = keys;
+        this.chaincode = chaincode;
+        this.blockSize = blockSize;
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        this.orderer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-orderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public LocalGateway(BiFunction<String, List<String>, Collection<String>> keys, int blockSize, long batchTimeoutMillis) {
+        this(keys, (function, args) -> "", blockSize, batchTimeoutMillis);
+    }
+
+    @Override
+    public CompletableFuture<Commit> submit(String function, List<String> args) {
+        CompletableFuture<Commit> future = new CompletableFuture<>();
+        String result;
+        try {
+            result = chaincode.apply(function, args);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        synchronized (this) {
+            Map<String, Long> reads = new LinkedHashMap<>();
+            for (String key : keys.apply(function, args)) {
+                reads.put(key, versions.getOrDefault(key, 0L));
+            }
+            block.add(new Endorsed(String.format("%064x", ++txCounter), reads, result, future));
+            if (block.size() >= blockSize) {
+                cut(height);
+            } else if (block.size() == 1) {
+                long number = height;
+                orderer.schedule(() -> cut(number), batchTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Validates and commits the block being filled, if it is still the given one.
+     */
+    private synchronized void cut(long number) {
+        if (number != height || block.isEmpty()) {
+            return;
+        }
+        height++;
+        Map<Endorsed, Commit> commits = new LinkedHashMap<>();
+        for (Endorsed tx : block) {
+            boolean stale = false;
+            for (Map.Entry<String, Long> read : tx.reads.entrySet()) {
+                stale |= !read.getValue().equals(versions.getOrDefault(read.getKey(), 0L));
+            }
+            if (stale) {
+                invalid++;
+            } else {
+                valid++;
+                for (String key : tx.reads.keySet()) {
+                    versions.merge(key, 1L, Long::sum);
+                }
+            }
+            commits.put(tx, new Commit(tx.txId, height, stale ? Commit.MVCC_READ_CONFLICT : Commit.VALID, tx.result));
+        }
+        block.clear();
+        orderer.execute(() -> commits.forEach((tx, commit) -> tx.future.complete(commit)));
+    }
+
+    /**
+     * @return the number of blocks cut
+     */
+    public synchronized long getHeight() {
+        return height;
+    }
+
+    public synchronized long getValid() {
+        return valid;
+    }
+
+    public synchronized long getInvalid() {
+        return invalid;
+    }
+
+    @Override
+    public void close() {
+        orderer.shutdownNow();
+    }
+
+    private static final class Endorsed {
+
+        private final String txId;
+        private final Map<String, Long> reads;
+        private final String result;
+        private final CompletableFuture<Commit> future;
+
+        private Endorsed(String txId, Map<String, Long> reads, String result, CompletableFuture<Commit> future) {
+            this.txId = txId;
+            this.reads = reads;
+            this.result = result;
+            this.future = future;
+        }
+    }
+}
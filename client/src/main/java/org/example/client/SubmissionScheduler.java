@@ -0,0 +1,253 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits transactions through a {@link Gateway} so that they do not lose
+ * to each other in validation. A transaction is sent only once no
+ * transaction in flight shares its {@link Footprint}, so conflicting
+ * transactions are endorsed after the block of the one before them, while
+ * transactions that share nothing are in flight together, up to a limit.
+ * Transactions are sent in the order they were submitted among those that
+ * conflict; one that waits holds back every later one it conflicts with.
+ *
+ * <p>A conflict that still happens, because a footprint missed a key or
+ * another client wrote it, is resubmitted after a {@link Backoff} delay, in
+ * its original place in the order, up to a number of attempts. The future of
+ * a transaction completes with its last {@link Commit}, valid or not, or
+ * exceptionally if endorsement failed; those failures are not retried.
+ */
+public final class SubmissionScheduler implements AutoCloseable {
+
+    private final Gateway gateway;
+    private final String callerHin;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final ScheduledExecutorService timer;
+
+    private final TreeMap<Long, Pending> queue = new TreeMap<>();
+    private final List<Pending> inFlight = new ArrayList<>();
+    private long nextSequence;
+    private long wakeAt = Long.MAX_VALUE;
+
+    private long submitted;
+    private long committed;
+    private long conflicts;
+    private long retries;
+    private long failed;
+
+    /**
+     * @param callerHin   the HIN of the identity the gateway submits as, null if unknown
+     * @param maxInFlight how many transactions may wait for their blocks at once
+     * @param maxAttempts how many times a transaction is sent before its conflict is returned
+     */
+    public SubmissionScheduler(Gateway gateway, String callerHin, int maxInFlight, int maxAttempts, Backoff backoff) {
+        if (maxInFlight <= 0 || maxAttempts <= 0) {
+            throw new RuntimeException("The scheduler needs at least one transaction in flight and one attempt");
+        }
+        this.gateway = gateway;
+        this.callerHin = callerHin;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "submission-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Commit> submit(String function, String... args) {
+        return submit(function, Arrays.asList(args));
+    }
+
+    public CompletableFuture<Commit> submit(String function, List<String> args) {
+        return submit(Footprints.of(function, args, callerHin), function, args);
+    }
+
+    /**
+     * Submits a transaction whose footprint the caller knows better than
+     * {@link Footprints}, such as a cancellation with the symbol of its order.
+     */
+    public CompletableFuture<Commit> submit(Footprint footprint, String function, List<String> args) {
+        Pending pending = new Pending(footprint, function, new ArrayList<>(args));
+        synchronized (this) {
+            pending.sequence = nextSequence++;
+            queue.put(pending.sequence, pending);
+            submitted++;
+        }
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * Sends every queued transaction that is due and conflicts with nothing
+     * in flight or ahead of it.
+     */
+    private void dispatch() {
+        List<Pending> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            long wake = Long.MAX_VALUE;
+            List<Footprint> ahead = new ArrayList<>();
+            Iterator<Pending> waiting = queue.values().iterator();
+            while (waiting.hasNext() && inFlight.size() < maxInFlight) {
+                Pending pending = waiting.next();
+                boolean due = pending.notBefore - now <= 0;
+                if (due && !conflicts(pending.footprint, ahead) && !conflictsInFlight(pending.footprint)) {
+                    waiting.remove();
+                    inFlight.add(pending);
+                    ready.add(pending);
+                } else {
+                    if (!due) {
+                        wake = Math.min(wake, pending.notBefore);
+                    }
+                    ahead.add(pending.footprint);
+                }
+            }
+            if (wake != Long.MAX_VALUE && wake < wakeAt) {
+                wakeAt = wake;
+                timer.schedule(this::wake, wake - now, TimeUnit.NANOSECONDS);
+            }
+        }
+        for (Pending pending : ready) {
+            send(pending);
+        }
+    }
+
+    private void wake() {
+        synchronized (this) {
+            wakeAt = Long.MAX_VALUE;
+        }
+        dispatch();
+    }
+
+    private void send(Pending pending) {
+        pending.attempts++;
+        CompletableFuture<Commit> commit;
+        try {
+            commit = gateway.submit(pending.function, pending.args);
+        } catch (RuntimeException e) {
+            done(pending, null, e);
+            return;
+        }
+        commit.whenComplete((result, error) -> done(pending, result, error));
+    }
+
+    private void done(Pending pending, Commit commit, Throwable error) {
+        boolean retry = false;
+        synchronized (this) {
+            inFlight.remove(pending);
+            if (error == null && commit.isConflict()) {
+                conflicts++;
+                retry = pending.attempts < maxAttempts;
+            }
+            if (retry) {
+                retries++;
+                pending.notBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff.delayMillis(pending.attempts));
+                queue.put(pending.sequence, pending);
+            } else if (error == null && commit.isValid()) {
+                committed++;
+            } else {
+                failed++;
+            }
+        }
+        if (!retry) {
+            if (error != null) {
+                pending.future.completeExceptionally(error);
+            } else {
+                pending.future.complete(commit);
+            }
+        }
+        dispatch();
+    }
+
+    private boolean conflictsInFlight(Footprint footprint) {
+        for (Pending pending : inFlight) {
+            if (pending.footprint.conflictsWith(footprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean conflicts(Footprint footprint, List<Footprint> others) {
+        for (Footprint other : others) {
+            if (other.conflictsWith(footprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return the transactions that committed valid
+     */
+    public synchronized long getCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return the conflicts returned by the gateway, including those retried
+     */
+    public synchronized long getConflicts() {
+        return conflicts;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the transactions that failed endorsement, were invalid or ran out of attempts
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the transactions queued or in flight
+     */
+    public synchronized int getPending() {
+        return queue.size() + inFlight.size();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private static final class Pending {
+
+        private final Footprint footprint;
+        private final String function;
+        private final List<String> args;
+        private final CompletableFuture<Commit> future = new CompletableFuture<>();
+        private long sequence;
+        private long notBefore = System.nanoTime();
+        private int attempts;
+
+        private Pending(Footprint footprint, String function, List<String> args) {
+            this.footprint = footprint;
+            this.function = function;
+            this.args = args;
+        }
+    }
+}
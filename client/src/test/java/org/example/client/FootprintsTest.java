@@ -0,0 +1,84 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+public final class FootprintsTest {
+
+    private static Footprint order(String caller, String orderId, String symbol) {
+        return Footprints.of("createOrder", Arrays.asList(orderId, "1", symbol, "10", "50", "1"), caller);
+    }
+
+    @Test
+    public void ordersConflictOverTheirSymbolAndTrader() {
+        assertThat(order(null, "o-1", "ACME").conflictsWith(order(null, "o-2", "ACME"))).isTrue();
+        assertThat(order(null, "o-1", "ACME").conflictsWith(order(null, "o-2", "BETA"))).isFalse();
+        assertThat(order("alice", "o-1", "ACME").conflictsWith(order("alice", "o-2", "BETA"))).isTrue();
+        assertThat(order("alice", "o-1", "ACME").conflictsWith(order("bob", "o-2", "BETA"))).isFalse();
+        assertThat(order("alice", "o-1", "ACME").getResources()).containsOnly("order~o-1", "symbol~ACME", "trader~alice");
+    }
+
+    @Test
+    public void settlementsTouchBothOrdersAndTheSeller() {
+        Footprint pair = Footprints.of("settleOrder", Arrays.asList("buy-1", "sell-1", "ACME", "50", "2", "1", "2", "carol"), "bob");
+
+        assertThat(pair.getResources()).containsOnly("order~buy-1", "order~sell-1", "trader~bob", "trader~carol");
+        assertThat(pair.conflictsWith(order("dave", "buy-2", "ACME"))).isFalse();
+        assertThat(Footprints.of("changeBalances", Arrays.asList("BETA", "bob", "dave", "5"), null).conflictsWith(pair)).isTrue();
+    }
+
+    @Test
+    public void salesFromTheIssuerConflictOnlyOverTheBuyer() {
+        Footprint bob = Footprints.of("buyFromIssuer", Arrays.asList("NEWCO", "10"), "bob");
+
+        assertThat(bob.conflictsWith(Footprints.of("buyFromIssuer", Arrays.asList("NEWCO", "10"), "carol"))).isFalse();
+        assertThat(bob.conflictsWith(Footprints.of("buyFromIssuer", Arrays.asList("OTHER", "10"), "bob"))).isTrue();
+    }
+
+    @Test
+    public void privateOrdersConflictOnlyOverTheirTraderAndId() {
+        Footprint sell = Footprints.of("createPrivateOrder", Collections.singletonList("o-1"), "alice");
+
+        assertThat(sell.getResources()).containsOnly("order~o-1", "trader~alice");
+        assertThat(sell.conflictsWith(order("bob", "o-2", "ACME"))).isFalse();
+        assertThat(Footprints.of("settlePrivateOrders", Collections.emptyList(), "carol").isAll()).isTrue();
+    }
+
+    @Test
+    public void batchesRunAlone() {
+        String fills = "[{\"buyId\":\"buy-1\",\"sellId\":\"sell-1\",\"symbol\":\"ACME\",\"price\":\"50\",\"quantity\":\"1\"}]";
+
+        assertThat(Footprints.of("settleOrders", Collections.singletonList(fills), null).isAll()).isTrue();
+    }
+
+    @Test
+    public void unknownFootprintsConflictWithEverything() {
+        Footprint cancel = Footprints.of("cancelOrder", Collections.singletonList("o-1"), "alice");
+
+        assertThat(cancel.isAll()).isTrue();
+        assertThat(cancel.conflictsWith(order("bob", "o-2", "BETA"))).isTrue();
+        assertThat(Footprints.of("migrateKeys", Arrays.asList("", "500"), "alice").isAll()).isTrue();
+        assertThat(Footprints.of("createTrader", Collections.emptyList(), null).isAll()).isTrue();
+        assertThatThrownBy(() -> Footprints.of("createOrder", Collections.singletonList("o-1"), null))
+                .hasMessageContaining("Expected at least 3 arguments");
+    }
+}
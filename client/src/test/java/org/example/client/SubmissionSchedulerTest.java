@@ -0,0 +1,210 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class SubmissionSchedulerTest {
+
+    /**
+     * The keys the contract really touches are the footprint the client derives.
+     */
+    private static final BiFunction<String, List<String>, Collection<String>> EXACT =
+            (function, args) -> Footprints.of(function, args, null).getResources();
+
+    /**
+     * As {@link #EXACT}, with a key every transaction shares that the client does not know about.
+     */
+    private static final BiFunction<String, List<String>, Collection<String>> HIDDEN = (function, args) -> {
+        Set<String> keys = new TreeSet<>(EXACT.apply(function, args));
+        keys.add("hidden");
+        return keys;
+    };
+
+    private static List<String> order(int i, String symbol) {
+        return Arrays.asList("o-" + i, "1", symbol, "10", "50", Integer.toString(i));
+    }
+
+    private static SubmissionScheduler scheduler(Gateway gateway, int maxAttempts) {
+        return new SubmissionScheduler(gateway, null, 100, maxAttempts, new Backoff(1, 20, new Random(23)));
+    }
+
+    private static List<Commit> join(List<CompletableFuture<Commit>> futures) {
+        List<Commit> commits = new ArrayList<>();
+        for (CompletableFuture<Commit> future : futures) {
+            commits.add(future.join());
+        }
+        return commits;
+    }
+
+    @Nested
+    class Scheduling {
+
+        @Test
+        public void sendsConflictingTransactionsToLaterBlocks() {
+            List<String> symbols = Arrays.asList("ACME", "BETA", "GAMMA");
+            try (LocalGateway gateway = new LocalGateway(EXACT, 30, 5); SubmissionScheduler scheduler = scheduler(gateway, 3)) {
+                List<CompletableFuture<Commit>> futures = new ArrayList<>();
+                for (int i = 0; i < 30; i++) {
+                    futures.add(scheduler.submit("createOrder", order(i, symbols.get(i % 3))));
+                }
+                List<Commit> commits = join(futures);
+
+                Map<String, Long> lastBlock = new HashMap<>();
+                for (int i = 0; i < commits.size(); i++) {
+                    assertThat(commits.get(i).isValid()).isTrue();
+                    long block = commits.get(i).getBlockNumber();
+                    assertThat(block).isGreaterThan(lastBlock.getOrDefault(symbols.get(i % 3), 0L));
+                    lastBlock.put(symbols.get(i % 3), block);
+                }
+                assertThat(gateway.getInvalid()).isZero();
+                assertThat(scheduler.getConflicts()).isZero();
+                assertThat(scheduler.getCommitted()).isEqualTo(30L);
+                assertThat(scheduler.getPending()).isZero();
+            }
+        }
+
+        @Test
+        public void blindSubmissionLosesMostOfTheSameBlock() {
+            List<String> symbols = Arrays.asList("ACME", "BETA", "GAMMA");
+            try (LocalGateway gateway = new LocalGateway(EXACT, 30, 1000)) {
+                List<CompletableFuture<Commit>> futures = new ArrayList<>();
+                for (int i = 0; i < 30; i++) {
+                    futures.add(gateway.submit("createOrder", order(i, symbols.get(i % 3))));
+                }
+                join(futures);
+
+                assertThat(gateway.getValid()).isEqualTo(3L);
+                assertThat(gateway.getInvalid()).isEqualTo(27L);
+            }
+        }
+
+        @Test
+        public void pipelinesTransactionsThatShareNothing() {
+            try (LocalGateway gateway = new LocalGateway(EXACT, 10, 10000); SubmissionScheduler scheduler = scheduler(gateway, 3)) {
+                List<CompletableFuture<Commit>> futures = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    futures.add(scheduler.submit("createOrder", order(i, "SYM" + i)));
+                }
+
+                for (Commit commit : join(futures)) {
+                    assertThat(commit.isValid()).isTrue();
+                    assertThat(commit.getBlockNumber()).isEqualTo(1L);
+                }
+                assertThat(gateway.getHeight()).isEqualTo(1L);
+            }
+        }
+
+        @Test
+        public void holdsLaterTransactionsBehindAnUnknownFootprint() {
+            try (LocalGateway gateway = new LocalGateway(EXACT, 10, 5); SubmissionScheduler scheduler = scheduler(gateway, 3)) {
+                CompletableFuture<Commit> first = scheduler.submit("createOrder", order(1, "ACME"));
+                CompletableFuture<Commit> migration = scheduler.submit("migrateKeys", "", "500");
+                CompletableFuture<Commit> last = scheduler.submit("createOrder", order(2, "BETA"));
+
+                assertThat(migration.join().getBlockNumber()).isGreaterThan(first.join().getBlockNumber());
+                assertThat(last.join().getBlockNumber()).isGreaterThan(migration.join().getBlockNumber());
+            }
+        }
+    }
+
+    @Nested
+    class Retries {
+
+        @Test
+        public void retriesConflictsTheFootprintsMissed() {
+            try (LocalGateway gateway = new LocalGateway(HIDDEN, 6, 5); SubmissionScheduler scheduler = scheduler(gateway, 10)) {
+                List<CompletableFuture<Commit>> futures = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    futures.add(scheduler.submit("createOrder", order(i, "SYM" + i)));
+                }
+
+                for (Commit commit : join(futures)) {
+                    assertThat(commit.isValid()).isTrue();
+                }
+                assertThat(scheduler.getCommitted()).isEqualTo(6L);
+                assertThat(scheduler.getRetries()).isEqualTo(scheduler.getConflicts());
+                assertThat(scheduler.getConflicts()).isPositive();
+                assertThat(gateway.getInvalid()).isEqualTo(scheduler.getConflicts());
+            }
+        }
+
+        @Test
+        public void returnsTheConflictOnceOutOfAttempts() {
+            try (LocalGateway gateway = new LocalGateway(HIDDEN, 6, 10000); SubmissionScheduler scheduler = scheduler(gateway, 1)) {
+                List<CompletableFuture<Commit>> futures = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    futures.add(scheduler.submit("createOrder", order(i, "SYM" + i)));
+                }
+                List<Commit> commits = join(futures);
+
+                assertThat(commits.get(0).isValid()).isTrue();
+                assertThat(commits.get(5).isConflict()).isTrue();
+                assertThat(commits.get(5).getValidationCode()).isEqualTo(Commit.MVCC_READ_CONFLICT);
+                assertThat(scheduler.getFailed()).isEqualTo(5L);
+                assertThat(scheduler.getRetries()).isZero();
+            }
+        }
+
+        @Test
+        public void doesNotRetryFailedEndorsements() {
+            BiFunction<String, List<String>, String> chaincode = (function, args) -> {
+                if (args.get(0).equals("o-1")) {
+                    throw new RuntimeException("The order o-1 already exists");
+                }
+                return args.get(0);
+            };
+            try (LocalGateway gateway = new LocalGateway(EXACT, chaincode, 10, 5); SubmissionScheduler scheduler = scheduler(gateway, 3)) {
+                CompletableFuture<Commit> failing = scheduler.submit("createOrder", order(1, "ACME"));
+                CompletableFuture<Commit> next = scheduler.submit("createOrder", order(2, "ACME"));
+
+                assertThatThrownBy(failing::join).hasMessageContaining("already exists");
+                assertThat(next.join().getResult()).isEqualTo("o-2");
+                assertThat(scheduler.getFailed()).isEqualTo(1L);
+                assertThat(scheduler.getRetries()).isZero();
+            }
+        }
+    }
+
+    @Test
+    public void jittersWithinAGrowingCappedWindow() {
+        Backoff backoff = new Backoff(10, 200, new Random(23));
+        long longest = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertThat(backoff.delayMillis(1)).isBetween(0L, 10L);
+            assertThat(backoff.delayMillis(3)).isBetween(0L, 40L);
+            assertThat(backoff.delayMillis(100)).isBetween(0L, 200L);
+            longest = Math.max(longest, backoff.delayMillis(5));
+        }
+        assertThat(longest).isGreaterThan(150L);
+        assertThatThrownBy(() -> new Backoff(0, 10)).hasMessageContaining("positive base");
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.json.JSONObject;
+
+/**
+ * One event of the exchange contract as delivered by the peer: its name, the
+ * transaction that set it, where that transaction is in the ledger and the
+ * payload. A block without events of the contract is delivered as its
+ * {@link #endOfBlock end} alone, so that consumers can tell a quiet block from
+ * a missed one.
+ */
+public final class ContractEvent {
+
+    private final String name;
+    private final String txId;
+    private final long blockNumber;
+    private final int txIndex;
+    private final byte[] payload;
+
+    /**
+     * @param txIndex the position of the transaction in its block
+     */
+    public ContractEvent(String name, String txId, long blockNumber, int txIndex, byte[] payload) {
+        this.name = name;
+        this.txId = txId;
+        this.blockNumber = blockNumber;
+        this.txIndex = txIndex;
+        this.payload = payload;
+    }
+
+    /**
+     * Marks the block as delivered in full, with or without events before it.
+     */
+    public static ContractEvent endOfBlock(long blockNumber) {
+        return new ContractEvent(null, null, blockNumber, Integer.MAX_VALUE, null);
+    }
+
+    public boolean isEndOfBlock() {
+        return name == null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public int getTxIndex() {
+        return txIndex;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public JSONObject getPayloadJSON() {
+        return new JSONObject(new String(payload, UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [name=" + name + ", txId=" + txId
+                + ", block=" + blockNumber + ", index=" + txIndex + "]";
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import java.util.function.Consumer;
+
+/**
+ * Where contract events come from, a peer's event service in production or
+ * {@link MemoryEventSource} and {@link FileEventSource} in tests and replays.
+ */
+public interface EventSource {
+
+    /**
+     * Hands the events to the consumer in ledger order and returns when the
+     * source has no more.
+     */
+    void forEach(Consumer<ContractEvent> consumer);
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+/**
+ * Events recorded in a file, one JSON object per line with the name, the
+ * txId, the block, the index and the payload of an event, or only the block
+ * for the {@link ContractEvent#endOfBlock end} of a block.
+ */
+public final class FileEventSource implements EventSource {
+
+    private final Path file;
+
+    public FileEventSource(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends an event to the file, creating it if needed.
+     */
+    public static void append(Path file, ContractEvent event) {
+        JSONObject line = new JSONObject();
+        line.put("block", event.getBlockNumber());
+        if (!event.isEndOfBlock()) {
+            line.put("name", event.getName());
+            line.put("txId", event.getTxId());
+            line.put("index", event.getTxIndex());
+            line.put("payload", event.getPayloadJSON());
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line.toString());
+            out.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to " + file, e);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<ContractEvent> consumer) {
+        try (BufferedReader in = Files.newBufferedReader(file, UTF_8)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JSONObject event = new JSONObject(line);
+                if (!event.has("name")) {
+                    consumer.accept(ContractEvent.endOfBlock(event.getLong("block")));
+                    continue;
+                }
+                consumer.accept(new ContractEvent(event.getString("name"), event.optString("txId", null), event.getLong("block"),
+                        event.getInt("index"), event.getJSONObject("payload").toString().getBytes(UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+    }
+}
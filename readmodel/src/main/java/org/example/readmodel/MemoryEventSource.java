@@ -0,0 +1,29 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Events held in memory, replayed in the order they were added.
+ */
+public final class MemoryEventSource implements EventSource {
+
+    private final List<ContractEvent> events = new ArrayList<>();
+
+    public MemoryEventSource add(ContractEvent event) {
+        events.add(event);
+        return this;
+    }
+
+    @Override
+    public void forEach(Consumer<ContractEvent> consumer) {
+        for (ContractEvent event : events) {
+            consumer.accept(event);
+        }
+    }
+}
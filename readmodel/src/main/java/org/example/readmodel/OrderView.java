@@ -0,0 +1,131 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+import org.json.JSONObject;
+
+/**
+ * An order as the last event that changed it left it.
+ */
+public final class OrderView {
+
+    public static final String BUY = "0";
+    public static final String SELL = "1";
+
+    /**
+     * Price-time priority within one side of a book as the contract keeps it:
+     * best price first, then the earlier placing transaction.
+     */
+    static final Comparator<OrderView> PRIORITY = (a, b) -> {
+        int byPrice = BUY.equals(a.method) ? b.price.compareTo(a.price) : a.price.compareTo(b.price);
+        if (byPrice != 0) {
+            return byPrice;
+        }
+        int byTime = Long.compare(a.placedAt, b.placedAt);
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byTransaction = a.placedIn.compareTo(b.placedIn);
+        return byTransaction != 0 ? byTransaction : a.orderId.compareTo(b.orderId);
+    };
+
+    private final String orderId;
+    private final String symbol;
+    private final String method;
+    private final BigDecimal price;
+    private final long quantity;
+    private final long remaining;
+    private final long timestamp;
+    private final long placedAt;
+    private final String placedIn;
+    private final String owner;
+    private final String status;
+
+    public OrderView(String orderId, String symbol, String method, BigDecimal price, long quantity, long remaining,
+            long timestamp, long placedAt, String placedIn, String owner, String status) {
+        this.orderId = orderId;
+        this.symbol = symbol;
+        this.method = method;
+        this.price = price;
+        this.quantity = quantity;
+        this.remaining = remaining;
+        this.timestamp = timestamp;
+        this.placedAt = placedAt;
+        this.placedIn = placedIn;
+        this.owner = owner;
+        this.status = status;
+    }
+
+    public static OrderView fromJSON(JSONObject obj) {
+        return new OrderView(obj.getString("orderId"), obj.getString("symbol"), obj.getString("method"),
+                new BigDecimal(obj.get("price").toString()), obj.getLong("quantity"), obj.getLong("remaining"),
+                obj.getLong("timestamp"), obj.optLong("placedAt", 0), obj.optString("placedIn", ""), obj.getString("owner"),
+                obj.getString("status"));
+    }
+
+    OrderView withOwner(String owner) {
+        return new OrderView(orderId, symbol, method, price, quantity, remaining, timestamp, placedAt, placedIn, owner, status);
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getPlacedAt() {
+        return placedAt;
+    }
+
+    public String getPlacedIn() {
+        return placedIn;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Open and partially filled orders rest in the book.
+     */
+    public boolean isLive() {
+        return "open".equals(status) || "partially_filled".equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [orderId=" + orderId + ", symbol=" + symbol
+                + ", method=" + method + ", price=" + price + ", remaining=" + remaining + ", status=" + status + "]";
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example.readmodel;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The order books, positions and cash balances of the exchange, kept from
+ * its contract events alone. Events of version {@link #VERSION} carry every
+ * order, position and cash change of their transaction, so applying them in
+ * ledger order reproduces the world state without querying a peer.
+ *
+ * <p>Events are positioned by the block and the index of their transaction
+ * in it, which the peer's event service delivers in order. An event at or
+ * before the last position applied is a replay and ignored. A block number
+ * that skips ahead is recorded in {@link #getGaps()}, after which the model is
+ * behind the ledger until it is rebuilt from an earlier block; sources deliver
+ * the {@link ContractEvent#endOfBlock end} of blocks without events of the
+ * contract so that those do not count as missed. Nothing on the ledger is
+ * numbered for this, so transactions do not conflict over a counter.
+ * Events without a version are from older contracts and only counted.
+ *
+ * <p>Events are applied by one thread while any number of threads read.
+ */
+public final class ReadModel implements Consumer<ContractEvent> {
+
+    public static final int VERSION = 2;
+
+    private final Map<String, OrderView> orders = new HashMap<>();
+    private final Map<String, Map<String, TreeSet<OrderView>>> books = new HashMap<>();
+    private final Map<String, Map<String, Long>> positions = new HashMap<>();
+    private final Map<String, BigDecimal> cash = new HashMap<>();
+    private final Map<String, BigDecimal> lastPrices = new HashMap<>();
+    private final List<String> gaps = new ArrayList<>();
+    private long lastBlock = -1;
+    private int lastIndex = -1;
+    private long unversioned;
+
+    /**
+     * Builds a model from every event of the source.
+     */
+    public static ReadModel of(EventSource source) {
+        ReadModel model = new ReadModel();
+        source.forEach(model);
+        return model;
+    }
+
+    @Override
+    public synchronized void accept(ContractEvent event) {
+        if (!advance(event.getBlockNumber(), event.getTxIndex()) || event.isEndOfBlock()) {
+            return;
+        }
+        JSONObject payload = event.getPayloadJSON();
+        if (payload.optInt("version", 0) != VERSION) {
+            unversioned++;
+            return;
+        }
+        if ("MigratedHin".equals(payload.getString("type"))) {
+            rename(payload.getString("from"), payload.getString("to"));
+        }
+        if ("DeletedSecurity".equals(payload.getString("type"))) {
+            books.remove(payload.getString("symbol"));
+            lastPrices.remove(payload.getString("symbol"));
+        }
+        JSONArray changedOrders = payload.getJSONArray("orders");
+        for (int i = 0; i < changedOrders.length(); i++) {
+            put(OrderView.fromJSON(changedOrders.getJSONObject(i)));
+        }
+        JSONArray fills = payload.getJSONArray("fills");
+        for (int i = 0; i < fills.length(); i++) {
+            JSONObject fill = fills.getJSONObject(i);
+            lastPrices.put(fill.getString("symbol"), new BigDecimal(fill.get("price").toString()));
+        }
+        JSONArray changedPositions = payload.getJSONArray("positions");
+        for (int i = 0; i < changedPositions.length(); i++) {
+            JSONObject position = changedPositions.getJSONObject(i);
+            setPosition(position.getString("symbol"), position.getString("hin"), position.getLong("quantity"));
+        }
+        JSONArray changedCash = payload.getJSONArray("cash");
+        for (int i = 0; i < changedCash.length(); i++) {
+            JSONObject change = changedCash.getJSONObject(i);
+            cash.merge(change.getString("hin"), new BigDecimal(change.get("delta").toString()), BigDecimal::add);
+        }
+    }
+
+    /**
+     * Moves the position of the model to the event's.
+     *
+     * @return false if the position was passed before
+     */
+    private boolean advance(long blockNumber, int txIndex) {
+        if (blockNumber < lastBlock || blockNumber == lastBlock && txIndex <= lastIndex) {
+            return false;
+        }
+        if (lastBlock >= 0 && blockNumber > lastBlock + 1) {
+            gaps.add("blocks " + (lastBlock + 1) + ".." + (blockNumber - 1));
+        }
+        lastBlock = blockNumber;
+        lastIndex = txIndex;
+        return true;
+    }
+
+    private void put(OrderView order) {
+        OrderView previous = orders.put(order.getOrderId(), order);
+        if (previous != null) {
+            side(previous.getSymbol(), previous.getMethod()).remove(previous);
+        }
+        if (order.isLive()) {
+            side(order.getSymbol(), order.getMethod()).add(order);
+        }
+    }
+
+    private TreeSet<OrderView> side(String symbol, String method) {
+        return books.computeIfAbsent(symbol, s -> new HashMap<>()).computeIfAbsent(method, m -> new TreeSet<>(OrderView.PRIORITY));
+    }
+
+    private void setPosition(String symbol, String hin, long quantity) {
+        Map<String, Long> holders = positions.computeIfAbsent(symbol, s -> new HashMap<>());
+        if (quantity == 0) {
+            holders.remove(hin);
+        } else {
+            holders.put(hin, quantity);
+        }
+    }
+
+    private void rename(String from, String to) {
+        BigDecimal balance = cash.remove(from);
+        if (balance != null) {
+            cash.merge(to, balance, BigDecimal::add);
+        }
+        for (Map<String, Long> holders : positions.values()) {
+            Long quantity = holders.remove(from);
+            if (quantity != null) {
+                holders.merge(to, quantity, Long::sum);
+            }
+        }
+        for (OrderView order : new ArrayList<>(orders.values())) {
+            if (order.getOwner().equals(from)) {
+                put(order.withOwner(to));
+            }
+        }
+    }
+
+    public synchronized OrderView getOrder(String orderId) {
+        return orders.get(orderId);
+    }
+
+    /**
+     * The live orders of one side of a book in price-time priority.
+     *
+     * @param method {@link OrderView#BUY} or {@link OrderView#SELL}
+     */
+    public synchronized List<OrderView> getBook(String symbol, String method) {
+        Map<String, TreeSet<OrderView>> book = books.get(symbol);
+        if (book == null || !book.containsKey(method)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(book.get(method));
+    }
+
+    public synchronized long getPosition(String symbol, String hin) {
+        return positions.getOrDefault(symbol, Collections.emptyMap()).getOrDefault(hin, 0L);
+    }
+
+    /**
+     * @return the positions of a holder by symbol
+     */
+    public synchronized Map<String, Long> getPositions(String hin) {
+        Map<String, Long> held = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Long>> holders : positions.entrySet()) {
+            Long quantity = holders.getValue().get(hin);
+            if (quantity != null) {
+                held.put(holders.getKey(), quantity);
+            }
+        }
+        return held;
+    }
+
+    public synchronized BigDecimal getCash(String hin) {
+        return cash.getOrDefault(hin, BigDecimal.ZERO);
+    }
+
+    /**
+     * @return the price of the last fill of the symbol, null before the first
+     */
+    public synchronized BigDecimal getLastPrice(String symbol) {
+        return lastPrices.get(symbol);
+    }
+
+    /**
+     * @return the block of the last event applied, -1 before the first
+     */
+    public synchronized long getBlockNumber() {
+        return lastBlock;
+    }
+
+    /**
+     * @return the missed events, each as the range of blocks they were in
+     */
+    public synchronized List<String> getGaps() {
+        return new ArrayList<>(gaps);
+    }
+
+    public synchronized long getUnversioned() {
+        return unversioned;
+    }
+}
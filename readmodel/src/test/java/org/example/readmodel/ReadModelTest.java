@@ -0,0 +1,198 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.readmodel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class ReadModelTest {
+
+    private static JSONObject event(String type, String txId) {
+        JSONObject obj = new JSONObject();
+        obj.put("version", ReadModel.VERSION);
+        obj.put("type", type);
+        obj.put("txId", txId);
+        obj.put("timestamp", 1590400763L);
+        obj.put("orders", new JSONArray());
+        obj.put("fills", new JSONArray());
+        obj.put("positions", new JSONArray());
+        obj.put("cash", new JSONArray());
+        return obj;
+    }
+
+    private static JSONObject order(String orderId, String method, String price, long remaining, String owner, String status) {
+        JSONObject obj = new JSONObject();
+        obj.put("orderId", orderId);
+        obj.put("symbol", "ACME");
+        obj.put("method", method);
+        obj.put("quantity", 10);
+        obj.put("remaining", remaining);
+        obj.put("price", price);
+        obj.put("timestamp", 1590400763L);
+        obj.put("owner", owner);
+        obj.put("status", status);
+        return obj;
+    }
+
+    private static JSONObject position(String hin, long quantity) {
+        JSONObject obj = new JSONObject();
+        obj.put("symbol", "ACME");
+        obj.put("hin", hin);
+        obj.put("quantity", quantity);
+        return obj;
+    }
+
+    private static JSONObject cash(String hin, String delta) {
+        JSONObject obj = new JSONObject();
+        obj.put("hin", hin);
+        obj.put("delta", delta);
+        return obj;
+    }
+
+    private static ContractEvent contractEvent(JSONObject payload, long blockNumber) {
+        return new ContractEvent(payload.getString("type"), payload.getString("txId"), blockNumber, 0, payload.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * alice opens an account and lists ACME, offers 10 at 50.00 and 10 at 49.00, bob buys 4.
+     */
+    private static MemoryEventSource trading() {
+        JSONObject trader = event("CreatedTrader", "tx1");
+        trader.getJSONArray("cash").put(cash("alice", "10000.0000"));
+        JSONObject bobTrader = event("CreatedTrader", "tx2");
+        bobTrader.getJSONArray("cash").put(cash("bob", "10000.0000"));
+        JSONObject listing = event("CreatedSecurity", "tx3");
+        listing.getJSONArray("positions").put(position("alice", 1000));
+        JSONObject first = event("CreatedOrder", "tx4");
+        first.getJSONArray("orders").put(order("sell-1", OrderView.SELL, "50.00", 10, "alice", "open"));
+        JSONObject second = event("CreatedOrder", "tx5");
+        second.getJSONArray("orders").put(order("sell-2", OrderView.SELL, "49.00", 10, "alice", "open"));
+        JSONObject buy = event("CreatedOrder", "tx6");
+        buy.getJSONArray("orders").put(order("buy-1", OrderView.BUY, "55.00", 0, "bob", "filled"));
+        buy.getJSONArray("orders").put(order("sell-2", OrderView.SELL, "49.00", 6, "alice", "partially_filled"));
+        JSONObject fill = new JSONObject();
+        fill.put("buyId", "buy-1");
+        fill.put("sellId", "sell-2");
+        fill.put("symbol", "ACME");
+        fill.put("price", "49.00");
+        fill.put("quantity", 4);
+        buy.getJSONArray("fills").put(fill);
+        buy.getJSONArray("positions").put(position("alice", 996)).put(position("bob", 4));
+        buy.getJSONArray("cash").put(cash("bob", "-196.0000")).put(cash("alice", "196.0000"));
+        return new MemoryEventSource().add(contractEvent(trader, 1)).add(contractEvent(bobTrader, 2)).add(contractEvent(listing, 3))
+                .add(contractEvent(first, 4)).add(contractEvent(second, 5)).add(contractEvent(buy, 6));
+    }
+
+    @Test
+    public void keepsBooksPositionsAndCash() {
+        ReadModel model = ReadModel.of(trading());
+
+        List<OrderView> asks = model.getBook("ACME", OrderView.SELL);
+        assertThat(asks).hasSize(2);
+        assertThat(asks.get(0).getOrderId()).isEqualTo("sell-2");
+        assertThat(asks.get(0).getRemaining()).isEqualTo(6L);
+        assertThat(asks.get(1).getOrderId()).isEqualTo("sell-1");
+        assertThat(model.getBook("ACME", OrderView.BUY)).isEmpty();
+        assertThat(model.getPosition("ACME", "bob")).isEqualTo(4L);
+        assertThat(model.getPositions("alice")).containsEntry("ACME", 996L);
+        assertThat(model.getCash("bob")).isEqualByComparingTo(new BigDecimal("9804"));
+        assertThat(model.getLastPrice("ACME")).isEqualByComparingTo(new BigDecimal("49"));
+        assertThat(model.getBlockNumber()).isEqualTo(6L);
+        assertThat(model.getGaps()).isEmpty();
+    }
+
+    @Test
+    public void ignoresReplayedEvents() {
+        ReadModel model = ReadModel.of(trading());
+        trading().forEach(model);
+
+        assertThat(model.getCash("alice")).isEqualByComparingTo(new BigDecimal("10196"));
+        assertThat(model.getPosition("ACME", "bob")).isEqualTo(4L);
+    }
+
+    @Test
+    public void reportsMissedBlocks() {
+        ReadModel model = new ReadModel();
+        model.accept(contractEvent(event("CreatedSecurity", "tx1"), 1));
+        model.accept(ContractEvent.endOfBlock(2));
+        model.accept(contractEvent(event("CreatedOrder", "tx4"), 5));
+
+        assertThat(model.getGaps()).containsExactly("blocks 3..4");
+        assertThat(model.getBlockNumber()).isEqualTo(5L);
+    }
+
+    @Test
+    public void appliesEveryTransactionOfABlockOnce() {
+        JSONObject first = event("CreatedTrader", "tx1");
+        first.getJSONArray("cash").put(cash("alice", "10000.0000"));
+        JSONObject second = event("CreatedTrader", "tx2");
+        second.getJSONArray("cash").put(cash("alice", "5.0000"));
+        ContractEvent firstEvent = new ContractEvent("CreatedTrader", "tx1", 1, 0, first.toString().getBytes(UTF_8));
+        ContractEvent secondEvent = new ContractEvent("CreatedTrader", "tx2", 1, 3, second.toString().getBytes(UTF_8));
+        ReadModel model = ReadModel.of(new MemoryEventSource().add(firstEvent).add(secondEvent).add(firstEvent).add(secondEvent));
+
+        assertThat(model.getCash("alice")).isEqualByComparingTo(new BigDecimal("10005"));
+        assertThat(model.getGaps()).isEmpty();
+    }
+
+    @Test
+    public void countsUnversionedEvents() {
+        ReadModel model = new ReadModel();
+        model.accept(new ContractEvent("SettledOrder", "tx1", 1, 0, "{\"buyId\":\"1\",\"sellId\":\"2\"}".getBytes(UTF_8)));
+
+        assertThat(model.getUnversioned()).isEqualTo(1L);
+    }
+
+    @Test
+    public void movesMigratedAccounts() {
+        ReadModel model = ReadModel.of(trading());
+        JSONObject migrated = event("MigratedHin", "tx7");
+        migrated.put("from", "alice");
+        migrated.put("to", "alice-2");
+        model.accept(contractEvent(migrated, 7));
+
+        assertThat(model.getCash("alice-2")).isEqualByComparingTo(new BigDecimal("10196"));
+        assertThat(model.getPosition("ACME", "alice-2")).isEqualTo(996L);
+        assertThat(model.getOrder("sell-1").getOwner()).isEqualTo("alice-2");
+        assertThat(model.getBook("ACME", OrderView.SELL)).hasSize(2);
+    }
+
+    @Nested
+    class Files {
+
+        @Test
+        public void replaysRecordedEvents(@TempDir Path dir) {
+            Path file = dir.resolve("events.jsonl");
+            trading().forEach(event -> FileEventSource.append(file, event));
+            FileEventSource.append(file, ContractEvent.endOfBlock(7));
+
+            ReadModel model = ReadModel.of(new FileEventSource(file));
+
+            assertThat(model.getPosition("ACME", "bob")).isEqualTo(4L);
+            assertThat(model.getBlockNumber()).isEqualTo(7L);
+            assertThat(model.getGaps()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.example.sim.SimulatedContext;
+import org.example.sim.SimulatedLedger;
+import org.example.sim.SimulatedTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * End-to-end endorsement of contract functions on the in-memory ledger. The
+ * transactions are never committed, so every invocation runs against the
+ * same book of {@code depth} resting asks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContractBenchmark {
+
+    @Param({"1", "64"})
+    public int depth;
+
+    private final SecurityContract contract = new SecurityContract();
+    private SimulatedLedger ledger;
+    private String sellerHin;
+
+    @Setup
+    public void setUp() {
+        ledger = new SimulatedLedger();
+        ledger.submit("createTrader", SimulatedContext.invoke(contract, "buyer", ctx -> contract.createTrader(ctx)));
+        ledger.submit("createTrader", SimulatedContext.invoke(contract, "seller", ctx -> contract.createTrader(ctx)));
+        ledger.submit("createSecurity", SimulatedContext.invoke(contract, "seller", ctx -> {
+            contract.createSecurity(ctx, "ACME", "Acme Corp.", "1000000");
+            return null;
+        }));
+        for (int i = 0; i < depth; i++) {
+            String orderId = "ask-" + i;
+            String price = Integer.toString(60 + i);
+            ledger.submit("createOrder", SimulatedContext.invoke(contract, "seller", ctx -> {
+                contract.createOrder(ctx, orderId, Order.SELL, "ACME", "1", price, "1");
+                return null;
+            }));
+        }
+        sellerHin = ledger.endorse("getMyHin", SimulatedContext.invoke(contract, "seller", ctx -> contract.getMyHin(ctx))).getResult();
+        String buyerHin = ledger.endorse("getMyHin", SimulatedContext.invoke(contract, "buyer", ctx -> contract.getMyHin(ctx))).getResult();
+
+        // a crossing pair that is not in the book, as left by an off-chain matcher
+        ledger.submit("seed", stub -> {
+            StateCache cache = new StateCache(stub, Codecs.binary());
+            cache.putOrder(new Order("off-buy", "ACME", 10, 5500, Order.BUY, 1, "true", "false", buyerHin));
+            cache.putOrder(new Order("off-sell", "ACME", 10, 5500, Order.SELL, 1, "true", "false", sellerHin));
+            cache.flush();
+            return null;
+        });
+    }
+
+    @Benchmark
+    public SimulatedTransaction<Void> createRestingOrder() {
+        return ledger.endorse("createOrder", SimulatedContext.invoke(contract, "buyer", ctx -> {
+            contract.createOrder(ctx, "bid-1", Order.BUY, "ACME", "1", "40", "2");
+            return null;
+        }));
+    }
+
+    @Benchmark
+    public SimulatedTransaction<Void> createCrossingOrder() {
+        return ledger.endorse("createOrder", SimulatedContext.invoke(contract, "buyer", ctx -> {
+            contract.createOrder(ctx, "bid-1", Order.BUY, "ACME", Integer.toString(depth), "150", "2");
+            return null;
+        }));
+    }
+
+    @Benchmark
+    public SimulatedTransaction<Void> settleOrder() {
+        return ledger.endorse("settleOrder", SimulatedContext.invoke(contract, "buyer", ctx -> {
+            contract.settleOrder(ctx, "off-buy", "off-sell", "ACME", "55", "1", "1", "1", sellerHin);
+            return null;
+        }));
+    }
+}
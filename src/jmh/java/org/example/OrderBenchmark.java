@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creating an order and computing its commitment, and round-tripping it
+ * through the binary codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderBenchmark {
+
+    private final Codecs codecs = Codecs.binary();
+    private Order order;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        order = newOrderInstance();
+        binary = codecs.getOrderCodec().encode(order);
+    }
+
+    @Benchmark
+    public String newOrder() {
+        return newOrderInstance().getHash();
+    }
+
+    private static Order newOrderInstance() {
+        return new Order("a1b2c3d4-order", "ACME", 100, 12550, Order.BUY, 1561046400000L, "true", "false", "-1352392717");
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return codecs.getOrderCodec().encode(order);
+    }
+
+    @Benchmark
+    public Order binaryDecode() {
+        return codecs.getOrderCodec().decode(binary);
+    }
+}
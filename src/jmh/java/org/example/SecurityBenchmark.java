@@ -0,0 +1,115 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import com.owlike.genson.Genson;
+
+import org.example.sim.SimulatedContext;
+import org.example.sim.SimulatedLedger;
+import org.example.sim.SimulatedTransaction;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading and writing a security as its holder count grows. Balances live in
+ * one holding key per holder, the legacy benchmark parses the old single
+ * document with all balances for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SecurityBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int holders;
+
+    private final Genson genson = new Genson();
+    private final Codecs codecs = Codecs.binary();
+    private final SecurityContract contract = new SecurityContract();
+    private Security security;
+    private String json;
+    private byte[] binary;
+    private String legacy;
+    private SimulatedLedger ledger;
+    private String issuerHin;
+    private String receiverHin;
+
+    @Setup
+    public void setUp() {
+        security = new Security("issuer", "ACME", "Acme Corp.", 1000000L);
+        json = genson.serialize(security);
+        binary = codecs.getSecurityCodec().encode(security);
+
+        JSONObject balances = new JSONObject();
+        for (int i = 0; i < holders; i++) {
+            balances.put("holder-" + i, 10);
+        }
+        legacy = new JSONObject()
+                .put("owner", "issuer")
+                .put("symbol", "ACME")
+                .put("name", "Acme Corp.")
+                .put("totalSupply", 1000000)
+                .put("balances", balances)
+                .toString();
+
+        ledger = new SimulatedLedger();
+        ledger.submit("createTrader", SimulatedContext.invoke(contract, "issuer", ctx -> contract.createTrader(ctx)));
+        ledger.submit("createTrader", SimulatedContext.invoke(contract, "receiver", ctx -> contract.createTrader(ctx)));
+        ledger.submit("createSecurity", SimulatedContext.invoke(contract, "issuer", ctx -> {
+            contract.createSecurity(ctx, "ACME", "Acme Corp.", "1000000");
+            return null;
+        }));
+        issuerHin = ledger.endorse("getMyHin", SimulatedContext.invoke(contract, "issuer", ctx -> contract.getMyHin(ctx))).getResult();
+        receiverHin = ledger.endorse("getMyHin", SimulatedContext.invoke(contract, "receiver", ctx -> contract.getMyHin(ctx))).getResult();
+        ledger.submit("seed", stub -> {
+            StateCache cache = new StateCache(stub, codecs);
+            for (int i = 0; i < holders; i++) {
+                security.putBalanceOf(cache, "holder-" + i, 10);
+            }
+            cache.flush();
+            return null;
+        });
+    }
+
+    @Benchmark
+    public String gensonSerialize() {
+        return genson.serialize(security);
+    }
+
+    @Benchmark
+    public Security gensonDeserialize() {
+        return genson.deserialize(json, Security.class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return codecs.getSecurityCodec().encode(security);
+    }
+
+    @Benchmark
+    public Security binaryDecode() {
+        return codecs.getSecurityCodec().decode(binary);
+    }
+
+    @Benchmark
+    public JSONObject legacyDocument() {
+        return new JSONObject(legacy);
+    }
+
+    @Benchmark
+    public SimulatedTransaction<String> transfer() {
+        return ledger.endorse("changeBalances", SimulatedContext.invoke(contract, "issuer",
+                ctx -> contract.changeBalances(ctx, "ACME", receiverHin, issuerHin, "1")));
+    }
+}
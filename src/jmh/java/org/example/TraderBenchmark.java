@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import com.owlike.genson.Genson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding a trader record from the legacy JSON layout, through Genson and
+ * from the binary codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraderBenchmark {
+
+    private static final String LEGACY = "{\"hin\":\"-1352392717\",\"balance\":9874,\"isMember\":\"true\"}";
+
+    private final Genson genson = new Genson();
+    private final Codecs codecs = Codecs.binary();
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        Trader trader = new Trader("-1352392717", FixedPoint.parse("9874.25", FixedPoint.CASH_SCALE));
+        json = genson.serialize(trader);
+        binary = codecs.getTraderCodec().encode(trader);
+    }
+
+    @Benchmark
+    public Trader fromJSONString() {
+        return Trader.fromJSONString(LEGACY);
+    }
+
+    @Benchmark
+    public Trader gensonDeserialize() {
+        return genson.deserialize(json, Trader.class);
+    }
+
+    @Benchmark
+    public Trader binaryDecode() {
+        return codecs.getTraderCodec().decode(binary);
+    }
+}
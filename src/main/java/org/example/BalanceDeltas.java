@@ -0,0 +1,104 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Cash movements of traders in delta mode. Every transaction writes its net
+ * change under balance~delta~hin~txId, so any number of payments to the same
+ * account can go into one block without reading its balance. Spending reads
+ * the sum of the deltas first, see {@link Settlement#cashOf}, so debits of one
+ * account still serialize and cannot overdraw it. The balance is the trader
+ * record plus the sum of its deltas, {@link #compact} folds the deltas back
+ * into the record.
+ */
+public final class BalanceDeltas {
+
+    /** Upper bound on the deltas folded by a single compaction. */
+    public static final int MAX_COMPACT = 1000;
+
+    private BalanceDeltas() {
+    }
+
+    public static void write(StateCache cache, String hin, long amount) {
+        if (amount != 0) {
+            String key = Keys.balanceDelta(cache, hin, cache.getStub().getTxId());
+            cache.putState(key, cache.getCodecs().getCashCodec().encode(amount));
+        }
+    }
+
+    public static long sum(StateCache cache, String hin) {
+        long sum = 0;
+        try (QueryResultsIterator<KeyValue> deltas = cache.getStateByPartialCompositeKey(Keys.BALANCE_DELTA, hin)) {
+            for (KeyValue delta : deltas) {
+                sum = FixedPoint.add(sum, cache.getCodecs().getCashCodec().decode(delta.getValue()));
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the balance deltas of " + hin, e);
+        }
+        return sum;
+    }
+
+    public static long balanceOf(StateCache cache, Trader trader) {
+        long balance = trader.getBalance();
+        if (trader.isDeltaMode()) {
+            balance = FixedPoint.add(balance, sum(cache, trader.getHin()));
+        }
+        return balance;
+    }
+
+    /**
+     * Folds up to {@link #MAX_COMPACT} deltas into the trader record and removes them.
+     *
+     * @return the number of deltas folded
+     */
+    public static int compact(StateCache cache, Trader trader) {
+        return compact(cache, trader, false);
+    }
+
+    /**
+     * Folds every delta into the trader record, as needed before the account
+     * leaves delta mode or moves to another HIN.
+     *
+     * @throws RuntimeException if more than {@link #MAX_COMPACT} deltas are left
+     */
+    public static void compactAll(StateCache cache, Trader trader) {
+        compact(cache, trader, true);
+    }
+
+    private static int compact(StateCache cache, Trader trader, boolean all) {
+        List<String> folded = new ArrayList<>();
+        long sum = 0;
+        try (QueryResultsIterator<KeyValue> deltas = cache.getStateByPartialCompositeKey(Keys.BALANCE_DELTA, trader.getHin())) {
+            for (KeyValue delta : deltas) {
+                if (folded.size() >= MAX_COMPACT) {
+                    if (all) {
+                        throw new RuntimeException("The trader " + trader.getHin() + " has too many deltas, run compactBalance first");
+                    }
+                    break;
+                }
+                sum = FixedPoint.add(sum, cache.getCodecs().getCashCodec().decode(delta.getValue()));
+                folded.add(delta.getKey());
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the balance deltas of " + trader.getHin(), e);
+        }
+        for (String key : folded) {
+            cache.delState(key);
+        }
+        trader.modBalance(sum);
+        cache.putTrader(trader);
+        return folded.size();
+    }
+}
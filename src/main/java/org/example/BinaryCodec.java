@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+/**
+ * Compact, versioned binary encoding. Every value starts with {@link #MAGIC},
+ * a type tag and a format version, followed by the fields in a fixed order.
+ * Integers are zigzag varints, strings are a varint length and UTF-8 bytes.
+ * Only the version a codec writes is read back. Values that do not start
+ * with the magic byte were written before this format existed and are
+ * handed to {@link #decodeLegacy}.
+ */
+public abstract class BinaryCodec<T> implements StateCodec<T> {
+
+    /** Never the first byte of a JSON document or a decimal number. */
+    public static final byte MAGIC = (byte) 0xE5;
+
+    private final byte type;
+    private final byte version;
+
+    protected BinaryCodec(char type, int version) {
+        this.type = (byte) type;
+        this.version = (byte) version;
+    }
+
+    public static boolean isBinary(byte[] state) {
+        return state != null && state.length >= 3 && state[0] == MAGIC;
+    }
+
+    /**
+     * @return the type tag of a binary value
+     */
+    public static char typeOf(byte[] state) {
+        return (char) state[1];
+    }
+
+    @Override
+    public final byte[] encode(T value) {
+        Writer out = new Writer();
+        out.writeByte(MAGIC);
+        out.writeByte(type);
+        out.writeByte(version);
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public final T decode(byte[] state) {
+        if (state == null || state.length == 0) {
+            return null;
+        }
+        if (!isBinary(state)) {
+            return decodeLegacy(state);
+        }
+        if (state[1] != type) {
+            throw new RuntimeException("A value of type " + typeOf(state) + " cannot be read as " + (char) type);
+        }
+        if (state[2] != version) {
+            throw new RuntimeException("Version " + state[2] + " of type " + (char) type + " is unknown, the contract writes version " + version);
+        }
+        return read(new Reader(state, 3));
+    }
+
+    protected abstract void write(Writer out, T value);
+
+    protected abstract T read(Reader in);
+
+    protected abstract T decodeLegacy(byte[] state);
+
+    public static final class Writer {
+
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        public void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        public void writeLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        public void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    public static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        public Reader(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        public int readByte() {
+            if (position >= buffer.length) {
+                throw new RuntimeException("Unexpected end of a binary value");
+            }
+            return buffer[position++];
+        }
+
+        public boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        public long readLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new RuntimeException("Malformed varint in a binary value");
+        }
+
+        public String readString() {
+            int length = (int) readLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new RuntimeException("Unexpected end of a binary value");
+            }
+            String value = new String(buffer, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import org.json.JSONObject;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonCreator;
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * Open, high, low, close and volume of the trades in one symbol during one
+ * time bucket. Candles of the same bucket merge, which is how the per
+ * transaction deltas of {@link MarketData} add up: the open is taken from
+ * the earliest trade, the close from the latest.
+ */
+@DataType()
+public final class Candle {
+
+    /** Start of the bucket in epoch seconds. */
+    @Property()
+    private final long bucket;
+
+    @Property()
+    private final int priceScale;
+
+    /** Transaction times in epoch milliseconds of the first and the last trade. */
+    @Property()
+    private long openTime;
+
+    @Property()
+    private long closeTime;
+
+    /** Prices in minor units at {@link #getPriceScale()}. */
+    @Property()
+    private long open;
+
+    @Property()
+    private long high;
+
+    @Property()
+    private long low;
+
+    @Property()
+    private long close;
+
+    @Property()
+    private long volume;
+
+    /** Traded cash at {@link FixedPoint#CASH_SCALE}. */
+    @Property()
+    private long notional;
+
+    @Property()
+    private long trades;
+
+    public Candle(final long bucket, final int priceScale) {
+        this(bucket, priceScale, Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0, 0);
+    }
+
+    @JsonCreator
+    public Candle(@JsonProperty("bucket") final long bucket, @JsonProperty("priceScale") final int priceScale,
+            @JsonProperty("openTime") final long openTime, @JsonProperty("closeTime") final long closeTime,
+            @JsonProperty("open") final long open, @JsonProperty("high") final long high, @JsonProperty("low") final long low,
+            @JsonProperty("close") final long close, @JsonProperty("volume") final long volume,
+            @JsonProperty("notional") final long notional, @JsonProperty("trades") final long trades) {
+        this.bucket = bucket;
+        this.priceScale = priceScale;
+        this.openTime = openTime;
+        this.closeTime = closeTime;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.notional = notional;
+        this.trades = trades;
+    }
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public long getOpenTime() {
+        return openTime;
+    }
+
+    public long getCloseTime() {
+        return closeTime;
+    }
+
+    public long getOpen() {
+        return open;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public long getClose() {
+        return close;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public long getNotional() {
+        return notional;
+    }
+
+    public long getTrades() {
+        return trades;
+    }
+
+    /**
+     * The volume weighted average price at {@link FixedPoint#CASH_SCALE}.
+     */
+    public long getVwap() {
+        return volume == 0 ? 0 : notional / volume;
+    }
+
+    /**
+     * Adds a fill executed at the given transaction time, later fills of the same time close the candle.
+     */
+    public void add(long time, Fill fill) {
+        merge(time, time, fill.getPrice(), fill.getPrice(), fill.getPrice(), fill.getPrice(), fill.getQuantity(), fill.getNotional(), 1);
+    }
+
+    /**
+     * Adds the trades of another candle of the same bucket.
+     */
+    public void merge(Candle other) {
+        merge(other.openTime, other.closeTime, other.open, other.high, other.low, other.close, other.volume, other.notional, other.trades);
+    }
+
+    private void merge(long otherOpenTime, long otherCloseTime, long otherOpen, long otherHigh, long otherLow, long otherClose,
+            long otherVolume, long otherNotional, long otherTrades) {
+        if (otherTrades == 0) {
+            return;
+        }
+        if (trades == 0 || otherOpenTime < openTime) {
+            openTime = otherOpenTime;
+            open = otherOpen;
+        }
+        if (trades == 0 || otherCloseTime >= closeTime) {
+            closeTime = otherCloseTime;
+            close = otherClose;
+        }
+        high = Math.max(high, otherHigh);
+        low = Math.min(low, otherLow);
+        volume = FixedPoint.add(volume, otherVolume);
+        notional = FixedPoint.add(notional, otherNotional);
+        trades += otherTrades;
+    }
+
+    public JSONObject toJSON() {
+        JSONObject obj = new JSONObject();
+        obj.put("bucket", bucket);
+        obj.put("open", FixedPoint.format(open, priceScale));
+        obj.put("high", FixedPoint.format(high, priceScale));
+        obj.put("low", FixedPoint.format(low, priceScale));
+        obj.put("close", FixedPoint.format(close, priceScale));
+        obj.put("volume", volume);
+        obj.put("vwap", FixedPoint.format(getVwap(), FixedPoint.CASH_SCALE));
+        obj.put("trades", trades);
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " " + toJSON();
+    }
+}
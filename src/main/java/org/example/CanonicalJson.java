@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON in one canonical form, so that the same value always has the
+ * same bytes whichever peer endorses it and in whatever order it was built.
+ * Every peer of a transaction has to return and write identical bytes, and
+ * a JSONObject, like a HashMap, writes its members in hash order.
+ * <ul>
+ * <li>members sorted by name, in UTF-16 code unit order</li>
+ * <li>no whitespace</li>
+ * <li>numbers in plain decimal without trailing zeros in the fraction, so
+ * 1, 1L and 1.00 are all written 1; not a number and infinities fail</li>
+ * <li>strings with only ", \ and control characters escaped</li>
+ * </ul>
+ */
+public final class CanonicalJson {
+
+    private CanonicalJson() {
+    }
+
+    /**
+     * @param value a JSONObject, JSONArray, Map, Collection, String, Number,
+     *              Boolean or null
+     */
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(out, value);
+        return out.toString();
+    }
+
+    public static byte[] bytes(Object value) {
+        return write(value).getBytes(UTF_8);
+    }
+
+    /**
+     * Rewrites a JSON document, such as one written by Genson, in canonical form.
+     */
+    public static String normalize(String json) {
+        String trimmed = json.trim();
+        if (trimmed.startsWith("[")) {
+            return write(new JSONArray(trimmed));
+        }
+        return write(new JSONObject(trimmed));
+    }
+
+    private static void write(StringBuilder out, Object value) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.append("null");
+        } else if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            Map<String, Object> members = new TreeMap<>();
+            for (String name : obj.keySet()) {
+                members.put(name, obj.get(name));
+            }
+            writeObject(out, members);
+        } else if (value instanceof Map) {
+            Map<String, Object> members = new TreeMap<>();
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                members.put(String.valueOf(member.getKey()), member.getValue());
+            }
+            writeObject(out, members);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                write(out, array.get(i));
+            }
+            out.append(']');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                write(out, element);
+                first = false;
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Number) {
+            out.append(number((Number) value));
+        } else if (value instanceof Boolean) {
+            out.append(value);
+        } else {
+            throw new RuntimeException("Cannot write a " + value.getClass().getSimpleName() + " as canonical JSON");
+        }
+    }
+
+    private static void writeObject(StringBuilder out, Map<String, Object> members) {
+        out.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> member : members.entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            writeString(out, member.getKey());
+            out.append(':');
+            write(out, member.getValue());
+            first = false;
+        }
+        out.append('}');
+    }
+
+    private static String number(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte
+                || number instanceof BigInteger) {
+            return number.toString();
+        }
+        BigDecimal decimal;
+        if (number instanceof BigDecimal) {
+            decimal = (BigDecimal) number;
+        } else {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new RuntimeException("Cannot write " + number + " as canonical JSON");
+            }
+            decimal = new BigDecimal(number.toString());
+        }
+        return decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+    }
+
+    private static void writeString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.owlike.genson.Genson;
+
+/**
+ * The set of codecs used to store the exchange's state. {@link #binary()} is
+ * what the contract writes; it still reads values stored as JSON or decimal
+ * strings. {@link #json()} writes JSON instead.
+ */
+public final class Codecs {
+
+    private static final Genson genson = new Genson();
+
+    private final StateCodec<Trader> traderCodec;
+    private final StateCodec<Security> securityCodec;
+    private final StateCodec<Order> orderCodec;
+    private final StateCodec<Long> amountCodec;
+    private final StateCodec<Long> cashCodec;
+    private final StateCodec<Candle> candleCodec;
+
+    public Codecs(StateCodec<Trader> traderCodec, StateCodec<Security> securityCodec, StateCodec<Order> orderCodec,
+            StateCodec<Long> amountCodec, StateCodec<Long> cashCodec, StateCodec<Candle> candleCodec) {
+        this.traderCodec = traderCodec;
+        this.securityCodec = securityCodec;
+        this.orderCodec = orderCodec;
+        this.amountCodec = amountCodec;
+        this.cashCodec = cashCodec;
+        this.candleCodec = candleCodec;
+    }
+
+    public StateCodec<Trader> getTraderCodec() {
+        return traderCodec;
+    }
+
+    public StateCodec<Security> getSecurityCodec() {
+        return securityCodec;
+    }
+
+    public StateCodec<Order> getOrderCodec() {
+        return orderCodec;
+    }
+
+    public StateCodec<Long> getAmountCodec() {
+        return amountCodec;
+    }
+
+    /**
+     * Cash amounts in minor units at {@link FixedPoint#CASH_SCALE}.
+     */
+    public StateCodec<Long> getCashCodec() {
+        return cashCodec;
+    }
+
+    public StateCodec<Candle> getCandleCodec() {
+        return candleCodec;
+    }
+
+    public static Codecs binary() {
+        return new Codecs(new TraderCodec(), new SecurityCodec(), new OrderCodec(), new AmountCodec(), new CashCodec(), new CandleCodec());
+    }
+
+    public static Codecs json() {
+        return new Codecs(new JsonCodec<>(Trader.class), new JsonCodec<>(Security.class), new JsonCodec<>(Order.class),
+                new DecimalCodec(0), new DecimalCodec(FixedPoint.CASH_SCALE), new JsonCodec<>(Candle.class));
+    }
+
+    private static Long decodeDecimal(byte[] state, int scale) {
+        return state == null || state.length == 0 ? null : FixedPoint.parse(new String(state, UTF_8), scale);
+    }
+
+    public static class DecimalCodec implements StateCodec<Long> {
+
+        private final int scale;
+
+        public DecimalCodec(int scale) {
+            this.scale = scale;
+        }
+
+        @Override
+        public byte[] encode(Long value) {
+            return FixedPoint.format(value, scale).getBytes(UTF_8);
+        }
+
+        @Override
+        public Long decode(byte[] state) {
+            return decodeDecimal(state, scale);
+        }
+    }
+
+    /**
+     * Genson's JSON rewritten by {@link CanonicalJson}, so equal entities are equal bytes.
+     */
+    public static class JsonCodec<T> implements StateCodec<T> {
+
+        private final Class<T> type;
+
+        public JsonCodec(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public byte[] encode(T value) {
+            return CanonicalJson.normalize(genson.serialize(value)).getBytes(UTF_8);
+        }
+
+        @Override
+        public T decode(byte[] state) {
+            return state == null || state.length == 0 ? null : genson.deserialize(new String(state, UTF_8), type);
+        }
+    }
+
+    public static final class TraderCodec extends BinaryCodec<Trader> {
+
+        public TraderCodec() {
+            super('T', 2);
+        }
+
+        @Override
+        protected void write(Writer out, Trader trader) {
+            out.writeString(trader.getHin());
+            out.writeLong(trader.getBalance());
+            out.writeBoolean(trader.isDeltaMode());
+        }
+
+        @Override
+        protected Trader read(Reader in) {
+            String hin = in.readString();
+            long balance = in.readLong();
+            Trader trader = new Trader(hin, balance);
+            trader.setDeltaMode(in.readBoolean());
+            return trader;
+        }
+
+        @Override
+        protected Trader decodeLegacy(byte[] state) {
+            return Trader.fromJSONString(new String(state, UTF_8));
+        }
+    }
+
+    public static final class SecurityCodec extends BinaryCodec<Security> {
+
+        public SecurityCodec() {
+            super('S', 2);
+        }
+
+        @Override
+        protected void write(Writer out, Security security) {
+            out.writeString(security.getOwner());
+            out.writeString(security.getSymbol());
+            out.writeString(security.getName());
+            out.writeLong(security.getTotalSupply());
+            out.writeByte(security.getPriceScale());
+        }
+
+        @Override
+        protected Security read(Reader in) {
+            String owner = in.readString();
+            String symbol = in.readString();
+            String name = in.readString();
+            long totalSupply = in.readLong();
+            int priceScale = in.readByte();
+            return new Security(owner, symbol, name, totalSupply, priceScale);
+        }
+
+        @Override
+        protected Security decodeLegacy(byte[] state) {
+            return Security.fromJSON(state);
+        }
+    }
+
+    public static final class OrderCodec extends BinaryCodec<Order> {
+
+        public OrderCodec() {
+            super('O', 4);
+        }
+
+        @Override
+        protected void write(Writer out, Order order) {
+            out.writeString(order.getOrderId());
+            out.writeString(order.getSymbol());
+            out.writeString(order.getMethod());
+            out.writeLong(order.getQuantity());
+            out.writeLong(order.getRemaining());
+            out.writeLong(order.getPrice());
+            out.writeLong(order.getTimestamp());
+            out.writeBoolean(Boolean.parseBoolean(order.getValid()));
+            out.writeBoolean(Boolean.parseBoolean(order.getProcessed()));
+            out.writeString(order.getTraderHin());
+            out.writeString(order.getStatus());
+            out.writeLong(order.getExpiry());
+            out.writeLong(order.getPlacedAt());
+            out.writeString(order.getPlacedIn());
+            out.writeString(order.getSalt());
+        }
+
+        @Override
+        protected Order read(Reader in) {
+            String orderId = in.readString();
+            String symbol = in.readString();
+            String method = in.readString();
+            long quantity = in.readLong();
+            long remaining = in.readLong();
+            long price = in.readLong();
+            long timestamp = in.readLong();
+            String valid = Boolean.toString(in.readBoolean());
+            String processed = Boolean.toString(in.readBoolean());
+            String traderHin = in.readString();
+            String status = in.readString();
+            long expiry = in.readLong();
+            long placedAt = in.readLong();
+            String placedIn = in.readString();
+            String salt = in.readString();
+            return new Order(orderId, symbol, quantity, price, method, timestamp, valid, processed, traderHin, remaining, status, expiry,
+                    placedAt, placedIn, salt);
+        }
+
+        @Override
+        protected Order decodeLegacy(byte[] state) {
+            return Order.fromJSONString(new String(state, UTF_8));
+        }
+    }
+
+    /**
+     * Plain whole amounts such as holdings.
+     */
+    public static final class AmountCodec extends BinaryCodec<Long> {
+
+        public AmountCodec() {
+            super('A', 1);
+        }
+
+        @Override
+        protected void write(Writer out, Long amount) {
+            out.writeLong(amount);
+        }
+
+        @Override
+        protected Long read(Reader in) {
+            return in.readLong();
+        }
+
+        @Override
+        protected Long decodeLegacy(byte[] state) {
+            return decodeDecimal(state, 0);
+        }
+    }
+
+    /**
+     * Cash amounts such as balance deltas. Deltas written as decimal strings
+     * of whole currency units are scaled up.
+     */
+    public static final class CashCodec extends BinaryCodec<Long> {
+
+        public CashCodec() {
+            super('C', 1);
+        }
+
+        @Override
+        protected void write(Writer out, Long amount) {
+            out.writeLong(amount);
+        }
+
+        @Override
+        protected Long read(Reader in) {
+            return in.readLong();
+        }
+
+        @Override
+        protected Long decodeLegacy(byte[] state) {
+            return decodeDecimal(state, FixedPoint.CASH_SCALE);
+        }
+    }
+
+    public static final class CandleCodec extends BinaryCodec<Candle> {
+
+        public CandleCodec() {
+            super('K', 1);
+        }
+
+        @Override
+        protected void write(Writer out, Candle candle) {
+            out.writeLong(candle.getBucket());
+            out.writeLong(candle.getPriceScale());
+            out.writeLong(candle.getOpenTime());
+            out.writeLong(candle.getCloseTime());
+            out.writeLong(candle.getOpen());
+            out.writeLong(candle.getHigh());
+            out.writeLong(candle.getLow());
+            out.writeLong(candle.getClose());
+            out.writeLong(candle.getVolume());
+            out.writeLong(candle.getNotional());
+            out.writeLong(candle.getTrades());
+        }
+
+        @Override
+        protected Candle read(Reader in) {
+            return new Candle(in.readLong(), (int) in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                    in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+
+        @Override
+        protected Candle decodeLegacy(byte[] state) {
+            return genson.deserialize(new String(state, UTF_8), Candle.class);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digests as lower case hex, the form they take in state and events,
+ * and the canonical encoding of the fields that go into them: longs as eight
+ * bytes big endian, strings as their UTF-8 length followed by the bytes.
+ */
+public final class Digests {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> LOCAL = ThreadLocal.withInitial(Digests::sha256);
+
+    private Digests() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The SHA-256 instance of the calling thread, for digests computed in one
+     * go. It is reset, but shared with every other such use on the thread.
+     */
+    public static MessageDigest local() {
+        MessageDigest digest = LOCAL.get();
+        digest.reset();
+        return digest;
+    }
+
+    public static void update(MessageDigest digest, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (value >>> shift));
+        }
+    }
+
+    public static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        update(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    public static byte[] unhex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new RuntimeException("The hex string " + hex + " has an odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new RuntimeException("The string " + hex + " is not hex");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    public static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
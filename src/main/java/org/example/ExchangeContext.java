@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Transaction context of the {@link SecurityContract}, carries the state cache
+ * that is flushed once the transaction function returns, the metrics of the
+ * transaction and the caller's identity, resolved once.
+ */
+public class ExchangeContext extends Context {
+
+    /** Certificate attribute of the exchange's operators, set to "true". */
+    public static final String ADMIN_ATTRIBUTE = "exchange.admin";
+
+    private final StateCache cache;
+    private final TransactionMetrics metrics;
+    private String callerId;
+    private String hin;
+
+    public ExchangeContext(ChaincodeStub stub, Codecs codecs) {
+        this(stub, codecs, TransactionMetrics.DISABLED);
+    }
+
+    public ExchangeContext(ChaincodeStub stub, Codecs codecs, TransactionMetrics metrics) {
+        super(stub);
+        this.metrics = metrics;
+        this.cache = new StateCache(stub, codecs, metrics);
+    }
+
+    public StateCache getCache() {
+        return cache;
+    }
+
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Emits the transaction's event, Fabric keeps only the last one set.
+     */
+    public void setEvent(String name, byte[] payload) {
+        metrics.event(payload);
+        getStub().setEvent(name, payload);
+    }
+
+    /**
+     * Identity of the submitting client as reported by {@link #getClientIdentity()}.
+     */
+    public String getCallerId() {
+        if (callerId == null) {
+            callerId = getClientIdentity().getId();
+        }
+        return callerId;
+    }
+
+    public String getCallerMspId() {
+        return getClientIdentity().getMSPID();
+    }
+
+    /**
+     * Whether the caller's certificate carries {@link #ADMIN_ATTRIBUTE}.
+     */
+    public boolean isAdmin() {
+        return getClientIdentity().assertAttributeValue(ADMIN_ATTRIBUTE, "true");
+    }
+
+    /**
+     * The caller's HIN, derived on first use, see {@link Hins}.
+     */
+    public String getHin() {
+        if (hin == null) {
+            hin = Hins.of(getCallerMspId(), getCallerId());
+        }
+        return hin;
+    }
+}
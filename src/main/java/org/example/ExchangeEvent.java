@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The payload of a contract event, so that consumers can follow the exchange
+ * from events alone. Besides the fields of its type, every event of version
+ * {@link #VERSION} carries the state the transaction changed:
+ * <ul>
+ * <li>orders, each as it is after the transaction</li>
+ * <li>fills, with price and quantity</li>
+ * <li>positions, each {symbol, hin, quantity} with the quantity held after the transaction</li>
+ * <li>cash, each {hin, delta} with the change at {@link FixedPoint#CASH_SCALE}</li>
+ * </ul>
+ * Consumers tell missed events from the block and transaction index the
+ * peer delivers them at, the payload is not numbered: a counter on the
+ * ledger would make every transaction that emits an event conflict with the
+ * others that touch the same counter.
+ * Events of {@link PrivateOrders} list commitments, each {orderId, hash,
+ * status}, in place of the orders and leave out the fills.
+ */
+public final class ExchangeEvent {
+
+    public static final int VERSION = 2;
+
+    private final String type;
+    private final JSONObject fields = new JSONObject();
+    private final JSONArray orders = new JSONArray();
+    private final JSONArray fills = new JSONArray();
+    private final JSONArray positions = new JSONArray();
+    private final JSONArray cash = new JSONArray();
+    private final JSONArray commitments = new JSONArray();
+
+    public ExchangeEvent(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public ExchangeEvent put(String field, Object value) {
+        fields.put(field, value);
+        return this;
+    }
+
+    public ExchangeEvent order(Order order, int priceScale) {
+        orders.put(order.toJSON(priceScale));
+        return this;
+    }
+
+    /**
+     * Adds a private order by its commitment only.
+     */
+    public ExchangeEvent commitment(Order order) {
+        JSONObject commitment = new JSONObject();
+        commitment.put("orderId", order.getOrderId());
+        commitment.put("hash", order.getHash());
+        commitment.put("status", order.getStatus());
+        commitments.put(commitment);
+        return this;
+    }
+
+    public ExchangeEvent fill(Fill fill) {
+        fills.put(fill.toJSON());
+        return this;
+    }
+
+    public ExchangeEvent position(String symbol, String hin, long quantity) {
+        JSONObject position = new JSONObject();
+        position.put("symbol", symbol);
+        position.put("hin", hin);
+        position.put("quantity", quantity);
+        positions.put(position);
+        return this;
+    }
+
+    public ExchangeEvent cash(String hin, long delta) {
+        JSONObject change = new JSONObject();
+        change.put("hin", hin);
+        change.put("delta", FixedPoint.format(delta, FixedPoint.CASH_SCALE));
+        cash.put(change);
+        return this;
+    }
+
+    /**
+     * Sets the event, the last one set wins in Fabric.
+     */
+    public void emit(ExchangeContext ctx) {
+        JSONObject obj = new JSONObject();
+        obj.put("version", VERSION);
+        obj.put("type", type);
+        obj.put("txId", ctx.getStub().getTxId());
+        obj.put("timestamp", ctx.getStub().getTxTimestamp().getEpochSecond());
+        for (String field : fields.keySet()) {
+            obj.put(field, fields.get(field));
+        }
+        obj.put("orders", orders);
+        obj.put("fills", fills);
+        obj.put("positions", positions);
+        obj.put("cash", cash);
+        if (commitments.length() > 0) {
+            obj.put("commitments", commitments);
+        }
+        ctx.setEvent(type, CanonicalJson.bytes(obj));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.Objects;
+
+import org.json.JSONObject;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+/**
+ * A single execution between a buy and a sell order.
+ */
+@DataType()
+public final class Fill {
+
+    @Property()
+    private final String buyId;
+
+    @Property()
+    private final String sellId;
+
+    @Property()
+    private final String symbol;
+
+    /** Price in minor units at {@link #getPriceScale()}. */
+    @Property()
+    private final long price;
+
+    @Property()
+    private final int priceScale;
+
+    @Property()
+    private final long quantity;
+
+    public Fill(@JsonProperty("buyId") final String buyId, @JsonProperty("sellId") final String sellId,
+            @JsonProperty("symbol") final String symbol, @JsonProperty("price") final long price,
+            @JsonProperty("priceScale") final int priceScale, @JsonProperty("quantity") final long quantity) {
+        this.buyId = buyId;
+        this.sellId = sellId;
+        this.symbol = symbol;
+        this.price = price;
+        this.priceScale = priceScale;
+        this.quantity = quantity;
+    }
+
+    public String getBuyId() {
+        return buyId;
+    }
+
+    public String getSellId() {
+        return sellId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * The cash that changes hands, at {@link FixedPoint#CASH_SCALE}.
+     */
+    public long getNotional() {
+        return FixedPoint.notional(quantity, price, priceScale);
+    }
+
+    public JSONObject toJSON() {
+        JSONObject obj = new JSONObject();
+        obj.put("buyId", buyId);
+        obj.put("sellId", sellId);
+        obj.put("symbol", symbol);
+        obj.put("price", FixedPoint.format(price, priceScale));
+        obj.put("quantity", quantity);
+        return obj;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        Fill other = (Fill) obj;
+
+        return Objects.deepEquals(new Object[] {getBuyId(), getSellId(), getSymbol(), getPrice(), getPriceScale(), getQuantity()},
+                new Object[] {other.getBuyId(), other.getSellId(), other.getSymbol(), other.getPrice(), other.getPriceScale(), other.getQuantity()});
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getBuyId(), getSellId(), getSymbol(), getPrice(), getPriceScale(), getQuantity());
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [buyId=" + buyId + ", sellId=" + sellId
+                + ", symbol=" + symbol + ", price=" + FixedPoint.format(price, priceScale) + ", quantity=" + quantity + "]";
+    }
+}
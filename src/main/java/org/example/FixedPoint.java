@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+/**
+ * Fixed-point arithmetic on plain longs. An amount is a count of minor units
+ * together with a scale, the number of decimal places: 12.34 at scale 2 is
+ * 1234. Cash is always kept at {@link #CASH_SCALE}, prices at the scale of
+ * their security and quantities as whole units. Input is parsed exactly once
+ * at the transaction boundary and all arithmetic fails on overflow instead of
+ * wrapping around.
+ */
+public final class FixedPoint {
+
+    public static final int CASH_SCALE = 4;
+    public static final int DEFAULT_PRICE_SCALE = 2;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Parses a decimal such as "-12.5" into minor units, rejecting more decimal places than the scale allows.
+     */
+    public static long parse(String value, int scale) {
+        if (value == null || value.isEmpty()) {
+            throw new RuntimeException("Missing amount");
+        }
+        int i = 0;
+        boolean negative = value.charAt(0) == '-';
+        if (negative || value.charAt(0) == '+') {
+            i++;
+        }
+        long units = 0;
+        int decimals = -1;
+        boolean digits = false;
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new RuntimeException("The amount " + value + " is not a decimal number");
+            }
+            if (decimals >= 0 && ++decimals > scale) {
+                throw new RuntimeException("The amount " + value + " has more than " + scale + " decimal places");
+            }
+            units = add(multiply(units, 10), c - '0');
+            digits = true;
+        }
+        if (!digits) {
+            throw new RuntimeException("The amount " + value + " is not a decimal number");
+        }
+        units = multiply(units, POWERS_OF_TEN[scale - Math.max(decimals, 0)]);
+        return negative ? -units : units;
+    }
+
+    /**
+     * Parses a whole, strictly positive quantity.
+     */
+    public static long parseQuantity(String value) {
+        long quantity = parse(value, 0);
+        if (quantity <= 0) {
+            throw new RuntimeException("The quantity " + value + " has to be positive");
+        }
+        return quantity;
+    }
+
+    public static String format(long units, int scale) {
+        if (scale == 0) {
+            return Long.toString(units);
+        }
+        StringBuilder digits = new StringBuilder(Long.toString(Math.abs(units)));
+        if (units == Long.MIN_VALUE) {
+            digits.deleteCharAt(0);
+        }
+        while (digits.length() <= scale) {
+            digits.insert(0, '0');
+        }
+        digits.insert(digits.length() - scale, '.');
+        if (units < 0) {
+            digits.insert(0, '-');
+        }
+        return digits.toString();
+    }
+
+    public static long add(long a, long b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Amount overflow adding " + a + " and " + b, e);
+        }
+    }
+
+    public static long subtract(long a, long b) {
+        try {
+            return Math.subtractExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Amount overflow subtracting " + b + " from " + a, e);
+        }
+    }
+
+    public static long multiply(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Amount overflow multiplying " + a + " and " + b, e);
+        }
+    }
+
+    /**
+     * Converts minor units from one scale to a larger or equal one.
+     */
+    public static long rescale(long units, int fromScale, int toScale) {
+        if (toScale < fromScale) {
+            throw new RuntimeException("Cannot reduce the scale of " + units + " from " + fromScale + " to " + toScale);
+        }
+        return multiply(units, POWERS_OF_TEN[toScale - fromScale]);
+    }
+
+    /**
+     * The cash amount, at {@link #CASH_SCALE}, of a quantity traded at a price of the given scale.
+     */
+    public static long notional(long quantity, long price, int priceScale) {
+        return rescale(multiply(quantity, price), priceScale, CASH_SCALE);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+
+/**
+ * Holder identification numbers, the account ids of traders. A HIN is the
+ * SHA-256 of the caller's MSP id and certificate subject, so it is the same
+ * on every peer and for every transaction of the caller, and accounts of
+ * different callers do not collide. Accounts opened before were keyed by the
+ * 32 bit {@link String#hashCode} of the subject, see {@link #legacy}.
+ */
+public final class Hins {
+
+    private Hins() {
+    }
+
+    public static String of(String mspId, String callerId) {
+        MessageDigest digest = Digests.local();
+        digest.update(mspId.getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(callerId.getBytes(UTF_8));
+        return Digests.hex(digest.digest());
+    }
+
+    public static String legacy(String callerId) {
+        return Integer.toString(callerId.hashCode());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+
+/**
+ * The unsold supply of a security listed for primary distribution. Instead
+ * of one position of the issuer that every sale would write, the supply is
+ * split over a number of shards, each under inventory~symbol~shard. A sale
+ * draws from the shard its transaction id hashes to, so sales in one block
+ * only conflict when they hash to the same shard. The terms, the price and
+ * the number of shards, are written once under listing~symbol.
+ */
+public final class Inventory {
+
+    public static final int MAX_SHARDS = 256;
+
+    private final String symbol;
+    private final long price;
+    private final int shards;
+
+    public Inventory(String symbol, long price, int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new RuntimeException("The inventory of " + symbol + " needs between 1 and " + MAX_SHARDS + " shards");
+        }
+        if (price <= 0) {
+            throw new RuntimeException("The issue price of " + symbol + " has to be positive");
+        }
+        this.symbol = symbol;
+        this.price = price;
+        this.shards = shards;
+    }
+
+    /**
+     * @return the inventory of the symbol, null if it was not listed with one
+     */
+    public static Inventory of(StateCache cache, String symbol) {
+        String terms = cache.getStringState(Keys.listing(cache, symbol));
+        if (terms == null) {
+            return null;
+        }
+        JSONObject obj = new JSONObject(terms);
+        return new Inventory(symbol, obj.getLong("price"), obj.getInt("shards"));
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the price per unit, at the price scale of the security
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Writes the terms and splits the quantity evenly over the shards, the
+     * first shards taking one more each for the remainder.
+     */
+    public void list(StateCache cache, long quantity) {
+        JSONObject terms = new JSONObject();
+        terms.put("price", price);
+        terms.put("shards", shards);
+        cache.putStringState(Keys.listing(cache, symbol), CanonicalJson.write(terms));
+        for (int shard = 0; shard < shards; shard++) {
+            long amount = quantity / shards + (shard < quantity % shards ? 1 : 0);
+            if (amount > 0) {
+                cache.putAmount(Keys.inventory(cache, symbol, shard), amount);
+            }
+        }
+    }
+
+    /**
+     * The shard a transaction draws from first, the same on every endorser.
+     */
+    public int shardOf(String txId) {
+        MessageDigest digest = Digests.local();
+        Digests.update(digest, txId);
+        byte[] hash = digest.digest();
+        int head = ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16) | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+        return Math.floorMod(head, shards);
+    }
+
+    /**
+     * Takes the quantity from the shard of the transaction and, if that runs
+     * short, from the shards after it in turn.
+     *
+     * @return the shards drawn from, in order
+     */
+    public List<Integer> take(StateCache cache, String txId, long quantity) {
+        if (quantity <= 0) {
+            throw new RuntimeException("The quantity has to be positive, got " + quantity);
+        }
+        List<Integer> drawn = new ArrayList<>();
+        long missing = quantity;
+        int first = shardOf(txId);
+        for (int i = 0; i < shards && missing > 0; i++) {
+            int shard = (first + i) % shards;
+            String key = Keys.inventory(cache, symbol, shard);
+            long available = cache.getAmount(key);
+            if (available == 0) {
+                continue;
+            }
+            long taken = Math.min(available, missing);
+            if (available == taken) {
+                cache.delState(key);
+            } else {
+                cache.putAmount(key, available - taken);
+            }
+            missing -= taken;
+            drawn.add(shard);
+        }
+        if (missing > 0) {
+            throw new RuntimeException("The issuer of " + symbol + " has only " + (quantity - missing) + " left to sell");
+        }
+        return drawn;
+    }
+
+    public long remaining(StateCache cache, int shard) {
+        return cache.getAmount(Keys.inventory(cache, symbol, shard));
+    }
+
+    /**
+     * @return the unsold quantity over all shards
+     */
+    public long remaining(StateCache cache) {
+        long total = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            total = FixedPoint.add(total, remaining(cache, shard));
+        }
+        return total;
+    }
+}
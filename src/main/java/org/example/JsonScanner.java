@@ -0,0 +1,210 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Forward-only reader over UTF-8 JSON bytes. Members are read one at a time
+ * and values that are not needed are skipped without building them, so a
+ * legacy document with a large member, such as the balances of a widely
+ * held security, costs one pass and no allocation for what is skipped.
+ * It reads what the contract wrote, not a validator: input that is not JSON
+ * fails with a RuntimeException, a missing comma between members does not.
+ */
+public final class JsonScanner {
+
+    private final byte[] json;
+    private int position;
+
+    public JsonScanner(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * Enters an object.
+     *
+     * @return false if the value is null, which is consumed
+     */
+    public boolean beginObject() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return false;
+        }
+        expect('{');
+        return true;
+    }
+
+    /**
+     * The name of the next member of the current object, whose value is read
+     * next, or null when the object ends.
+     */
+    public String nextName() {
+        byte next = peek();
+        if (next == '}') {
+            position++;
+            return null;
+        }
+        if (next == ',') {
+            position++;
+        }
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    public String nextString() {
+        expect('"');
+        int start = position;
+        StringBuilder escaped = null;
+        while (true) {
+            byte b = at(position++);
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                if (escaped == null) {
+                    escaped = new StringBuilder();
+                }
+                escaped.append(new String(json, start, position - 1 - start, UTF_8));
+                escaped.append(unescape());
+                start = position;
+            }
+        }
+        String tail = new String(json, start, position - 1 - start, UTF_8);
+        return escaped == null ? tail : escaped.append(tail).toString();
+    }
+
+    /**
+     * A string, number or literal as its text, strings unquoted.
+     */
+    public String nextScalar() {
+        byte next = peek();
+        if (next == '"') {
+            return nextString();
+        }
+        if (next == '{' || next == '[') {
+            throw malformed();
+        }
+        int start = position;
+        while (position < json.length && !isDelimiter(json[position])) {
+            position++;
+        }
+        if (start == position) {
+            throw malformed();
+        }
+        return new String(json, start, position - start, UTF_8);
+    }
+
+    public long nextLong() {
+        return Long.parseLong(nextScalar());
+    }
+
+    public void skipValue() {
+        byte next = peek();
+        if (next != '{' && next != '[') {
+            if (next == '"') {
+                skipString();
+            } else {
+                nextScalar();
+            }
+            return;
+        }
+        int depth = 0;
+        do {
+            byte b = at(position++);
+            if (b == '"') {
+                position--;
+                skipString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipString() {
+        expect('"');
+        while (true) {
+            byte b = at(position++);
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                position++;
+            }
+        }
+    }
+
+    private char unescape() {
+        byte b = at(position++);
+        switch (b) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > json.length) {
+                    throw malformed();
+                }
+                char c = (char) Integer.parseInt(new String(json, position, 4, UTF_8), 16);
+                position += 4;
+                return c;
+            default:
+                return (char) b;
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (at(position++) != literal.charAt(i)) {
+                throw malformed();
+            }
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw malformed();
+        }
+        position++;
+    }
+
+    /**
+     * The next byte that is not whitespace, without consuming it.
+     */
+    private byte peek() {
+        while (position < json.length && isWhitespace(json[position])) {
+            position++;
+        }
+        return at(position);
+    }
+
+    private byte at(int index) {
+        if (index >= json.length) {
+            throw malformed();
+        }
+        return json[index];
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return isWhitespace(b) || b == ',' || b == '}' || b == ']' || b == ':';
+    }
+
+    private RuntimeException malformed() {
+        return new RuntimeException("Malformed JSON at offset " + position);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+/**
+ * The key schema of the exchange. Every entry lives under a composite key
+ * whose object type names what it holds, so keys of different types never
+ * collide and a partial key scan covers exactly one type:
+ * <ul>
+ * <li>trader~hin, security~symbol, order~orderId for the entities</li>
+ * <li>hin~alias~legacyHin for migrated accounts, see {@link Hins}</li>
+ * <li>holding~symbol~hin for positions and portfolio~hin~symbol, the same
+ * amount indexed by holder</li>
+ * <li>balance~delta~hin~txId for cash deltas, see {@link BalanceDeltas}</li>
+ * <li>book~symbol~side~price~placedAt~txId~orderId for resting orders, see {@link OrderBook}</li>
+ * <li>order~trader~hin~orderId, order~status~symbol~side~status~orderId and
+ * order~closed~day~orderId, see {@link OrderIndex}</li>
+ * <li>archive~day~txId for archived orders, see {@link OrderArchive}</li>
+ * <li>candle~symbol~interval~period~bucket[~txId] for market data, see {@link MarketData}</li>
+ * <li>settlement~txId for the Merkle tree over the fills of a transaction, see {@link Settlement}</li>
+ * <li>listing~symbol and inventory~symbol~shard for the unsold supply of a
+ * listing, see {@link Inventory}</li>
+ * <li>commitment~orderId for the public part of a private order, see {@link PrivateOrders}</li>
+ * </ul>
+ * Simple keys are what older versions of the contract wrote, {@link #entityOf}
+ * tells their types apart for the migration.
+ */
+public final class Keys {
+
+    public static final String TRADER = "trader";
+    public static final String HIN_ALIAS = "hin~alias";
+    public static final String SECURITY = "security";
+    public static final String ORDER = "order";
+    public static final String HOLDING = "holding";
+    public static final String PORTFOLIO = "portfolio";
+    public static final String BALANCE_DELTA = "balance~delta";
+    public static final String BOOK = "book";
+    public static final String ORDER_BY_TRADER = "order~trader";
+    public static final String ORDER_BY_STATUS = "order~status";
+    public static final String ORDER_BY_CLOSE = "order~closed";
+    public static final String ARCHIVE = "archive";
+    public static final String CANDLE = "candle";
+    public static final String SETTLEMENT = "settlement";
+    public static final String LISTING = "listing";
+    public static final String INVENTORY = "inventory";
+    public static final String COMMITMENT = "commitment";
+
+    private Keys() {
+    }
+
+    public static String trader(StateCache cache, String hin) {
+        return cache.createCompositeKey(TRADER, hin);
+    }
+
+    public static String hinAlias(StateCache cache, String legacyHin) {
+        return cache.createCompositeKey(HIN_ALIAS, legacyHin);
+    }
+
+    public static String security(StateCache cache, String symbol) {
+        return cache.createCompositeKey(SECURITY, symbol);
+    }
+
+    public static String order(StateCache cache, String orderId) {
+        return cache.createCompositeKey(ORDER, orderId);
+    }
+
+    public static String holding(StateCache cache, String symbol, String hin) {
+        return cache.createCompositeKey(HOLDING, symbol, hin);
+    }
+
+    public static String portfolio(StateCache cache, String hin, String symbol) {
+        return cache.createCompositeKey(PORTFOLIO, hin, symbol);
+    }
+
+    public static String balanceDelta(StateCache cache, String hin, String txId) {
+        return cache.createCompositeKey(BALANCE_DELTA, hin, txId);
+    }
+
+    /**
+     * The book entry of a resting order. Time priority comes from the
+     * transaction that placed the order, its id breaking ties, never from
+     * the timestamp the client passed in.
+     */
+    public static String book(StateCache cache, Order order) {
+        return cache.createCompositeKey(BOOK, order.getSymbol(), order.getMethod(),
+                priceKey(order.getMethod(), order.getPrice()), timeKey(order.getPlacedAt()), order.getPlacedIn(), order.getOrderId());
+    }
+
+    public static String orderByTrader(StateCache cache, Order order) {
+        return cache.createCompositeKey(ORDER_BY_TRADER, order.getTraderHin(), order.getOrderId());
+    }
+
+    public static String orderByStatus(StateCache cache, Order order) {
+        return cache.createCompositeKey(ORDER_BY_STATUS, order.getSymbol(), order.getMethod(), order.getStatus(), order.getOrderId());
+    }
+
+    public static String orderByClose(StateCache cache, String day, Order order) {
+        return cache.createCompositeKey(ORDER_BY_CLOSE, day, order.getOrderId());
+    }
+
+    public static String archive(StateCache cache, String day, String txId) {
+        return cache.createCompositeKey(ARCHIVE, day, txId);
+    }
+
+    public static String settlement(StateCache cache, String txId) {
+        return cache.createCompositeKey(SETTLEMENT, txId);
+    }
+
+    public static String listing(StateCache cache, String symbol) {
+        return cache.createCompositeKey(LISTING, symbol);
+    }
+
+    public static String inventory(StateCache cache, String symbol, int shard) {
+        return cache.createCompositeKey(INVENTORY, symbol, Integer.toString(shard));
+    }
+
+    public static String commitment(StateCache cache, String orderId) {
+        return cache.createCompositeKey(COMMITMENT, orderId);
+    }
+
+    /**
+     * The candle delta of one transaction.
+     */
+    public static String candle(StateCache cache, String symbol, String interval, String period, long bucket, String txId) {
+        return cache.createCompositeKey(CANDLE, symbol, interval, period, timeKey(bucket), txId);
+    }
+
+    /**
+     * The candle that compacted deltas are folded into, it sorts before the deltas of its bucket.
+     */
+    public static String candle(StateCache cache, String symbol, String interval, String period, long bucket) {
+        return cache.createCompositeKey(CANDLE, symbol, interval, period, timeKey(bucket));
+    }
+
+    /**
+     * Encodes a price so that keys sort by priority: asks ascending, bids descending.
+     */
+    static String priceKey(String method, long price) {
+        return String.format("%019d", Order.BUY.equals(method) ? Long.MAX_VALUE - price : price);
+    }
+
+    static long priceOf(String method, String priceKey) {
+        long encoded = Long.parseLong(priceKey);
+        return Order.BUY.equals(method) ? Long.MAX_VALUE - encoded : encoded;
+    }
+
+    static String timeKey(long timestamp) {
+        return String.format("%019d", timestamp);
+    }
+
+    /**
+     * Tells which entity a value stored under a simple key holds, from the
+     * tag of the binary encoding or the fields of the legacy JSON.
+     *
+     * @return {@link #TRADER}, {@link #SECURITY}, {@link #ORDER} or null if unknown
+     */
+    public static String entityOf(byte[] value) {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        if (BinaryCodec.isBinary(value)) {
+            switch (BinaryCodec.typeOf(value)) {
+                case 'T':
+                    return TRADER;
+                case 'S':
+                    return SECURITY;
+                case 'O':
+                    return ORDER;
+                default:
+                    return null;
+            }
+        }
+        if (value[0] != '{') {
+            return null;
+        }
+        boolean security = false;
+        boolean trader = false;
+        try {
+            JsonScanner scanner = new JsonScanner(value);
+            scanner.beginObject();
+            for (String field = scanner.nextName(); field != null; field = scanner.nextName()) {
+                if ("orderId".equals(field)) {
+                    return ORDER;
+                }
+                security |= "totalSupply".equals(field);
+                trader |= "hin".equals(field);
+                scanner.skipValue();
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return security ? SECURITY : trader ? TRADER : null;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Per-symbol {@link Candle}s for 1 minute and 1 day buckets, maintained by
+ * the settling transactions themselves. Like {@link BalanceDeltas} every
+ * transaction writes its own delta under
+ * candle~symbol~interval~period~bucket~txId without reading anything, so
+ * concurrent fills never conflict. The period, the UTC day of a minute bucket
+ * or the UTC year of a day bucket, bounds the keys a reader has to scan.
+ * {@link #compact} folds the deltas of a period into one candle per bucket.
+ */
+public final class MarketData {
+
+    public static final String MINUTE = "1m";
+    public static final String DAY = "1d";
+
+    /** Upper bound on the deltas folded by a single compaction. */
+    public static final int MAX_COMPACT = 1000;
+
+    /** Entries read per page when scanning the candles of a period. */
+    private static final int SCAN_PAGE = 1000;
+
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yyyy").withZone(ZoneOffset.UTC);
+
+    private MarketData() {
+    }
+
+    /**
+     * @return the start of the bucket holding the instant, in epoch seconds
+     */
+    public static long bucketOf(String interval, Instant time) {
+        long length = MINUTE.equals(interval) ? 60 : 86400;
+        return time.getEpochSecond() - Math.floorMod(time.getEpochSecond(), length);
+    }
+
+    /**
+     * @return the period of the bucket holding the instant: yyyyMMdd for minutes, yyyy for days
+     */
+    public static String periodOf(String interval, Instant time) {
+        return MINUTE.equals(interval) ? OrderIndex.dayOf(time) : YEAR.format(time);
+    }
+
+    public static void checkInterval(String interval) {
+        if (!MINUTE.equals(interval) && !DAY.equals(interval)) {
+            throw new RuntimeException("The interval " + interval + " is neither " + MINUTE + " nor " + DAY);
+        }
+    }
+
+    /**
+     * Writes the fills of this transaction as one delta per symbol and bucket of each interval.
+     */
+    public static void record(StateCache cache, List<Fill> fills) {
+        if (fills.isEmpty()) {
+            return;
+        }
+        Instant time = cache.getStub().getTxTimestamp();
+        String txId = cache.getStub().getTxId();
+        Map<String, Candle> deltas = new LinkedHashMap<>();
+        for (Fill fill : fills) {
+            for (String interval : new String[] {MINUTE, DAY}) {
+                long bucket = bucketOf(interval, time);
+                String key = Keys.candle(cache, fill.getSymbol(), interval, periodOf(interval, time), bucket, txId);
+                deltas.computeIfAbsent(key, k -> new Candle(bucket, fill.getPriceScale())).add(time.toEpochMilli(), fill);
+            }
+        }
+        for (Map.Entry<String, Candle> delta : deltas.entrySet()) {
+            cache.putState(delta.getKey(), cache.getCodecs().getCandleCodec().encode(delta.getValue()));
+        }
+    }
+
+    /**
+     * At most limit candles of a period in bucket order, each merged from its
+     * compacted candle and deltas. The scan starts at the key of the first
+     * bucket and reads {@link #SCAN_PAGE} entries at a time, so it costs the
+     * page and not the period before it. It stops at the first entry of the
+     * bucket after the last candle, which is returned as one more candle of
+     * that entry alone, for its bucket to start the next page.
+     *
+     * @param from the first bucket to read, or null for the start of the period
+     */
+    public static List<Candle> candles(StateCache cache, String symbol, String interval, String period, Long from, int limit) {
+        List<Candle> candles = new ArrayList<>();
+        String bookmark = from == null ? "" : Keys.candle(cache, symbol, interval, period, from);
+        Candle current = null;
+        do {
+            try (QueryResultsIteratorWithMetadata<KeyValue> entries = cache.getStateByPartialCompositeKeyWithPagination(SCAN_PAGE,
+                    bookmark, Keys.CANDLE, symbol, interval, period)) {
+                for (KeyValue entry : entries) {
+                    Candle candle = cache.getCodecs().getCandleCodec().decode(entry.getValue());
+                    if (current != null && current.getBucket() == candle.getBucket()) {
+                        current.merge(candle);
+                        continue;
+                    }
+                    current = candle;
+                    candles.add(current);
+                    if (candles.size() > limit) {
+                        return candles;
+                    }
+                }
+                bookmark = entries.getMetadata() == null ? "" : entries.getMetadata().getBookmark();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Could not read the " + interval + " candles of " + symbol + " for " + period, e);
+            }
+        } while (!bookmark.isEmpty());
+        return candles;
+    }
+
+    /**
+     * The candle of one bucket, merged from its compacted candle and at most
+     * {@link #MAX_COMPACT} deltas. A bucket with more deltas has to be
+     * compacted first, so that the read stays bounded while it trades.
+     *
+     * @return the candle, null if the bucket has no fills
+     */
+    public static Candle candle(StateCache cache, String symbol, String interval, String period, long bucket) {
+        Candle merged = null;
+        int count = 0;
+        try (QueryResultsIterator<KeyValue> entries = cache.getStateByPartialCompositeKey(Keys.CANDLE, symbol, interval, period,
+                Keys.timeKey(bucket))) {
+            for (KeyValue entry : entries) {
+                if (count++ > MAX_COMPACT) {
+                    throw new RuntimeException("The " + interval + " candle of " + symbol + " at " + bucket + " has more than "
+                            + MAX_COMPACT + " deltas, fold them with compactCandles");
+                }
+                Candle candle = cache.getCodecs().getCandleCodec().decode(entry.getValue());
+                if (merged == null) {
+                    merged = candle;
+                } else {
+                    merged.merge(candle);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the " + interval + " candles of " + symbol + " for " + period, e);
+        }
+        return merged;
+    }
+
+    /**
+     * Folds up to {@link #MAX_COMPACT} deltas of a period into one candle per
+     * bucket. Compacting a bucket that still trades can fail validation with
+     * a phantom read and is best left until the bucket is over.
+     *
+     * @return the number of deltas folded
+     */
+    public static int compact(StateCache cache, String symbol, String interval, String period) {
+        Map<Long, Candle> folded = new LinkedHashMap<>();
+        Set<Long> changed = new LinkedHashSet<>();
+        int count = 0;
+        try (QueryResultsIterator<KeyValue> entries = cache.getStateByPartialCompositeKey(Keys.CANDLE, symbol, interval, period)) {
+            for (KeyValue entry : entries) {
+                boolean delta = cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().size() > 4;
+                if (delta && count >= MAX_COMPACT) {
+                    break;
+                }
+                Candle candle = cache.getCodecs().getCandleCodec().decode(entry.getValue());
+                Candle into = folded.get(candle.getBucket());
+                if (into == null) {
+                    folded.put(candle.getBucket(), candle);
+                } else {
+                    into.merge(candle);
+                }
+                if (delta) {
+                    cache.delState(entry.getKey());
+                    changed.add(candle.getBucket());
+                    count++;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the " + interval + " candles of " + symbol + " for " + period, e);
+        }
+        for (Long bucket : changed) {
+            Candle candle = folded.get(bucket);
+            cache.putState(Keys.candle(cache, symbol, interval, period, candle.getBucket()), cache.getCodecs().getCandleCodec().encode(candle));
+        }
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merkle trees over the fills of a settlement, laid out as in RFC 6962: a
+ * leaf is the SHA-256 of 0x00 and the leaf data, a node the SHA-256 of 0x01
+ * and both children, and a tree of n leaves splits after the largest power
+ * of two below n. A leaf is proven by the O(log n) hashes of its siblings,
+ * deepest first.
+ */
+public final class Merkle {
+
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+
+    private Merkle() {
+    }
+
+    /**
+     * The leaf of a fill, committing to the fill and to both orders as they were right after it.
+     */
+    public static byte[] leaf(Fill fill, String buyCommitment, String sellCommitment) {
+        MessageDigest digest = Digests.local();
+        digest.update(LEAF);
+        Digests.update(digest, fill.getBuyId());
+        Digests.update(digest, fill.getSellId());
+        Digests.update(digest, fill.getSymbol());
+        Digests.update(digest, fill.getPrice());
+        Digests.update(digest, fill.getPriceScale());
+        Digests.update(digest, fill.getQuantity());
+        Digests.update(digest, buyCommitment);
+        Digests.update(digest, sellCommitment);
+        return digest.digest();
+    }
+
+    public static byte[] root(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            throw new RuntimeException("A Merkle tree needs at least one leaf");
+        }
+        return root(leaves, 0, leaves.size());
+    }
+
+    private static byte[] root(List<byte[]> leaves, int from, int to) {
+        if (to - from == 1) {
+            return leaves.get(from);
+        }
+        int split = from + split(to - from);
+        return node(root(leaves, from, split), root(leaves, split, to));
+    }
+
+    /**
+     * @return the sibling hashes from the leaf at index up to the root
+     */
+    public static List<byte[]> proof(List<byte[]> leaves, int index) {
+        if (index < 0 || index >= leaves.size()) {
+            throw new RuntimeException("There is no leaf " + index + " among " + leaves.size());
+        }
+        List<byte[]> proof = new ArrayList<>();
+        proof(leaves, index, 0, leaves.size(), proof);
+        return proof;
+    }
+
+    private static void proof(List<byte[]> leaves, int index, int from, int to, List<byte[]> proof) {
+        if (to - from == 1) {
+            return;
+        }
+        int split = from + split(to - from);
+        if (index < split) {
+            proof(leaves, index, from, split, proof);
+            proof.add(root(leaves, split, to));
+        } else {
+            proof(leaves, index, split, to, proof);
+            proof.add(root(leaves, from, split));
+        }
+    }
+
+    /**
+     * Checks that a leaf is at index of a tree with count leaves and the given root.
+     */
+    public static boolean verify(byte[] leaf, int index, int count, List<byte[]> proof, byte[] root) {
+        if (index < 0 || index >= count) {
+            return false;
+        }
+        long fn = index;
+        long sn = count - 1;
+        byte[] hash = leaf;
+        for (byte[] sibling : proof) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                hash = node(sibling, hash);
+                while ((fn & 1) == 0 && fn != 0) {
+                    fn >>= 1;
+                    sn >>= 1;
+                }
+            } else {
+                hash = node(hash, sibling);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return sn == 0 && Arrays.equals(hash, root);
+    }
+
+    private static int split(int size) {
+        return Integer.highestOneBit(size - 1);
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        MessageDigest digest = Digests.local();
+        digest.update(NODE);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+}
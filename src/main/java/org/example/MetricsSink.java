@@ -0,0 +1,36 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.logging.Logger;
+
+/**
+ * Receives the metrics of every transaction the contract completes.
+ */
+public interface MetricsSink {
+
+    /** Records nothing; transactions then run with {@link TransactionMetrics#DISABLED}. */
+    MetricsSink NOOP = metrics -> { };
+
+    /** Environment variable selecting the sink, {@code log} for {@link #LOG}. */
+    String ENVIRONMENT = "HYPEXCHANGE_METRICS";
+
+    /** Writes one JSON record per transaction to the {@code org.example.metrics} logger. */
+    MetricsSink LOG = new MetricsSink() {
+
+        private final Logger logger = Logger.getLogger("org.example.metrics");
+
+        @Override
+        public void record(TransactionMetrics metrics) {
+            logger.info(metrics.toJSON());
+        }
+    };
+
+    void record(TransactionMetrics metrics);
+
+    static MetricsSink fromEnvironment() {
+        return "log".equalsIgnoreCase(System.getenv(ENVIRONMENT)) ? LOG : NOOP;
+    }
+}
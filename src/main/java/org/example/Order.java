@@ -4,40 +4,324 @@
 
 package org.example;
 
+import java.security.MessageDigest;
 import java.util.Objects;
 
+import org.json.JSONObject;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import com.owlike.genson.annotation.JsonCreator;
 import com.owlike.genson.annotation.JsonProperty;
 
 @DataType()
 public final class Order {
 
+    public static final String BUY = "0";
+    public static final String SELL = "1";
+
+    /** Lifecycle statuses, the last three are terminal. */
+    public static final String OPEN = "open";
+    public static final String PARTIALLY_FILLED = "partially_filled";
+    public static final String FILLED = "filled";
+    public static final String CANCELLED = "cancelled";
+    public static final String EXPIRED = "expired";
+
+    @Property()
+    private final String orderId;
+
+    @Property()
+    private final String symbol;
+
+    @Property()
+    private final long quantity;
+
+    /** Limit price in minor units at the price scale of the security. */
+    @Property()
+    private final long price;
+
+    @Property()
+    private final String method;
+
+    @Property()
+    private final long timestamp;
+
+    @Property()
+    private final String valid;
+
+    @Property()
+    private String processed;
+
+    @Property()
+    private final String traderHin;
+
+    @Property()
+    private long remaining;
+
+    @Property()
+    private String status;
+
+    /** Transaction time in epoch seconds from which the order is expired, 0 if it never expires. */
     @Property()
-    private String orderId;
+    private final long expiry;
 
+    /**
+     * Time in epoch nanoseconds and id of the transaction that placed the
+     * order, its time priority in the book. The client's timestamp is not
+     * used for that.
+     */
+    @Property()
+    private final long placedAt;
+
+    @Property()
+    private final String placedIn;
+
+    /** Random hex mixed into the commitment of a private order, empty for public ones. */
+    @Property()
+    private final String salt;
+
+    /** The commitment to the order, computed on first use, see {@link #getHash()}. */
     @Property()
     private String orderHash;
 
+    public Order(final String orderId, final String symbol, final long quantity, final long price, final String method,
+            final long timestamp, final String valid, final String processed, final String traderHin) {
+        this(orderId, symbol, quantity, price, method, timestamp, valid, processed, traderHin, quantity);
+    }
+
+    public Order(final String orderId, final String symbol, final long quantity, final long price, final String method,
+            final long timestamp, final String valid, final String processed, final String traderHin, final long remaining) {
+        this(orderId, symbol, quantity, price, method, timestamp, valid, processed, traderHin, remaining, null, 0);
+    }
+
+    /**
+     * @param status the lifecycle status, derived from processed and remaining if null
+     */
+    public Order(final String orderId, final String symbol, final long quantity, final long price, final String method,
+            final long timestamp, final String valid, final String processed, final String traderHin, final long remaining,
+            final String status, final long expiry) {
+        this(orderId, symbol, quantity, price, method, timestamp, valid, processed, traderHin, remaining, status, expiry, 0, "", "");
+    }
+
+    /**
+     * @param placedAt the time of the placing transaction in epoch nanoseconds
+     * @param placedIn the id of the placing transaction
+     * @param salt     random hex for private orders, see {@link PrivateOrders}
+     */
+    @JsonCreator
     public Order(@JsonProperty("orderId") final String orderId, @JsonProperty("symbol") final String symbol,
-            @JsonProperty("quantity") final String quantity, @JsonProperty("price") final String price,
-            @JsonProperty("method") final String method, @JsonProperty("timestamp") final String timestamp,
+            @JsonProperty("quantity") final long quantity, @JsonProperty("price") final long price,
+            @JsonProperty("method") final String method, @JsonProperty("timestamp") final long timestamp,
             @JsonProperty("valid") final String valid, @JsonProperty("processed") final String processed,
-            @JsonProperty("traderHin") final String traderHin){
-        String orderString = orderId + symbol + quantity +  price +  method +  timestamp + valid + processed + traderHin;
-        this.orderHash = Integer.toString(orderString.hashCode());
+            @JsonProperty("traderHin") final String traderHin, @JsonProperty("remaining") final long remaining,
+            @JsonProperty("status") final String status, @JsonProperty("expiry") final long expiry,
+            @JsonProperty("placedAt") final long placedAt, @JsonProperty("placedIn") final String placedIn,
+            @JsonProperty("salt") final String salt){
         this.orderId = orderId;
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+        this.method = method;
+        this.timestamp = timestamp;
+        this.valid = valid;
+        this.processed = processed;
+        this.traderHin = traderHin;
+        this.remaining = remaining;
+        this.expiry = expiry;
+        this.placedAt = placedAt;
+        this.placedIn = placedIn == null ? "" : placedIn;
+        this.salt = salt == null ? "" : salt;
+        if (status != null) {
+            this.status = status;
+        } else if (isOpen()) {
+            this.status = remaining < quantity ? PARTIALLY_FILLED : OPEN;
+        } else {
+            this.status = remaining == 0 ? FILLED : CANCELLED;
+        }
     }
 
+    /**
+     * The SHA-256 commitment to the order's terms and state, processed flag,
+     * remaining quantity, status and expiry, and to its salt, over the
+     * canonical encoding of {@link Digests}, as hex. It is computed once per change and fed field
+     * by field into a reused digest.
+     */
     public String getHash() {
+        if (orderHash == null) {
+            MessageDigest digest = Digests.local();
+            Digests.update(digest, orderId);
+            Digests.update(digest, symbol);
+            Digests.update(digest, quantity);
+            Digests.update(digest, price);
+            Digests.update(digest, method);
+            Digests.update(digest, timestamp);
+            Digests.update(digest, valid);
+            Digests.update(digest, processed);
+            Digests.update(digest, traderHin);
+            Digests.update(digest, remaining);
+            Digests.update(digest, status);
+            Digests.update(digest, expiry);
+            Digests.update(digest, salt);
+            orderHash = Digests.hex(digest.digest());
+        }
         return orderHash;
     }
 
+    private void resetHash() {
+        this.orderHash = null;
+    }
+
     public String getOrderId() {
         return orderId;
     }
 
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getValid() {
+        return valid;
+    }
+
+    public String getProcessed() {
+        return processed;
+    }
+
+    public String getTraderHin() {
+        return traderHin;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getExpiry() {
+        return expiry;
+    }
+
+    public long getPlacedAt() {
+        return placedAt;
+    }
+
+    public String getPlacedIn() {
+        return placedIn;
+    }
+
+    public String getSalt() {
+        return salt;
+    }
+
+    /**
+     * @return a copy of this order owned by another HIN, for account migrations
+     */
+    public Order withTrader(String hin) {
+        return new Order(orderId, symbol, quantity, price, method, timestamp, valid, processed, hin, remaining, status, expiry,
+                placedAt, placedIn, salt);
+    }
+
+    /**
+     * @param now transaction time in epoch seconds
+     */
+    public boolean isExpired(long now) {
+        return expiry > 0 && now >= expiry;
+    }
+
+    public boolean isBuy() {
+        return BUY.equals(method);
+    }
+
+    public boolean isOpen() {
+        return !"true".equals(processed);
+    }
+
+    /**
+     * Books a (partial) fill against this order, the order is processed once nothing remains.
+     */
+    public void fill(long fillQuantity) {
+        long left = remaining - fillQuantity;
+        if (left < 0) {
+            throw new RuntimeException("The order " + orderId + " has only " + remaining + " left");
+        }
+        this.remaining = left;
+        if (left == 0) {
+            this.processed = "true";
+            this.status = FILLED;
+        } else {
+            this.status = PARTIALLY_FILLED;
+        }
+        resetHash();
+    }
+
+    /**
+     * Closes the order without filling the remaining quantity.
+     *
+     * @param reason {@link #CANCELLED} or {@link #EXPIRED}
+     */
+    public void close(String reason) {
+        if (!CANCELLED.equals(reason) && !EXPIRED.equals(reason)) {
+            throw new RuntimeException("The order " + orderId + " cannot be closed as " + reason);
+        }
+        this.processed = "true";
+        this.status = reason;
+        resetHash();
+    }
+
+    public JSONObject toJSON(int priceScale) {
+        JSONObject obj = new JSONObject();
+        obj.put("orderId", orderId);
+        obj.put("symbol", symbol);
+        obj.put("method", method);
+        obj.put("quantity", quantity);
+        obj.put("remaining", remaining);
+        obj.put("price", FixedPoint.format(price, priceScale));
+        obj.put("timestamp", timestamp);
+        obj.put("owner", traderHin);
+        obj.put("status", status);
+        if (expiry > 0) {
+            obj.put("expiry", expiry);
+        }
+        if (!placedIn.isEmpty()) {
+            obj.put("placedAt", placedAt);
+            obj.put("placedIn", placedIn);
+        }
+        if (!salt.isEmpty()) {
+            obj.put("salt", salt);
+        }
+        return obj;
+    }
+
+    /**
+     * Reads an order back from {@link #toJSON}, live orders being unprocessed and terminal ones processed.
+     */
+    public static Order fromJSON(JSONObject obj, int priceScale) {
+        String status = obj.getString("status");
+        return new Order(obj.getString("orderId"), obj.getString("symbol"), obj.getLong("quantity"),
+                FixedPoint.parse(obj.get("price").toString(), priceScale), obj.getString("method"), obj.getLong("timestamp"),
+                "true", Boolean.toString(OrderIndex.isTerminal(status)), obj.getString("owner"), obj.getLong("remaining"),
+                status, obj.optLong("expiry", 0), obj.optLong("placedAt", 0), obj.optString("placedIn", ""),
+                obj.optString("salt", ""));
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
@@ -54,8 +338,27 @@ public final class Order {
                 new String[] {other.getOrderId(), other.getHash()});
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(getOrderId(), getHash());
+    }
+
     @Override
     public String toString() {
-        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [orderId =" + orderId + ", orderHash=" + orderHash + "]";
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [orderId =" + orderId + ", orderHash=" + getHash() + "]";
+    }
+
+    /**
+     * Reads an order stored as JSON before the binary format, when prices were
+     * whole currency units and every field was a string.
+     */
+    public static Order fromJSONString(String json) {
+        JSONObject jobj = new JSONObject(json);
+        String quantity = jobj.get("quantity").toString();
+        return new Order(jobj.getString("orderId"), jobj.getString("symbol"), FixedPoint.parse(quantity, 0),
+                FixedPoint.parse(jobj.get("price").toString(), FixedPoint.DEFAULT_PRICE_SCALE), jobj.getString("method"),
+                FixedPoint.parse(jobj.get("timestamp").toString(), 0), jobj.optString("valid", "true"),
+                jobj.optString("processed", "false"), jobj.getString("traderHin"),
+                FixedPoint.parse(jobj.opt("remaining") == null ? quantity : jobj.get("remaining").toString(), 0));
     }
 }
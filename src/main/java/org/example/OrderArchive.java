@@ -0,0 +1,130 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Moves terminal orders out of the order namespace. Filled, cancelled and
+ * expired orders are found through {@link Keys#orderByClose} in the order of
+ * the day they closed. Archiving deletes each order with its index entries and
+ * appends one compact line per order to an archive record of the day it
+ * closed, one record per day and archiving transaction. Each record carries
+ * the SHA-256 digest over the stored values of its orders, in record order, so
+ * a copy kept off the ledger can be checked against it.
+ */
+public final class OrderArchive {
+
+    /** Upper bound on the orders archived per transaction. */
+    public static final int MAX_BATCH = 200;
+
+    /** The fields of an archived order line, prices in minor units of the security. */
+    public static final String[] FIELDS = {"orderId", "symbol", "method", "quantity", "remaining", "price",
+            "timestamp", "status", "traderHin"};
+
+    private OrderArchive() {
+    }
+
+    /**
+     * Archives the orders that closed before the given day, oldest first.
+     *
+     * @param before yyyyMMdd, orders that closed on this day or later are kept
+     * @param limit  the number of orders to archive, at most {@link #MAX_BATCH}
+     * @return JSON with the number of archived orders, whether older ones are left and the record keys written
+     */
+    public static JSONObject archive(StateCache cache, String before, int limit) {
+        int max = Math.min(limit, MAX_BATCH);
+        if (max <= 0) {
+            throw new RuntimeException("The limit " + limit + " has to be positive");
+        }
+        Map<String, Day> days = new TreeMap<>();
+        int archived = 0;
+        boolean more = false;
+        try (QueryResultsIterator<KeyValue> closed = cache.getStateByPartialCompositeKey(Keys.ORDER_BY_CLOSE)) {
+            for (KeyValue entry : closed) {
+                String day = cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().get(0);
+                if (day.compareTo(before) >= 0) {
+                    break;
+                }
+                if (archived == max) {
+                    more = true;
+                    break;
+                }
+                cache.delState(entry.getKey());
+                String orderKey = Keys.order(cache, entry.getStringValue());
+                Order order = cache.getOrder(entry.getStringValue());
+                if (order != null) {
+                    days.computeIfAbsent(day, Day::new).add(order, cache.getState(orderKey));
+                    OrderIndex.remove(cache, order);
+                    cache.delState(orderKey);
+                }
+                archived++;
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not scan the closed orders before " + before, e);
+        }
+
+        JSONArray records = new JSONArray();
+        for (Day day : days.values()) {
+            String key = Keys.archive(cache, day.day, cache.getStub().getTxId());
+            cache.putStringState(key, CanonicalJson.write(day.toJSON()));
+            records.put(day.day);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("archived", archived);
+        obj.put("more", more);
+        obj.put("days", records);
+        return obj;
+    }
+
+    private static final class Day {
+
+        private final String day;
+        private final JSONArray orders = new JSONArray();
+        private final MessageDigest digest = Digests.sha256();
+
+        Day(String day) {
+            this.day = day;
+        }
+
+        void add(Order order, byte[] state) {
+            JSONArray line = new JSONArray();
+            line.put(order.getOrderId());
+            line.put(order.getSymbol());
+            line.put(order.getMethod());
+            line.put(order.getQuantity());
+            line.put(order.getRemaining());
+            line.put(order.getPrice());
+            line.put(order.getTimestamp());
+            line.put(order.getStatus());
+            line.put(order.getTraderHin());
+            orders.put(line);
+            digest.update(state);
+        }
+
+        JSONObject toJSON() {
+            JSONObject obj = new JSONObject();
+            obj.put("day", day);
+            obj.put("count", orders.length());
+            JSONArray fields = new JSONArray();
+            for (String field : FIELDS) {
+                fields.put(field);
+            }
+            obj.put("fields", fields);
+            obj.put("orders", orders);
+            obj.put("digest", Digests.hex(digest.digest()));
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.List;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Price-time-priority matching on the ledger. Resting orders are indexed under
+ * {@link Keys#book}, book~symbol~side~price~placedAt~txId~orderId, with the price encoded so that a
+ * partial key scan over one side returns the best price level first: asks
+ * ascending, bids descending. Within a level the zero padded time of the
+ * placing transaction keeps the oldest order in front.
+ */
+public final class OrderBook {
+
+    /** Upper bound on the fills, and on the resting orders visited, per incoming order. */
+    public static final int MAX_MATCHES = 64;
+
+    private OrderBook() {
+    }
+
+    /**
+     * Matches the incoming order against the opposite side of its book. Fills are
+     * booked on the settlement, any remainder is left resting in the book.
+     * Resting orders that expired, or whose owner can no longer pay or deliver,
+     * are closed on the way.
+     */
+    public static List<Fill> match(Settlement settlement, Order incoming) {
+        StateCache cache = settlement.getCache();
+        String opposite = incoming.isBuy() ? Order.SELL : Order.BUY;
+        long limit = incoming.getPrice();
+        long now = settlement.now();
+        int visited = 0;
+
+        try (QueryResultsIterator<KeyValue> book = cache.getStateByPartialCompositeKey(Keys.BOOK, incoming.getSymbol(), opposite)) {
+            for (KeyValue entry : book) {
+                if (!incoming.isOpen() || visited++ >= MAX_MATCHES) {
+                    break;
+                }
+                List<String> attributes = cache.getStub().splitCompositeKey(entry.getKey()).getAttributes();
+                long price = Keys.priceOf(opposite, attributes.get(2));
+                if (incoming.isBuy() ? price > limit : price < limit) {
+                    break;
+                }
+                Order resting = settlement.order(entry.getStringValue());
+                if (resting.isExpired(now)) {
+                    settlement.close(resting, Order.EXPIRED);
+                    continue;
+                }
+                if (resting.getTraderHin().equals(incoming.getTraderHin())) {
+                    continue;
+                }
+                long quantity = Math.min(incoming.getRemaining(), resting.getRemaining());
+                Order buy = incoming.isBuy() ? incoming : resting;
+                Order sell = incoming.isBuy() ? resting : incoming;
+                if (incoming.isBuy() ? !settlement.canDeliver(sell, quantity) : !settlement.canPay(buy, price, quantity)) {
+                    settlement.close(resting, Order.CANCELLED);
+                    continue;
+                }
+                settlement.fill(buy, sell, price, quantity);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not scan the order book of " + incoming.getSymbol(), e);
+        }
+
+        if (incoming.isOpen()) {
+            settlement.rest(incoming);
+        }
+        return settlement.getFills();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Secondary indexes over the orders, each entry holding the order id as value:
+ * {@link Keys#orderByTrader} for the orders of a trader,
+ * {@link Keys#orderByStatus} for terminal orders by symbol, side and status and
+ * {@link Keys#orderByClose} for terminal orders by the day they closed, which
+ * {@link OrderArchive} works through. Live orders need no index of their own,
+ * the {@link OrderBook} lists them per symbol and side in price-time order.
+ */
+public final class OrderIndex {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private OrderIndex() {
+    }
+
+    public static boolean isTerminal(String status) {
+        return Order.FILLED.equals(status) || Order.CANCELLED.equals(status) || Order.EXPIRED.equals(status);
+    }
+
+    /**
+     * @return the UTC day of the instant as yyyyMMdd, which sorts like the days
+     */
+    public static String dayOf(Instant instant) {
+        return DAY.format(instant);
+    }
+
+    /**
+     * Indexes a newly created order.
+     */
+    public static void add(StateCache cache, Order order) {
+        cache.putStringState(Keys.orderByTrader(cache, order), order.getOrderId());
+        if (!order.isOpen()) {
+            close(cache, order);
+        }
+    }
+
+    /**
+     * Indexes an order that was taken off the book, under the day of the transaction.
+     */
+    public static void close(StateCache cache, Order order) {
+        cache.putStringState(Keys.orderByStatus(cache, order), order.getOrderId());
+        cache.putStringState(Keys.orderByClose(cache, dayOf(cache.getStub().getTxTimestamp()), order), order.getOrderId());
+    }
+
+    /**
+     * Drops the trader and status entries of an archived order.
+     */
+    public static void remove(StateCache cache, Order order) {
+        cache.delState(Keys.orderByTrader(cache, order));
+        cache.delState(Keys.orderByStatus(cache, order));
+    }
+}
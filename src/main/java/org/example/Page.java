@@ -0,0 +1,65 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.function.Function;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * One page of a paginated query as returned to clients: the records, their
+ * count and the bookmark to pass for the next page, empty on the last one.
+ */
+public final class Page {
+
+    public static final int MAX_SIZE = 100;
+
+    private Page() {
+    }
+
+    /**
+     * Parses a requested page size, capped at {@link #MAX_SIZE} to bound the cost of a query.
+     */
+    public static int size(String pageSize) {
+        int size;
+        try {
+            size = Integer.parseInt(pageSize);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("The page size " + pageSize + " is not a number");
+        }
+        if (size <= 0) {
+            throw new RuntimeException("The page size " + pageSize + " has to be positive");
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * @param bookmark where the next page starts, empty on the last page
+     */
+    public static String of(JSONArray records, String bookmark) {
+        JSONObject obj = new JSONObject();
+        obj.put("records", records);
+        obj.put("count", records.length());
+        obj.put("bookmark", bookmark);
+        return CanonicalJson.write(obj);
+    }
+
+    public static String collect(QueryResultsIteratorWithMetadata<KeyValue> results, Function<KeyValue, Object> record) {
+        JSONArray records = new JSONArray();
+        try (QueryResultsIteratorWithMetadata<KeyValue> page = results) {
+            for (KeyValue entry : page) {
+                records.put(record.apply(entry));
+            }
+            return of(records, page.getMetadata() == null ? "" : page.getMetadata().getBookmark());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the page", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Orders whose terms stay in the private data collection {@link #COLLECTION}.
+ * The detail of an order, its {@link Order#toJSON} in canonical form, is kept
+ * under order~orderId in the collection and the fills that settle it under
+ * settlement~txId. Public state only holds commitment~orderId with the
+ * {@link Order#getHash() commitment} and status of the order. Peers outside
+ * the collection store the SHA-256 of every private value, which
+ * {@link #disclose} checks the detail handed in by a settler against. Both
+ * hashes cover the random salt of the order, without which the terms could
+ * be found by hashing every plausible combination.
+ */
+public final class PrivateOrders {
+
+    /** The collection, as named in collections_config.json. */
+    public static final String COLLECTION = "orderDetails";
+
+    /** The least number of random bytes in the salt of a private order. */
+    public static final int MIN_SALT = 16;
+
+    private PrivateOrders() {
+    }
+
+    /**
+     * @return the salt if it is lowercase hex of at least {@link #MIN_SALT} bytes
+     */
+    public static String checkSalt(String salt) {
+        if (salt.length() < 2 * MIN_SALT || salt.length() % 2 != 0 || !salt.matches("[0-9a-f]+")) {
+            throw new RuntimeException("The salt of a private order has to be at least " + MIN_SALT + " random bytes as lowercase hex");
+        }
+        return salt;
+    }
+
+    public static boolean exists(StateCache cache, String orderId) {
+        return cache.exists(Keys.commitment(cache, orderId));
+    }
+
+    /**
+     * Writes the detail of the order to the collection and its commitment and status to public state.
+     */
+    public static void put(StateCache cache, Order order, int priceScale) {
+        cache.putPrivateData(COLLECTION, Keys.order(cache, order.getOrderId()), CanonicalJson.bytes(order.toJSON(priceScale)));
+        JSONObject commitment = new JSONObject();
+        commitment.put("hash", order.getHash());
+        commitment.put("status", order.getStatus());
+        cache.putStringState(Keys.commitment(cache, order.getOrderId()), CanonicalJson.write(commitment));
+    }
+
+    /**
+     * Keeps the fills of the transaction in the collection, the public
+     * settlement tree only has their hashes.
+     */
+    public static void putFills(StateCache cache, List<Fill> fills) {
+        JSONArray detail = new JSONArray();
+        for (Fill fill : fills) {
+            detail.put(fill.toJSON());
+        }
+        cache.putPrivateData(COLLECTION, Keys.settlement(cache, cache.getStub().getTxId()), CanonicalJson.bytes(detail));
+    }
+
+    /**
+     * The stored detail, only readable on peers of the collection's members.
+     */
+    public static String get(StateCache cache, String orderId) {
+        byte[] detail = cache.getPrivateData(COLLECTION, Keys.order(cache, orderId));
+        if (detail == null) {
+            throw new RuntimeException("The private order " + orderId + " is not held by this peer");
+        }
+        return new String(detail, UTF_8);
+    }
+
+    /**
+     * Checks order detail handed in with a transaction against the hash of the
+     * stored detail, which any peer can do.
+     *
+     * @return the order the detail describes
+     */
+    public static Order disclose(StateCache cache, JSONObject detail, int priceScale) {
+        String orderId = detail.getString("orderId");
+        byte[] stored = cache.getPrivateDataHash(COLLECTION, Keys.order(cache, orderId));
+        if (stored == null) {
+            throw new RuntimeException("The private order " + orderId + " does not exist");
+        }
+        if (!MessageDigest.isEqual(stored, Digests.local().digest(CanonicalJson.bytes(detail)))) {
+            throw new RuntimeException("The detail of order " + orderId + " does not match its private data hash");
+        }
+        return Order.fromJSON(detail, priceScale);
+    }
+}
@@ -4,16 +4,24 @@
 
 package org.example;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.Objects;
-import org.json.JSONObject;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.ObjLongConsumer;
 
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import com.owlike.genson.annotation.JsonCreator;
 import com.owlike.genson.annotation.JsonProperty;
 
+/**
+ * Metadata of a listed security. The holders' positions are not part of this
+ * document, every (symbol, holder) pair is kept under its own composite key so
+ * that trades only touch the two positions involved. Each position is written
+ * a second time under {@link Keys#portfolio}, so the positions of one holder
+ * are a single range as well.
+ */
 @DataType()
 public class Security {
 
@@ -24,18 +32,26 @@ public class Security {
     @Property()
     private final String name;
     @Property()
-    private final String totalSupply;
+    private final long totalSupply;
+    /** Decimal places of the prices this security trades at. */
     @Property()
-    private Map<String, Integer> balances;
+    private final int priceScale;
 
-    public Security(@JsonProperty("owner") final String owner, @JsonProperty("symbol") final String symbol, @JsonProperty("name") final String name, 
-            @JsonProperty("totalSupply") String totalSupply){
+    public Security(final String owner, final String symbol, final String name, long totalSupply){
+        this(owner, symbol, name, totalSupply, FixedPoint.DEFAULT_PRICE_SCALE);
+    }
+
+    @JsonCreator
+    public Security(@JsonProperty("owner") final String owner, @JsonProperty("symbol") final String symbol, @JsonProperty("name") final String name,
+            @JsonProperty("totalSupply") long totalSupply, @JsonProperty("priceScale") int priceScale){
+        if (priceScale < 0 || priceScale > FixedPoint.CASH_SCALE) {
+            throw new RuntimeException("The price scale of " + symbol + " has to be between 0 and " + FixedPoint.CASH_SCALE);
+        }
         this.owner = owner;
         this.symbol = symbol;
         this.name = name;
         this.totalSupply = totalSupply;
-        this.balances = new HashMap<String, Integer>();
-        this.balances.put(owner, Integer.parseInt(totalSupply));
+        this.priceScale = priceScale;
     }
 
     public String getOwner() {
@@ -50,30 +66,57 @@ public class Security {
         return name;
     }
 
-    public String getTotalSupply() {
+    public long getTotalSupply() {
         return totalSupply;
     }
 
-    public Map<String, Integer> getBalances() {
-        return balances;
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public long getBalanceOf(StateCache cache, String hin){
+        return cache.getAmount(Keys.holding(cache, symbol, hin));
+    }
+
+    /**
+     * Writes a single position and its portfolio entry, positions that drop to
+     * zero are removed from the ledger.
+     */
+    public void putBalanceOf(StateCache cache, String hin, long balance) {
+        String key = Keys.holding(cache, symbol, hin);
+        String portfolioKey = Keys.portfolio(cache, hin, symbol);
+        if (balance == 0) {
+            cache.delState(key);
+            cache.delState(portfolioKey);
+        } else {
+            cache.putAmount(key, balance);
+            cache.putAmount(portfolioKey, balance);
+        }
     }
 
-    public int getBalanceOf(@JsonProperty("hin") String hin){
-        return balances.get(hin);
+    /**
+     * Credits the whole supply to the owner, called once when the security is created.
+     */
+    public void issue(StateCache cache) {
+        putBalanceOf(cache, owner, totalSupply);
     }
 
-    public void transfer(@JsonProperty("from") String fromHin, @JsonProperty("to") String toHin, @JsonProperty("quantity") String quantity){
-        int intQuantity = Integer.parseInt(quantity);
-        if (balances.get(fromHin) >= intQuantity) {
-            balances.put(fromHin, balances.get(fromHin) - intQuantity);
-            balances.put(toHin, balances.getOrDefault(toHin, 0) + intQuantity);
+    public void transfer(StateCache cache, String fromHin, String toHin, long quantity){
+        long fromBalance = getBalanceOf(cache, fromHin);
+        if (fromBalance < quantity) {
+            throw new RuntimeException("The trader " + fromHin + " holds only " + fromBalance + " of " + symbol);
         }
+        if (fromHin.equals(toHin)) {
+            return;
+        }
+        putBalanceOf(cache, fromHin, fromBalance - quantity);
+        putBalanceOf(cache, toHin, FixedPoint.add(getBalanceOf(cache, toHin), quantity));
     }
 
     @Override
     public String toString() {
-        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [owner=" + owner + ", symbol=" + symbol 
-            + ", name=" + name + ", totalSupply=" + totalSupply + ", balances=" + balances + "]";
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [owner=" + owner + ", symbol=" + symbol
+            + ", name=" + name + ", totalSupply=" + totalSupply + ", priceScale=" + priceScale + "]";
     }
 
     @Override
@@ -88,12 +131,73 @@ public class Security {
 
         Security other = (Security) obj;
 
-        return Objects.deepEquals(new String[] {getOwner(), getSymbol(), getName(), getTotalSupply()},
-                new String[] {other.getOwner(), other.getSymbol(), other.getName(), other.getTotalSupply()});
+        return Objects.deepEquals(new Object[] {getOwner(), getSymbol(), getName(), getTotalSupply(), getPriceScale()},
+                new Object[] {other.getOwner(), other.getSymbol(), other.getName(), other.getTotalSupply(), other.getPriceScale()});
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getOwner(), getSymbol(), getName(), getTotalSupply());
+        return Objects.hash(getOwner(), getSymbol(), getName(), getTotalSupply(), getPriceScale());
+    }
+
+    /**
+     * Reads a security stored as JSON before the binary format, it trades at the default price scale.
+     */
+    public static Security fromJSONString(String json) {
+        return fromJSON(json.getBytes(UTF_8));
+    }
+
+    /**
+     * Reads a security stored as JSON before the binary format without
+     * building the balances it may hold, see {@link #readLegacyBalances}.
+     */
+    public static Security fromJSON(byte[] json) {
+        JsonScanner scanner = new JsonScanner(json);
+        String owner = null;
+        String symbol = null;
+        String name = null;
+        String totalSupply = null;
+        scanner.beginObject();
+        for (String field = scanner.nextName(); field != null; field = scanner.nextName()) {
+            switch (field) {
+                case "owner":
+                    owner = scanner.nextString();
+                    break;
+                case "symbol":
+                    symbol = scanner.nextString();
+                    break;
+                case "name":
+                    name = scanner.nextString();
+                    break;
+                case "totalSupply":
+                    totalSupply = scanner.nextScalar();
+                    break;
+                default:
+                    scanner.skipValue();
+            }
+        }
+        if (owner == null || symbol == null || name == null || totalSupply == null) {
+            throw new RuntimeException("The security document lacks owner, symbol, name or totalSupply");
+        }
+        return new Security(owner, symbol, name, FixedPoint.parse(totalSupply, 0));
+    }
+
+    /**
+     * Hands each entry of the balances of a legacy JSON security to the
+     * holder, one at a time and in document order, so reading them costs the
+     * same per holder however many there are.
+     */
+    public static void readLegacyBalances(byte[] json, ObjLongConsumer<String> holder) {
+        JsonScanner scanner = new JsonScanner(json);
+        scanner.beginObject();
+        for (String field = scanner.nextName(); field != null; field = scanner.nextName()) {
+            if (!"balances".equals(field)) {
+                scanner.skipValue();
+            } else if (scanner.beginObject()) {
+                for (String hin = scanner.nextName(); hin != null; hin = scanner.nextName()) {
+                    holder.accept(hin, scanner.nextLong());
+                }
+            }
+        }
     }
 }
@@ -6,10 +6,17 @@ package org.example;
 
 import com.owlike.genson.Genson;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import java.util.logging.Logger;
 import java.util.HashMap;
@@ -44,8 +51,77 @@ import org.hyperledger.fabric.contract.annotation.License;
 public class SecurityContract implements ContractInterface {
 
     private final Genson genson = new Genson();
+    private final Codecs codecs = Codecs.binary();
+    private final MetricsSink metricsSink;
+    private final Set<String> evaluateOnly;
     private static final Logger logger = Logger.getLogger(SecurityContract.class.getName());
 
+    /** Upper bound on the keys visited by one {@link #migrateKeys} call. */
+    public static final int MAX_MIGRATION = 500;
+
+    /** Upper bound on the records of one {@link #createTraders} or {@link #createSecurities} batch. */
+    public static final int MAX_ONBOARDING = 1000;
+
+    public SecurityContract() {
+        this(MetricsSink.fromEnvironment());
+    }
+
+    public SecurityContract(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+        this.evaluateOnly = evaluateOnly(getClass());
+    }
+
+    /**
+     * The names of the transaction functions marked {@code submit = false}.
+     */
+    static Set<String> evaluateOnly(Class<?> contract) {
+        Set<String> names = new HashSet<>();
+        for (Method method : contract.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null && !transaction.submit()) {
+                names.add(transaction.name().isEmpty() ? method.getName() : transaction.name());
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public ExchangeContext createContext(ChaincodeStub stub) {
+        TransactionMetrics metrics = metricsSink == MetricsSink.NOOP ? TransactionMetrics.DISABLED : new TransactionMetrics();
+        return new ExchangeContext(stub, codecs, metrics);
+    }
+
+    /**
+     * Starts the metrics and makes the state cache of evaluate-only functions
+     * read-only, so a query that writes fails instead of growing a write set.
+     */
+    @Override
+    public void beforeTransaction(Context ctx) {
+        String function = ctx.getStub().getFunction();
+        if (function != null && evaluateOnly.contains(function.substring(function.indexOf(':') + 1))) {
+            ((ExchangeContext) ctx).getCache().setReadOnly(function);
+        }
+        TransactionMetrics metrics = ((ExchangeContext) ctx).getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.start(ctx.getStub().getTxId(), ctx.getStub().getFunction());
+        }
+    }
+
+    /**
+     * Flushes the state cache and hands the metrics to the sink. Failed
+     * transactions never get here, so they are not recorded.
+     */
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        ExchangeContext exchangeContext = (ExchangeContext) ctx;
+        exchangeContext.getCache().flush();
+        TransactionMetrics metrics = exchangeContext.getMetrics();
+        if (metrics.isEnabled()) {
+            metrics.finish();
+            metricsSink.record(metrics);
+        }
+    }
+
     /**
      * Placeholder for init function
      *
@@ -55,222 +131,1169 @@ public class SecurityContract implements ContractInterface {
     public void init(final Context ctx) {
     }*/
 
-    @Transaction()
-    public String getHashCode(final Context ctx, String hashMe) {
+    @Transaction(submit = false)
+    public String getHashCode(final ExchangeContext ctx, String hashMe) {
         return Integer.toString(hashMe.hashCode());
     }
 
-    @Transaction()
-    public String getMyId(final Context ctx) {
-        return ctx.getClientIdentity().getId();
+    @Transaction(submit = false)
+    public String getMyId(final ExchangeContext ctx) {
+        return ctx.getCallerId();
     }
 
-    @Transaction()
-    public String getMyHin(final Context ctx) {
-        return Integer.toString(ctx.getClientIdentity().getId().hashCode());
+    @Transaction(submit = false)
+    public String getMyHin(final ExchangeContext ctx) {
+        return ctx.getHin();
     }
 
+    /**
+     * Moves the caller's account from the hashCode based HIN it was opened
+     * under to its current one, see {@link Hins}: the trader record with its
+     * balance deltas folded in, the positions as listed by the portfolio
+     * index and the orders, at most {@link #MAX_MIGRATION} of each. The old
+     * HIN stays as an alias, so counterparties that still name it are
+     * resolved.
+     *
+     * @return the new HIN
+     */
     @Transaction()
-    public Trader getMyAccount(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-        String traderState = stub.getStringState(getMyHin(ctx));
-        Trader myTrader = Trader.fromJSONString(traderState);
+    public String migrateMyHin(final ExchangeContext ctx) {
+        StateCache cache = ctx.getCache();
+        String legacyHin = Hins.legacy(ctx.getCallerId());
+        String hin = getMyHin(ctx);
+        Trader legacy = cache.getTrader(legacyHin);
+        if (legacy == null) {
+            throw new RuntimeException("The trader " + legacyHin + " is not registered with this exchange.");
+        }
+        if (traderExists(ctx, hin)) {
+            throw new RuntimeException("The trader " + hin + " already exists");
+        }
+        if (legacy.isDeltaMode()) {
+            BalanceDeltas.compactAll(cache, legacy);
+        }
+        Trader trader = new Trader(hin, legacy.getBalance());
+        trader.setDeltaMode(legacy.isDeltaMode());
+        cache.delState(Keys.trader(cache, legacyHin));
+        cache.putTrader(trader);
+
+        int holdings = 0;
+        try (QueryResultsIterator<KeyValue> positions = cache.getStateByPartialCompositeKey(Keys.PORTFOLIO, legacyHin)) {
+            for (KeyValue entry : positions) {
+                if (holdings++ >= MAX_MIGRATION) {
+                    throw new RuntimeException("The trader " + legacyHin + " has more than " + MAX_MIGRATION + " positions");
+                }
+                Security security = getSecurity(ctx, cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().get(1));
+                security.putBalanceOf(cache, hin, cache.getCodecs().getAmountCodec().decode(entry.getValue()));
+                security.putBalanceOf(cache, legacyHin, 0);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the portfolio of " + legacyHin, e);
+        }
+
+        int orders = 0;
+        try (QueryResultsIterator<KeyValue> entries = cache.getStateByPartialCompositeKey(Keys.ORDER_BY_TRADER, legacyHin)) {
+            for (KeyValue entry : entries) {
+                if (orders++ >= MAX_MIGRATION) {
+                    throw new RuntimeException("The trader " + legacyHin + " has more than " + MAX_MIGRATION + " orders, archive them first");
+                }
+                Order order = getOrder(ctx, entry.getStringValue());
+                Order moved = order.withTrader(hin);
+                cache.putOrder(moved);
+                cache.delState(entry.getKey());
+                cache.putStringState(Keys.orderByTrader(cache, moved), moved.getOrderId());
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the orders of " + legacyHin, e);
+        }
+        cache.putStringState(Keys.hinAlias(cache, legacyHin), hin);
+
+        new ExchangeEvent("MigratedHin").put("from", legacyHin).put("to", hin).emit(ctx);
+        return hin;
+    }
+
+    /**
+     * @return the HIN a migrated legacy HIN moved to, any other HIN as it is
+     */
+    private String resolveHin(StateCache cache, String hin) {
+        String alias = cache.getStringState(Keys.hinAlias(cache, hin));
+        return alias == null ? hin : alias;
+    }
+
+    @Transaction(submit = false)
+    public Trader getMyAccount(final ExchangeContext ctx) {
+        String hin = getMyHin(ctx);
+        Trader myTrader = ctx.getCache().getTrader(hin);
+        if (myTrader == null) {
+            throw new RuntimeException("The trader " + hin + " is not registered with this exchange.");
+        }
         return myTrader;
     }
 
-    @Transaction()
-    public String getMyAccString(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-        return stub.getStringState(getMyHin(ctx));
-        //return getMyAccount(ctx).toString();
+    @Transaction(submit = false)
+    public String getMyAccString(final ExchangeContext ctx) {
+        return CanonicalJson.normalize(genson.serialize(getMyAccount(ctx)));
     }
 
+    @Transaction(submit = false)
+    public String getMyBalance(final ExchangeContext ctx) {
+        return FixedPoint.format(BalanceDeltas.balanceOf(ctx.getCache(), getMyAccount(ctx)), FixedPoint.CASH_SCALE);
+    }
+
+    /**
+     * The caller's cash and positions. The positions come from the caller's
+     * portfolio entries in one range scan, whatever the number of securities.
+     */
+    @Transaction(submit = false)
+    public String getMyPortfolio(final ExchangeContext ctx) {
+        StateCache cache = ctx.getCache();
+        Trader trader = getMyAccount(ctx);
+        JSONArray positions = new JSONArray();
+        try (QueryResultsIterator<KeyValue> entries = cache.getStateByPartialCompositeKey(Keys.PORTFOLIO, trader.getHin())) {
+            for (KeyValue entry : entries) {
+                JSONObject position = new JSONObject();
+                position.put("symbol", cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().get(1));
+                position.put("quantity", cache.getCodecs().getAmountCodec().decode(entry.getValue()));
+                positions.put(position);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the portfolio of " + trader.getHin(), e);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("hin", trader.getHin());
+        obj.put("cash", FixedPoint.format(BalanceDeltas.balanceOf(cache, trader), FixedPoint.CASH_SCALE));
+        obj.put("positions", positions);
+        return CanonicalJson.write(obj);
+    }
+
+    /**
+     * Switches the caller's cash balance between a single record and delta
+     * mode, see {@link BalanceDeltas}. Leaving delta mode folds all deltas first.
+     */
     @Transaction()
-    public String getMyBalance(final Context ctx) {
-        return getMyAccount(ctx).getBalance();
+    public void setBalanceMode(final ExchangeContext ctx, String deltaMode) {
+        StateCache cache = ctx.getCache();
+        Trader trader = getMyAccount(ctx);
+        boolean enable = Boolean.parseBoolean(deltaMode);
+        if (trader.isDeltaMode() && !enable) {
+            BalanceDeltas.compactAll(cache, trader);
+        }
+        trader.setDeltaMode(enable);
+        cache.putTrader(trader);
     }
 
+    /**
+     * Folds accumulated balance deltas of a trader into the trader record.
+     *
+     * @return the number of deltas folded
+     */
     @Transaction()
-    public boolean traderExists(final Context ctx, String hin) {
-        ChaincodeStub stub = ctx.getStub();
-        byte[] buffer = stub.getState(hin);
-        return (buffer != null && buffer.length > 0);
+    public int compactBalance(final ExchangeContext ctx, String hin) {
+        Trader trader = ctx.getCache().getTrader(hin);
+        if (trader == null) {
+            throw new RuntimeException("The trader " + hin + " is not registered with this exchange.");
+        }
+        return BalanceDeltas.compact(ctx.getCache(), trader);
+    }
+
+    @Transaction(submit = false)
+    public boolean traderExists(final ExchangeContext ctx, String hin) {
+        return ctx.getCache().exists(Keys.trader(ctx.getCache(), hin));
     }
 
     @Transaction()
-    public Trader createTrader(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
+    public Trader createTrader(final ExchangeContext ctx) {
+        StateCache cache = ctx.getCache();
         String hin = getMyHin(ctx);
         boolean exists = traderExists(ctx,hin);
         if (exists) {
             throw new RuntimeException("The trader "+hin+" already exists");
         }
-        Trader trader = new Trader(hin, "10000");
-        String traderState = genson.serialize(trader);
-        stub.putStringState(hin, traderState);
-        logger.info("CREATED TRADER: "+traderState);
+        String legacyHin = Hins.legacy(ctx.getCallerId());
+        if (traderExists(ctx, legacyHin)) {
+            throw new RuntimeException("The trader " + legacyHin + " already exists, move it with migrateMyHin");
+        }
+        Trader trader = new Trader(hin, FixedPoint.parse("10000", FixedPoint.CASH_SCALE));
+        cache.putTrader(trader);
+        logger.info("CREATED TRADER: "+trader);
+        new ExchangeEvent("CreatedTrader").put("hin", hin).cash(hin, trader.getBalance()).emit(ctx);
         return trader;
     }
 
+    /**
+     * Opens accounts for a batch of identities in one transaction, for
+     * operators onboarding a member firm. The whole batch is rejected if any
+     * of the accounts exists.
+     *
+     * @param identities JSON array of identities, each with mspId, id and optionally the opening cash
+     * @return JSON with the count and the HINs in the order of the batch
+     */
     @Transaction()
-    public boolean removeMyTrader(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-        stub.delState(getMyHin(ctx));
+    public String createTraders(final ExchangeContext ctx, String identities) {
+        checkAdmin(ctx);
+        StateCache cache = ctx.getCache();
+        JSONArray batch = onboardingBatch(identities);
+        Set<String> seen = new HashSet<>();
+        JSONArray hins = new JSONArray();
+        ExchangeEvent event = new ExchangeEvent("CreatedTraders");
+        for (int i = 0; i < batch.length(); i++) {
+            JSONObject identity = batch.getJSONObject(i);
+            String hin = Hins.of(identity.getString("mspId"), identity.getString("id"));
+            if (!seen.add(hin)) {
+                throw new RuntimeException("The identity " + identity.getString("id") + " is in the batch twice");
+            }
+            if (traderExists(ctx, hin)) {
+                throw new RuntimeException("The trader " + hin + " already exists");
+            }
+            String legacyHin = Hins.legacy(identity.getString("id"));
+            if (traderExists(ctx, legacyHin)) {
+                throw new RuntimeException("The trader " + legacyHin + " already exists, move it with migrateMyHin");
+            }
+            Trader trader = new Trader(hin, FixedPoint.parse(identity.optString("cash", "10000"), FixedPoint.CASH_SCALE));
+            cache.putTrader(trader);
+            event.cash(hin, trader.getBalance());
+            hins.put(hin);
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("count", hins.length());
+        obj.put("hins", hins);
+        event.put("count", hins.length()).put("hins", hins).emit(ctx);
+        return CanonicalJson.write(obj);
+    }
+
+    @Transaction()
+    public boolean removeMyTrader(final ExchangeContext ctx) {
+        ctx.getCache().delState(Keys.trader(ctx.getCache(), getMyHin(ctx)));
         return true;
     }
 
     // ----------------- Security (Stocks) related functions -------------------
 
-    @Transaction()
-    public boolean securityExists(final Context ctx, String symbol) {
-        ChaincodeStub stub = ctx.getStub();
-        byte[] buffer = stub.getState(symbol);
-        return (buffer != null && buffer.length > 0);
+    @Transaction(submit = false)
+    public boolean securityExists(final ExchangeContext ctx, String symbol) {
+        return ctx.getCache().exists(Keys.security(ctx.getCache(), symbol));
+    }
+
+    @Transaction(submit = false)
+    public Security getSecurity(final ExchangeContext ctx, String symbol) {
+        Security security = ctx.getCache().getSecurity(symbol);
+        if (security == null) {
+            throw new RuntimeException("The security " + symbol + " does not exist");
+        }
+        return security;
     }
 
+    /**
+     * Delists a security. Only its owner can, and only while they hold the
+     * whole supply and no order rests in its book.
+     */
     @Transaction()
-    public Security getSecurity(final Context ctx, String symbol) {
-        ChaincodeStub stub = ctx.getStub();
+    public void deleteSecurity(final ExchangeContext ctx, String symbol) {
+        StateCache cache = ctx.getCache();
+        Security security = getSecurity(ctx, symbol);
+        String hin = getMyHin(ctx);
+        if (!security.getOwner().equals(hin)) {
+            throw new RuntimeException("The security " + symbol + " is owned by " + security.getOwner());
+        }
+        if (security.getBalanceOf(cache, hin) != security.getTotalSupply()) {
+            throw new RuntimeException("The security " + symbol + " is held by other traders");
+        }
+        try (QueryResultsIterator<KeyValue> book = cache.getStateByPartialCompositeKey(Keys.BOOK, symbol)) {
+            if (book.iterator().hasNext()) {
+                throw new RuntimeException("The security " + symbol + " has resting orders");
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the book of " + symbol, e);
+        }
+        security.putBalanceOf(cache, hin, 0);
+        cache.delState(Keys.security(cache, symbol));
+        new ExchangeEvent("DeletedSecurity").put("symbol", symbol).position(symbol, hin, 0).emit(ctx);
+    }
 
+    @Transaction()
+    public void createSecurity(final ExchangeContext ctx, String symbol, String name, String quantity) {
+        StateCache cache = ctx.getCache();
+        Trader trader = getMyAccount(ctx);
         boolean exists = securityExists(ctx,symbol);
-        if (!exists) {
-            throw new RuntimeException("The security " + symbol + " does not exist");
+        if (exists) {
+            throw new RuntimeException("The security " + symbol + " already exists");
         }
+        Security security = new Security(trader.getHin(), symbol, name, FixedPoint.parseQuantity(quantity));
+        cache.putSecurity(security);
+        security.issue(cache);
 
-        Security security = genson.deserialize(stub.getStringState(symbol), Security.class);
-        return security;
+        new ExchangeEvent("CreatedSecurity")
+                .put("symbol", symbol)
+                .put("name", name)
+                .put("totalSupply", quantity)
+                .put("owner", security.getOwner())
+                .put("priceScale", security.getPriceScale())
+                .position(symbol, security.getOwner(), security.getTotalSupply())
+                .emit(ctx);
     }
 
+    /**
+     * Lists a batch of securities in one transaction, for operators listing
+     * an index basket. Each is issued to its owner, less the allocations to
+     * other holders. The whole batch is rejected if any symbol exists or any
+     * owner or holder is not registered.
+     *
+     * @param securities JSON array of securities, each with symbol, name, totalSupply, the owner's HIN and
+     *                   optionally a priceScale and allocations, an object from HIN to quantity
+     * @return JSON with the count and the symbols in the order of the batch
+     */
     @Transaction()
-    private void deleteSecurity(final Context ctx, String symbol) {
-        ChaincodeStub stub = ctx.getStub();
+    public String createSecurities(final ExchangeContext ctx, String securities) {
+        checkAdmin(ctx);
+        StateCache cache = ctx.getCache();
+        JSONArray batch = onboardingBatch(securities);
+        Set<String> seen = new HashSet<>();
+        JSONArray symbols = new JSONArray();
+        ExchangeEvent event = new ExchangeEvent("CreatedSecurities");
+        for (int i = 0; i < batch.length(); i++) {
+            JSONObject listing = batch.getJSONObject(i);
+            String symbol = listing.getString("symbol");
+            if (!seen.add(symbol)) {
+                throw new RuntimeException("The security " + symbol + " is in the batch twice");
+            }
+            if (securityExists(ctx, symbol)) {
+                throw new RuntimeException("The security " + symbol + " already exists");
+            }
+            String owner = listing.getString("owner");
+            if (!traderExists(ctx, owner)) {
+                throw new RuntimeException("The trader " + owner + " is not registered with this exchange.");
+            }
+            Security security = new Security(owner, symbol, listing.getString("name"),
+                    FixedPoint.parseQuantity(listing.get("totalSupply").toString()),
+                    listing.optInt("priceScale", FixedPoint.DEFAULT_PRICE_SCALE));
+            cache.putSecurity(security);
 
-        boolean exists = securityExists(ctx,symbol);
-        if (!exists) {
-            throw new RuntimeException("The asset "+symbol+" does not exist");
+            long remaining = security.getTotalSupply();
+            JSONObject allocations = listing.optJSONObject("allocations");
+            if (allocations != null) {
+                for (String hin : new TreeSet<>(allocations.keySet())) {
+                    if (hin.equals(owner) || !traderExists(ctx, hin)) {
+                        throw new RuntimeException("The allocation of " + symbol + " to " + hin + " needs a registered trader other than the owner");
+                    }
+                    long quantity = FixedPoint.parseQuantity(allocations.get(hin).toString());
+                    if (quantity > remaining) {
+                        throw new RuntimeException("The allocations of " + symbol + " exceed its total supply");
+                    }
+                    security.putBalanceOf(cache, hin, quantity);
+                    event.position(symbol, hin, quantity);
+                    remaining -= quantity;
+                }
+            }
+            if (remaining > 0) {
+                security.putBalanceOf(cache, owner, remaining);
+                event.position(symbol, owner, remaining);
+            }
+            symbols.put(symbol);
         }
-        stub.delState(symbol);
+
+        JSONObject obj = new JSONObject();
+        obj.put("count", symbols.length());
+        obj.put("symbols", symbols);
+        event.put("count", symbols.length()).put("symbols", symbols).emit(ctx);
+        return CanonicalJson.write(obj);
     }
 
+    /**
+     * Lists a security for primary distribution by its issuer, the caller.
+     * The supply is not credited to the issuer but kept as an
+     * {@link Inventory} split over shards, which buyers draw from with
+     * {@link #buyFromIssuer} at the issue price. The issuer's balance mode is
+     * left as it is; unless the issuer switches to delta mode with
+     * {@link #setBalanceMode}, every sale writes its trader record and sales
+     * in one block conflict over it.
+     *
+     * @param price  the issue price per unit
+     * @param shards how many shards the supply is split over, at most {@link Inventory#MAX_SHARDS}
+     */
     @Transaction()
-    public void createSecurity(final Context ctx, String symbol, String name, String quantity) {
-        ChaincodeStub stub = ctx.getStub();
+    public void listSecurity(final ExchangeContext ctx, String symbol, String name, String quantity, String price, String shards) {
+        StateCache cache = ctx.getCache();
         Trader trader = getMyAccount(ctx);
-        boolean exists = securityExists(ctx,symbol);
-        if (exists) {
+        if (securityExists(ctx, symbol)) {
             throw new RuntimeException("The security " + symbol + " already exists");
         }
-        Security security = new Security(trader.getHin(), symbol, name, quantity);
-        String securityState = genson.serialize(security);
-        stub.putStringState(symbol, securityState);
+        Security security = new Security(trader.getHin(), symbol, name, FixedPoint.parseQuantity(quantity));
+        int shardCount;
+        try {
+            shardCount = Integer.parseInt(shards);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("The shard count " + shards + " is not a number");
+        }
+        Inventory inventory = new Inventory(symbol, FixedPoint.parse(price, security.getPriceScale()), shardCount);
+        cache.putSecurity(security);
+        inventory.list(cache, security.getTotalSupply());
+
+        new ExchangeEvent("ListedSecurity")
+                .put("symbol", symbol)
+                .put("name", name)
+                .put("totalSupply", quantity)
+                .put("owner", security.getOwner())
+                .put("priceScale", security.getPriceScale())
+                .put("price", FixedPoint.format(inventory.getPrice(), security.getPriceScale()))
+                .put("shards", inventory.getShards())
+                .emit(ctx);
+    }
+
+    /**
+     * Buys units of a listed security from its issuer at the issue price.
+     * The units come from the inventory shard the transaction id hashes to,
+     * so buys in the same block conflict only when they hash to the same
+     * shard or the shard runs out.
+     */
+    @Transaction()
+    public void buyFromIssuer(final ExchangeContext ctx, String symbol, String quantity) {
+        StateCache cache = ctx.getCache();
+        Trader buyer = getMyAccount(ctx);
+        Settlement settlement = new Settlement(cache);
+        Security security = settlement.security(symbol);
+        Inventory inventory = Inventory.of(cache, symbol);
+        if (inventory == null) {
+            throw new RuntimeException("The security " + symbol + " was not listed for sale by its issuer");
+        }
+        List<Integer> drawn = settlement.buyFromIssuer(security, inventory, buyer.getHin(), FixedPoint.parseQuantity(quantity));
+        settlement.commit();
 
+        settlement.event("BoughtFromIssuer")
+                .put("symbol", symbol)
+                .put("quantity", quantity)
+                .put("price", FixedPoint.format(inventory.getPrice(), security.getPriceScale()))
+                .put("shards", new JSONArray(drawn))
+                .emit(ctx);
+    }
+
+    /**
+     * @return JSON with the issue price, the number of shards and the units left to sell over all of them
+     */
+    @Transaction(submit = false)
+    public String getIssuerInventory(final ExchangeContext ctx, String symbol) {
+        StateCache cache = ctx.getCache();
+        Security security = getSecurity(ctx, symbol);
+        Inventory inventory = Inventory.of(cache, symbol);
+        if (inventory == null) {
+            throw new RuntimeException("The security " + symbol + " was not listed for sale by its issuer");
+        }
         JSONObject obj = new JSONObject();
         obj.put("symbol", symbol);
-        obj.put("name", name);
-        obj.put("totalSupply", quantity);
-        stub.setEvent("CreatedSecurity", obj.toString().getBytes(UTF_8));
+        obj.put("owner", security.getOwner());
+        obj.put("price", FixedPoint.format(inventory.getPrice(), security.getPriceScale()));
+        obj.put("shards", inventory.getShards());
+        obj.put("remaining", inventory.remaining(cache));
+        return CanonicalJson.write(obj);
     }
 
-    // ----------------- Order related functions -------------------
+    private static void checkAdmin(final ExchangeContext ctx) {
+        if (!ctx.isAdmin()) {
+            throw new RuntimeException("The caller " + ctx.getCallerId() + " is not an exchange operator");
+        }
+    }
+
+    private static JSONArray onboardingBatch(String records) {
+        JSONArray batch = new JSONArray(records);
+        if (batch.length() == 0) {
+            throw new RuntimeException("The batch does not contain any records");
+        }
+        if (batch.length() > MAX_ONBOARDING) {
+            throw new RuntimeException("The batch holds " + batch.length() + " records, at most " + MAX_ONBOARDING + " are allowed");
+        }
+        return batch;
+    }
+
+    @Transaction(submit = false)
+    public long getBalanceOf(final ExchangeContext ctx, String symbol, String hin) {
+        return getSecurity(ctx, symbol).getBalanceOf(ctx.getCache(), hin);
+    }
+
+    /**
+     * Moves a security stored under its bare symbol to its typed key, see
+     * {@link #migrateKeys}. Balances kept in the old single-document layout
+     * become one holding key per holder.
+     */
+    @Transaction()
+    public void migrateSecurity(final ExchangeContext ctx, String symbol) {
+        StateCache cache = ctx.getCache();
+        byte[] bytes = cache.getState(symbol);
+        if (bytes == null) {
+            if (securityExists(ctx, symbol)) {
+                return;
+            }
+            throw new RuntimeException("The security " + symbol + " does not exist");
+        }
+        if (!Keys.SECURITY.equals(Keys.entityOf(bytes))) {
+            throw new RuntimeException("The key " + symbol + " does not hold a security");
+        }
+        migrateEntry(cache, symbol, bytes, Keys.SECURITY);
+    }
 
+    /**
+     * Moves traders, securities and orders written under bare keys by older
+     * versions of the contract to their typed keys, see {@link Keys},
+     * backfills the order indexes and rests open orders in the book. Runs over the simple keys in key order, at
+     * most limit of them per transaction; call again with the returned next
+     * key until it is empty.
+     *
+     * @param startKey empty for the first call, then the next key of the previous call
+     * @param limit    the number of keys to visit, at most {@link #MAX_MIGRATION}
+     * @return JSON with the number of migrated and skipped keys and the next key
+     */
     @Transaction()
-    public boolean orderExists(final Context ctx, String orderId) {
-        ChaincodeStub stub = ctx.getStub();
-        byte[] buffer = stub.getState(orderId);
-        return (buffer != null && buffer.length > 0);
+    public String migrateKeys(final ExchangeContext ctx, String startKey, String limit) {
+        StateCache cache = ctx.getCache();
+        int max = Math.min(Integer.parseInt(limit), MAX_MIGRATION);
+        if (max <= 0) {
+            throw new RuntimeException("The limit " + limit + " has to be positive");
+        }
+        int migrated = 0;
+        int skipped = 0;
+        String next = "";
+        try (QueryResultsIterator<KeyValue> results = cache.getStateByRange(startKey, "")) {
+            for (KeyValue entry : results) {
+                if (migrated + skipped == max) {
+                    next = entry.getKey();
+                    break;
+                }
+                String type = Keys.entityOf(entry.getValue());
+                if (type == null) {
+                    skipped++;
+                } else {
+                    migrateEntry(cache, entry.getKey(), entry.getValue(), type);
+                    migrated++;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not migrate the keys from " + startKey, e);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("migrated", migrated);
+        obj.put("skipped", skipped);
+        obj.put("next", next);
+        return CanonicalJson.write(obj);
     }
 
+    /**
+     * Writes the portfolio entries of positions held before portfolios were
+     * indexed. Runs over the holders of a symbol in order, at most limit of
+     * them per transaction; call again with the returned next holder until it
+     * is empty.
+     *
+     * @param startHin empty for the first call, then the next holder of the previous call
+     * @param limit    the number of positions to visit, at most {@link #MAX_MIGRATION}
+     * @return JSON with the number of indexed positions and the next holder
+     */
     @Transaction()
-    public Order getOrder(final Context ctx, String orderId) {
-        ChaincodeStub stub = ctx.getStub();
+    public String migratePortfolios(final ExchangeContext ctx, String symbol, String startHin, String limit) {
+        StateCache cache = ctx.getCache();
+        Security security = getSecurity(ctx, symbol);
+        int max = Math.min(Integer.parseInt(limit), MAX_MIGRATION);
+        if (max <= 0) {
+            throw new RuntimeException("The limit " + limit + " has to be positive");
+        }
+        int indexed = 0;
+        String next = "";
+        try (QueryResultsIterator<KeyValue> holdings = cache.getStateByPartialCompositeKey(Keys.HOLDING, symbol)) {
+            for (KeyValue entry : holdings) {
+                String hin = cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().get(1);
+                if (hin.compareTo(startHin) < 0) {
+                    continue;
+                }
+                if (indexed == max) {
+                    next = hin;
+                    break;
+                }
+                security.putBalanceOf(cache, hin, cache.getCodecs().getAmountCodec().decode(entry.getValue()));
+                indexed++;
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read the holders of " + symbol, e);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("indexed", indexed);
+        obj.put("next", next);
+        return CanonicalJson.write(obj);
+    }
 
-        boolean exists = orderExists(ctx, orderId);
-        if (!exists) {
-            throw new RuntimeException("The order " + orderId + " does not exist");
+    /**
+     * Rewrites one entity under its typed key and deletes the bare key. An
+     * entity already present under the typed key was written since the
+     * upgrade and is kept.
+     */
+    private void migrateEntry(StateCache cache, String key, byte[] bytes, String type) {
+        Codecs codecs = cache.getCodecs();
+        if (Keys.TRADER.equals(type)) {
+            Trader trader = codecs.getTraderCodec().decode(bytes);
+            if (cache.getTrader(trader.getHin()) == null) {
+                cache.putTrader(trader);
+            }
+        } else if (Keys.SECURITY.equals(type)) {
+            Security security = codecs.getSecurityCodec().decode(bytes);
+            if (cache.getSecurity(security.getSymbol()) == null) {
+                if (!BinaryCodec.isBinary(bytes)) {
+                    Security.readLegacyBalances(bytes, (hin, balance) -> security.putBalanceOf(cache, hin, balance));
+                }
+                cache.putSecurity(security);
+            }
+        } else {
+            Order order = codecs.getOrderCodec().decode(bytes);
+            if (cache.getOrder(order.getOrderId()) == null) {
+                cache.putOrder(order);
+                OrderIndex.add(cache, order);
+                if (order.isOpen() && order.getRemaining() > 0) {
+                    cache.putStringState(Keys.book(cache, order), order.getOrderId());
+                }
+            }
         }
+        cache.delState(key);
+    }
+
+    // ----------------- Order related functions -------------------
 
-        Order order = genson.deserialize(stub.getStringState(orderId), Order.class);
+    @Transaction(submit = false)
+    public boolean orderExists(final ExchangeContext ctx, String orderId) {
+        return ctx.getCache().exists(Keys.order(ctx.getCache(), orderId)) || PrivateOrders.exists(ctx.getCache(), orderId);
+    }
+
+    @Transaction(submit = false)
+    public Order getOrder(final ExchangeContext ctx, String orderId) {
+        Order order = ctx.getCache().getOrder(orderId);
+        if (order == null) {
+            throw new RuntimeException("The order " + orderId + " does not exist");
+        }
         return order;
     }
 
-    @Transaction()
-    public void createOrder(final Context ctx, String orderId, String method, String symbol, String quantity, String price, String timestamp) {
-        ChaincodeStub stub = ctx.getStub();
-        Trader trader = getMyAccount(ctx);
-        if (trader == null) {
-            throw new RuntimeException("The Trader is not registered with this exchange.");
+    /**
+     * Lists the orders of a symbol and side, live ones from the book in
+     * price-time priority, terminal ones from the status index until they are
+     * archived.
+     *
+     * @param status   {@link Order#OPEN} for all live orders, partially filled ones included,
+     *                 or {@link Order#FILLED}, {@link Order#CANCELLED} or {@link Order#EXPIRED}
+     * @param bookmark empty for the first page, then the bookmark of the previous page
+     */
+    @Transaction(submit = false)
+    public String getOrders(final ExchangeContext ctx, String symbol, String method, String status, String pageSize, String bookmark) {
+        StateCache cache = ctx.getCache();
+        if (!Order.BUY.equals(method) && !Order.SELL.equals(method)) {
+            throw new RuntimeException("The method " + method + " is neither buy (" + Order.BUY + ") nor sell (" + Order.SELL + ")");
         }
-        Order newOrder = new Order(orderId, symbol, quantity, price, method, timestamp, "true", "false", trader.getHin());
+        int priceScale = getSecurity(ctx, symbol).getPriceScale();
+        QueryResultsIteratorWithMetadata<KeyValue> results;
+        if (Order.OPEN.equals(status)) {
+            results = cache.getStateByPartialCompositeKeyWithPagination(Page.size(pageSize), bookmark, Keys.BOOK, symbol, method);
+        } else if (OrderIndex.isTerminal(status)) {
+            results = cache.getStateByPartialCompositeKeyWithPagination(Page.size(pageSize), bookmark, Keys.ORDER_BY_STATUS, symbol, method, status);
+        } else {
+            throw new RuntimeException("The status " + status + " is neither " + Order.OPEN + " nor a terminal status");
+        }
+        return Page.collect(results, entry -> getOrder(ctx, entry.getStringValue()).toJSON(priceScale));
+    }
 
-        // --------- Save order ----------
-        String orderString = genson.serialize(newOrder);
-        stub.putStringState(orderId, orderString);
+    /**
+     * Lists the caller's orders that are not archived yet, by order id.
+     */
+    @Transaction(submit = false)
+    public String getMyOrders(final ExchangeContext ctx, String pageSize, String bookmark) {
+        StateCache cache = ctx.getCache();
+        QueryResultsIteratorWithMetadata<KeyValue> results = cache.getStateByPartialCompositeKeyWithPagination(
+                Page.size(pageSize), bookmark, Keys.ORDER_BY_TRADER, getMyHin(ctx));
+        return Page.collect(results, entry -> {
+            Order order = getOrder(ctx, entry.getStringValue());
+            return order.toJSON(getSecurity(ctx, order.getSymbol()).getPriceScale());
+        });
+    }
+
+    /**
+     * Lists the holders of a security with their positions, by holder id.
+     */
+    @Transaction(submit = false)
+    public String getHolders(final ExchangeContext ctx, String symbol, String pageSize, String bookmark) {
+        StateCache cache = ctx.getCache();
+        getSecurity(ctx, symbol);
+        QueryResultsIteratorWithMetadata<KeyValue> results = cache.getStateByPartialCompositeKeyWithPagination(
+                Page.size(pageSize), bookmark, Keys.HOLDING, symbol);
+        return Page.collect(results, entry -> {
+            JSONObject holder = new JSONObject();
+            holder.put("hin", cache.getStub().splitCompositeKey(entry.getKey()).getAttributes().get(1));
+            holder.put("quantity", cache.getCodecs().getAmountCodec().decode(entry.getValue()));
+            return holder;
+        });
+    }
+
+    /**
+     * Places an order and matches it against the book right away. Fills are
+     * settled within this transaction, any remainder rests in the book.
+     */
+    @Transaction()
+    public void createOrder(final ExchangeContext ctx, String orderId, String method, String symbol, String quantity, String price, String timestamp) {
+        placeOrder(ctx, orderId, method, symbol, quantity, price, timestamp, 0);
+    }
+
+    /**
+     * Places an order like {@link #createOrder} whose remainder expires.
+     *
+     * @param expiry epoch seconds; from the first transaction stamped at or after it the order no longer matches
+     */
+    @Transaction()
+    public void createExpiringOrder(final ExchangeContext ctx, String orderId, String method, String symbol, String quantity, String price, String timestamp,
+            String expiry) {
+        placeOrder(ctx, orderId, method, symbol, quantity, price, timestamp, FixedPoint.parse(expiry, 0));
+    }
+
+    private void placeOrder(final ExchangeContext ctx, String orderId, String method, String symbol, String quantity, String price, String timestamp,
+            long expiry) {
+        Settlement settlement = new Settlement(ctx.getCache());
+        Order newOrder = newOrder(ctx, settlement, orderId, method, symbol, quantity, price, timestamp, expiry, "");
+
+        // --------- Match and save order ----------
+        settlement.add(newOrder);
+        OrderBook.match(settlement, newOrder);
+        settlement.commit();
 
         // --------- Emit Event ----------
+        settlement.event("CreatedOrder")
+                .put("orderId", orderId)
+                .put("symbol", symbol)
+                .put("method", method)
+                .put("quantity", newOrder.getQuantity())
+                .put("price", FixedPoint.format(newOrder.getPrice(), settlement.security(symbol).getPriceScale()))
+                .put("timestamp", newOrder.getTimestamp())
+                .put("owner", newOrder.getTraderHin())
+                .put("remaining", newOrder.getRemaining())
+                .put("status", newOrder.getStatus())
+                .put("root", settlement.getRoot())
+                .emit(ctx);
+    }
+
+    /**
+     * Checks the terms of a new order of the caller and whether the caller can
+     * cover it. The order takes its time priority from this transaction, the
+     * client's timestamp is only kept with it.
+     */
+    private Order newOrder(final ExchangeContext ctx, Settlement settlement, String orderId, String method, String symbol, String quantity,
+            String price, String timestamp, long expiry, String salt) {
+        if (!Order.BUY.equals(method) && !Order.SELL.equals(method)) {
+            throw new RuntimeException("The method " + method + " is neither buy (" + Order.BUY + ") nor sell (" + Order.SELL + ")");
+        }
+        if (orderExists(ctx, orderId)) {
+            throw new RuntimeException("The order " + orderId + " already exists");
+        }
+        Trader trader = settlement.trader(getMyHin(ctx));
+        Security security = settlement.security(symbol);
+        long limit = FixedPoint.parse(price, security.getPriceScale());
+        if (limit <= 0) {
+            throw new RuntimeException("The price " + price + " has to be positive");
+        }
+        long size = FixedPoint.parseQuantity(quantity);
+        long clientTime = FixedPoint.parse(timestamp, 0);
+        if (clientTime <= 0) {
+            throw new RuntimeException("The timestamp " + timestamp + " has to be positive");
+        }
+        Instant placed = ctx.getStub().getTxTimestamp();
+        Order newOrder = new Order(orderId, symbol, size, limit, method, clientTime, "true", "false", trader.getHin(), size,
+                Order.OPEN, expiry, placed.getEpochSecond() * 1_000_000_000L + placed.getNano(), ctx.getStub().getTxId(), salt);
+        if (newOrder.isExpired(settlement.now())) {
+            throw new RuntimeException("The order " + orderId + " expired at " + expiry);
+        }
+        if (!settlement.isCovered(newOrder)) {
+            throw new RuntimeException("The trader " + trader.getHin() + " cannot cover order " + orderId);
+        }
+        return newOrder;
+    }
+
+    // ----------------- Private orders -------------------
+
+    /**
+     * Places an order whose terms stay in {@link PrivateOrders#COLLECTION}.
+     * They are passed in the transient field "order" as {method, symbol,
+     * quantity, price, timestamp, salt} plus an optional expiry, so neither
+     * the proposal nor the block carries them, and only the commitment and
+     * status of the order go to public state. The salt, at least
+     * {@link PrivateOrders#MIN_SALT} random bytes as hex chosen by the client,
+     * is what keeps the terms confidential: without it they are few enough to
+     * recover from the commitment or the private data hash by trying them
+     * all. Private orders do not rest in the book, they are settled with
+     * {@link #settlePrivateOrders}.
+     */
+    @Transaction()
+    public void createPrivateOrder(final ExchangeContext ctx, String orderId) {
+        JSONObject terms = new JSONObject(transientField(ctx, "order"));
+        Settlement settlement = new Settlement(ctx.getCache());
+        settlement.keepPrivate();
+        Order newOrder = newOrder(ctx, settlement, orderId, terms.getString("method"), terms.getString("symbol"),
+                terms.get("quantity").toString(), terms.get("price").toString(), terms.get("timestamp").toString(), terms.optLong("expiry", 0),
+                PrivateOrders.checkSalt(terms.optString("salt")));
+        settlement.add(newOrder);
+        settlement.commit();
+
+        settlement.event("CreatedPrivateOrder")
+                .put("orderId", orderId)
+                .emit(ctx);
+    }
+
+    /**
+     * The detail of a private order, for its owner and operators on peers of the collection's members.
+     */
+    @Transaction(submit = false)
+    public String getPrivateOrder(final ExchangeContext ctx, String orderId) {
+        String detail = PrivateOrders.get(ctx.getCache(), orderId);
+        if (!ctx.isAdmin() && !getMyHin(ctx).equals(new JSONObject(detail).getString("owner"))) {
+            throw new RuntimeException("The order " + orderId + " does not belong to " + getMyHin(ctx));
+        }
+        return detail;
+    }
+
+    /**
+     * Takes a private order of the caller off the market. Its detail, as
+     * returned by {@link #getPrivateOrder}, is passed in the transient field
+     * "order".
+     */
+    @Transaction()
+    public void cancelPrivateOrder(final ExchangeContext ctx, String orderId) {
+        Settlement settlement = new Settlement(ctx.getCache());
+        settlement.keepPrivate();
+        disclose(ctx, settlement, new JSONArray().put(new JSONObject(transientField(ctx, "order"))));
+        Order order = settlement.order(orderId);
+        if (!order.getTraderHin().equals(getMyHin(ctx))) {
+            throw new RuntimeException("The order " + orderId + " does not belong to " + getMyHin(ctx));
+        }
+        if (!order.isOpen()) {
+            throw new RuntimeException("The order " + orderId + " is already " + order.getStatus());
+        }
+        settlement.close(order, Order.CANCELLED);
+        settlement.commit();
+
+        settlement.event("CancelledPrivateOrder")
+                .put("orderId", orderId)
+                .emit(ctx);
+    }
+
+    /**
+     * Settles fills between private orders. Both inputs are transient:
+     * "orders", a JSON array with the detail of every order involved as
+     * returned by {@link #getPrivateOrder}, and "fills", a JSON array of fills
+     * as for {@link #settleOrders}. Every detail is checked against the hash
+     * of the stored one, so the endorsing peers need not be members of the
+     * collection. The fills are kept in the collection too, the positions and
+     * cash balances they change are public as for any trade. Only exchange
+     * operators settle private orders.
+     */
+    @Transaction()
+    public void settlePrivateOrders(final ExchangeContext ctx) {
+        checkAdmin(ctx);
+        JSONArray batch = new JSONArray(transientField(ctx, "fills"));
+        if (batch.length() == 0) {
+            throw new RuntimeException("The batch does not contain any fills");
+        }
+        Settlement settlement = new Settlement(ctx.getCache());
+        settlement.keepPrivate();
+        disclose(ctx, settlement, new JSONArray(transientField(ctx, "orders")));
+        settle(settlement, batch);
+        settlement.commit();
+
+        settlement.event("SettledPrivateOrders")
+                .put("count", settlement.getFills().size())
+                .put("root", settlement.getRoot())
+                .emit(ctx);
+    }
+
+    private static String transientField(final ExchangeContext ctx, String field) {
+        byte[] value = ctx.getStub().getTransient().get(field);
+        if (value == null || value.length == 0) {
+            throw new RuntimeException("The transient field " + field + " is missing");
+        }
+        return new String(value, UTF_8);
+    }
+
+    private static void disclose(final ExchangeContext ctx, Settlement settlement, JSONArray details) {
+        for (int i = 0; i < details.length(); i++) {
+            JSONObject detail = details.getJSONObject(i);
+            int priceScale = settlement.security(detail.getString("symbol")).getPriceScale();
+            settlement.disclose(PrivateOrders.disclose(ctx.getCache(), detail, priceScale));
+        }
+    }
+
+    /**
+     * Takes one of the caller's live orders off the book.
+     */
+    @Transaction()
+    public void cancelOrder(final ExchangeContext ctx, String orderId) {
+        Settlement settlement = new Settlement(ctx.getCache());
+        Order order = settlement.order(orderId);
+        if (!order.getTraderHin().equals(getMyHin(ctx))) {
+            throw new RuntimeException("The order " + orderId + " does not belong to " + getMyHin(ctx));
+        }
+        if (!order.isOpen()) {
+            throw new RuntimeException("The order " + orderId + " is already " + order.getStatus());
+        }
+        settlement.close(order, Order.CANCELLED);
+        settlement.commit();
+
+        settlement.event("CancelledOrder")
+                .put("orderId", orderId)
+                .put("remaining", order.getRemaining())
+                .emit(ctx);
+    }
+
+    /**
+     * Takes expired orders of a symbol off both sides of its book. Matching
+     * skips and closes them anyway, this clears those nobody trades against.
+     *
+     * @param limit the number of live orders to visit, at most {@link OrderBook#MAX_MATCHES} per side
+     * @return the number of orders expired
+     */
+    @Transaction()
+    public int expireOrders(final ExchangeContext ctx, String symbol, String limit) {
+        Settlement settlement = new Settlement(ctx.getCache());
+        settlement.security(symbol);
+        int max = Math.min(Integer.parseInt(limit), OrderBook.MAX_MATCHES);
+        int expired = 0;
+        for (String side : new String[] {Order.BUY, Order.SELL}) {
+            int visited = 0;
+            try (QueryResultsIterator<KeyValue> book = ctx.getCache().getStateByPartialCompositeKey(Keys.BOOK, symbol, side)) {
+                for (KeyValue entry : book) {
+                    if (visited++ >= max) {
+                        break;
+                    }
+                    Order order = settlement.order(entry.getStringValue());
+                    if (order.isExpired(settlement.now())) {
+                        settlement.close(order, Order.EXPIRED);
+                        expired++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Could not scan the order book of " + symbol, e);
+            }
+        }
+        settlement.commit();
+        if (expired > 0) {
+            settlement.event("ExpiredOrders").put("symbol", symbol).put("count", expired).emit(ctx);
+        }
+        return expired;
+    }
+
+    /**
+     * Archives filled, cancelled and expired orders that closed before a day,
+     * see {@link OrderArchive}. Call again while the result says more are left.
+     *
+     * @param before yyyyMMdd in UTC, best a past day so concurrent trading does not conflict
+     * @param limit  the number of orders to archive, at most {@link OrderArchive#MAX_BATCH}
+     */
+    @Transaction()
+    public String archiveOrders(final ExchangeContext ctx, String before, String limit) {
+        JSONObject result = OrderArchive.archive(ctx.getCache(), before, Integer.parseInt(limit));
+        ExchangeEvent event = new ExchangeEvent("ArchivedOrders");
+        for (String field : result.keySet()) {
+            event.put(field, result.get(field));
+        }
+        event.emit(ctx);
+        return CanonicalJson.write(result);
+    }
+
+    /**
+     * Lists the archive records of the orders that closed on a day.
+     *
+     * @param day yyyyMMdd in UTC
+     */
+    @Transaction(submit = false)
+    public String getArchivedOrders(final ExchangeContext ctx, String day, String pageSize, String bookmark) {
+        QueryResultsIteratorWithMetadata<KeyValue> results = ctx.getCache().getStateByPartialCompositeKeyWithPagination(
+                Page.size(pageSize), bookmark, Keys.ARCHIVE, day);
+        return Page.collect(results, entry -> new JSONObject(entry.getStringValue()));
+    }
+
+    /**
+     * Lists the candles of a symbol for one period in bucket order.
+     *
+     * @param interval {@link MarketData#MINUTE} or {@link MarketData#DAY}
+     * @param period   yyyyMMdd for minute candles, yyyy for day candles, in UTC
+     * @param bookmark empty for the first page, then the bookmark of the previous page
+     */
+    @Transaction(submit = false)
+    public String getCandles(final ExchangeContext ctx, String symbol, String interval, String period, String pageSize, String bookmark) {
+        MarketData.checkInterval(interval);
+        int size = Page.size(pageSize);
+        Long from = bookmark.isEmpty() ? null : Long.parseLong(bookmark);
+        List<Candle> candles = MarketData.candles(ctx.getCache(), symbol, interval, period, from, size);
+        JSONArray records = new JSONArray();
+        for (Candle candle : candles.subList(0, Math.min(size, candles.size()))) {
+            records.put(candle.toJSON());
+        }
+        return Page.of(records, candles.size() > size ? Long.toString(candles.get(size).getBucket()) : "");
+    }
+
+    /**
+     * Last price, VWAP, open, high, low and volume of a symbol for the current UTC day.
+     */
+    @Transaction(submit = false)
+    public String getMarketData(final ExchangeContext ctx, String symbol) {
+        getSecurity(ctx, symbol);
+        Instant now = ctx.getStub().getTxTimestamp();
         JSONObject obj = new JSONObject();
         obj.put("symbol", symbol);
-        obj.put("method", method);
-        obj.put("quantity", quantity);
-        obj.put("price", price);
-        obj.put("timestamp", timestamp);
-        obj.put("owner", trader.getHin());
-        stub.setEvent("CreatedOrder", obj.toString().getBytes(UTF_8));
+        obj.put("day", OrderIndex.dayOf(now));
+        Candle today = MarketData.candle(ctx.getCache(), symbol, MarketData.DAY, MarketData.periodOf(MarketData.DAY, now),
+                MarketData.bucketOf(MarketData.DAY, now));
+        if (today == null) {
+            obj.put("trades", 0);
+            return CanonicalJson.write(obj);
+        }
+        JSONObject candle = today.toJSON();
+        obj.put("last", candle.get("close"));
+        obj.put("vwap", candle.get("vwap"));
+        obj.put("open", candle.get("open"));
+        obj.put("high", candle.get("high"));
+        obj.put("low", candle.get("low"));
+        obj.put("volume", candle.get("volume"));
+        obj.put("trades", candle.get("trades"));
+        return CanonicalJson.write(obj);
+    }
+
+    /**
+     * Folds the candle deltas of a symbol's period, see {@link MarketData#compact}.
+     *
+     * @return the number of deltas folded
+     */
+    @Transaction()
+    public int compactCandles(final ExchangeContext ctx, String symbol, String interval, String period) {
+        MarketData.checkInterval(interval);
+        return MarketData.compact(ctx.getCache(), symbol, interval, period);
+    }
+
+    /**
+     * The Merkle proof of one fill of a settling transaction, to check it
+     * against the root of that transaction with {@link Merkle#verify}.
+     *
+     * @param index the position of the fill in the transaction, from 0
+     * @return JSON with the leaf, the sibling hashes from the leaf up, the root and the number of fills
+     */
+    @Transaction(submit = false)
+    public String getFillProof(final ExchangeContext ctx, String txId, String index) {
+        String state = ctx.getCache().getStringState(Keys.settlement(ctx.getCache(), txId));
+        if (state == null) {
+            throw new RuntimeException("The transaction " + txId + " settled no fills");
+        }
+        JSONObject tree = new JSONObject(state);
+        JSONArray hashes = tree.getJSONArray("leaves");
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < hashes.length(); i++) {
+            leaves.add(Digests.unhex(hashes.getString(i)));
+        }
+        int position = Integer.parseInt(index);
+        JSONArray proof = new JSONArray();
+        for (byte[] sibling : Merkle.proof(leaves, position)) {
+            proof.put(Digests.hex(sibling));
+        }
+        JSONObject obj = new JSONObject();
+        obj.put("txId", txId);
+        obj.put("index", position);
+        obj.put("count", leaves.size());
+        obj.put("leaf", hashes.getString(position));
+        obj.put("proof", proof);
+        obj.put("root", tree.getString("root"));
+        return CanonicalJson.write(obj);
     }
 
     @Transaction
-    public String changeBalances(final Context ctx, String symbol, String buyer, String seller, String quantity) {
-        ChaincodeStub stub = ctx.getStub();
-        Security tradedSecurity = genson.deserialize(stub.getStringState(symbol), Security.class);
-        tradedSecurity.transfer(seller, buyer, quantity);
-        System.out.println(tradedSecurity.toString());
-        String securityState = genson.serialize(tradedSecurity);
-        stub.putStringState(symbol, securityState);
-        return securityState;
+    public String changeBalances(final ExchangeContext ctx, String symbol, String buyer, String seller, String quantity) {
+        Security tradedSecurity = getSecurity(ctx, symbol);
+        StateCache cache = ctx.getCache();
+        String from = resolveHin(cache, seller);
+        String to = resolveHin(cache, buyer);
+        tradedSecurity.transfer(cache, from, to, FixedPoint.parseQuantity(quantity));
+        new ExchangeEvent("ChangedBalances")
+                .put("symbol", symbol)
+                .put("quantity", quantity)
+                .position(symbol, from, tradedSecurity.getBalanceOf(cache, from))
+                .position(symbol, to, tradedSecurity.getBalanceOf(cache, to))
+                .emit(ctx);
+        return CanonicalJson.normalize(genson.serialize(tradedSecurity));
     }
 
+    /**
+     * Settles a buy/sell pair matched outside of the book. The pair is checked
+     * against the stored orders: owners and timestamps here, sides, symbol,
+     * limits and remainders in {@link Settlement#settle}.
+     */
     @Transaction()
-    public void settleOrder(final Context ctx, String buyId, String sellId, String symbol, String price, String quantity, String buyTimestamp, String sellTimestamp, String sellHin) {
-        ChaincodeStub stub = ctx.getStub();
-        Trader buyer = getMyAccount(ctx);
-        Trader seller = Trader.fromJSONString(stub.getStringState(sellHin));
-        Order buyOrder = new Order(buyId, symbol, quantity, price, "0", buyTimestamp, "true", "false", buyer.getHin());
-        Order sellOrder = new Order(sellId, symbol, quantity, price, "1", sellTimestamp, "true", "false", sellHin);
-
-        // ------- Check if orders exist ------
-        if (orderExists(ctx, buyId) == false || orderExists(ctx, sellId) == false){
-            throw new RuntimeException("One of the two orders you provided do not exist. BuyOrder: " + buyOrder.getHash() + ", SellOrder: " + sellOrder.getHash());
-        }
-
-        // -------- Transfer the stock from seller to buyer ----------
-        Security tradedSecurity = genson.deserialize(stub.getStringState(symbol), Security.class);
-        tradedSecurity.transfer(sellHin, buyer.getHin(), quantity);
-        String securityState = genson.serialize(tradedSecurity);
-        stub.putStringState(symbol, securityState);
-
-        // -------- Transfer the funds from buyer to seller ----------
-        int total = Integer.parseInt(quantity) * Integer.parseInt(price);
-        buyer.modBalance(total * -1);
-        String traderState = genson.serialize(buyer);
-        stub.putStringState(buyer.getHin(), traderState);
-        seller.modBalance(total);
-        traderState = genson.serialize(seller);
-        stub.putStringState(sellHin, traderState);
-
-        // -------- Modify the orders -----------
-        buyOrder = new Order(buyId, symbol, quantity, price, "0", buyTimestamp, "true", "true", buyer.getHin());
-        sellOrder = new Order(sellId, symbol, quantity, price, "1", sellTimestamp, "true", "true", sellHin);
-
-        // ------- Replace original orders with modified orders ---------
-        String orderState = genson.serialize(buyOrder);
-        stub.putStringState(buyId, orderState);
-        orderState = genson.serialize(sellOrder);
-        stub.putStringState(sellId, orderState);
+    public void settleOrder(final ExchangeContext ctx, String buyId, String sellId, String symbol, String price, String quantity, String buyTimestamp, String sellTimestamp, String sellHin) {
+        Settlement settlement = new Settlement(ctx.getCache());
+        Order buyOrder = settlement.order(buyId);
+        Order sellOrder = settlement.order(sellId);
+
+        // ------- Check that the orders belong to the pair ------
+        if (!buyOrder.getTraderHin().equals(getMyHin(ctx)) || !sellOrder.getTraderHin().equals(resolveHin(ctx.getCache(), sellHin))
+                || buyOrder.getTimestamp() != FixedPoint.parse(buyTimestamp, 0) || sellOrder.getTimestamp() != FixedPoint.parse(sellTimestamp, 0)) {
+            throw new RuntimeException("The orders you provided do not form a pair. BuyOrder: " + buyOrder.getHash() + ", SellOrder: " + sellOrder.getHash());
+        }
+
+        // -------- Transfer stock and funds, update the orders ----------
+        long fillPrice = FixedPoint.parse(price, settlement.security(symbol).getPriceScale());
+        Fill fill = settlement.settle(buyOrder, sellOrder, symbol, fillPrice, FixedPoint.parseQuantity(quantity));
+        settlement.commit();
 
         // --------- Emit Event ----------
-        JSONObject obj = new JSONObject();
-        obj.put("buyId", buyId);
-        obj.put("sellId", sellId);
-        stub.setEvent("SettledOrder", obj.toString().getBytes(UTF_8));
+        ExchangeEvent event = settlement.event("SettledOrder");
+        JSONObject fields = fill.toJSON();
+        for (String field : fields.keySet()) {
+            event.put(field, fields.get(field));
+        }
+        event.put("root", settlement.getRoot()).emit(ctx);
+    }
+
+    /**
+     * Settles a batch of fills in one transaction. The fills are netted in
+     * memory, so every trader, position and order is written once however many
+     * fills touch it. A single invalid fill rejects the whole batch. The fills
+     * are not tied to the caller's orders, so only exchange operators settle
+     * batches.
+     *
+     * @param fills JSON array of fills, each with buyId, sellId, price and quantity
+     */
+    @Transaction()
+    public void settleOrders(final ExchangeContext ctx, String fills) {
+        checkAdmin(ctx);
+        JSONArray batch = new JSONArray(fills);
+        if (batch.length() == 0) {
+            throw new RuntimeException("The batch does not contain any fills");
+        }
+        Settlement settlement = new Settlement(ctx.getCache());
+        settle(settlement, batch);
+        settlement.commit();
+
+        // --------- Emit one event for the whole batch ----------
+        settlement.event("SettledOrders")
+                .put("count", settlement.getFills().size())
+                .put("root", settlement.getRoot())
+                .emit(ctx);
+    }
+
+    private static void settle(Settlement settlement, JSONArray batch) {
+        for (int i = 0; i < batch.length(); i++) {
+            JSONObject fill = batch.getJSONObject(i);
+            Order buyOrder = settlement.order(fill.getString("buyId"));
+            Order sellOrder = settlement.order(fill.getString("sellId"));
+            String symbol = fill.optString("symbol", buyOrder.getSymbol());
+            long price = FixedPoint.parse(fill.get("price").toString(), settlement.security(symbol).getPriceScale());
+            settlement.settle(buyOrder, sellOrder, symbol, price, FixedPoint.parseQuantity(fill.get("quantity").toString()));
+        }
     }
 
 }
@@ -0,0 +1,331 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collects the effects of one or more fills and writes every touched trader
+ * and order exactly once on {@link #commit()}. Traders in delta mode get one
+ * {@link BalanceDeltas} entry with their net change instead. Positions go through the
+ * {@link StateCache}, which already keeps a single pending write per key. The
+ * fills update the {@link MarketData} candles, and a {@link Merkle} root over
+ * them and the order commitments is written under {@link Keys#settlement}.
+ * A private settlement, see {@link #keepPrivate()}, keeps orders and fills
+ * in {@link PrivateOrders} instead.
+ */
+public final class Settlement {
+
+    private final StateCache cache;
+
+    private final Map<String, Trader> changedTraders = new LinkedHashMap<>();
+    private final Map<String, Order> changedOrders = new LinkedHashMap<>();
+    private final Map<String, Order> resting = new LinkedHashMap<>();
+    private final Set<String> added = new HashSet<>();
+    private final Map<String, Long> cashDeltas = new LinkedHashMap<>();
+    private final Map<String, Long> committedDeltas = new HashMap<>();
+    private final Map<String, Long> cashChanges = new LinkedHashMap<>();
+    private final Map<String, Map<String, Long>> positions = new LinkedHashMap<>();
+    private final List<Fill> fills = new ArrayList<>();
+    private final List<byte[]> leaves = new ArrayList<>();
+    private final Map<String, Order> disclosed = new LinkedHashMap<>();
+    private boolean confidential;
+
+    public Settlement(StateCache cache) {
+        this.cache = cache;
+    }
+
+    public StateCache getCache() {
+        return cache;
+    }
+
+    public Trader trader(String hin) {
+        Trader trader = cache.getTrader(hin);
+        if (trader == null) {
+            throw new RuntimeException("The trader " + hin + " is not registered with this exchange.");
+        }
+        return trader;
+    }
+
+    public Security security(String symbol) {
+        Security security = cache.getSecurity(symbol);
+        if (security == null) {
+            throw new RuntimeException("The security " + symbol + " does not exist");
+        }
+        return security;
+    }
+
+    /**
+     * Keeps the orders of this settlement and its fills in
+     * {@link PrivateOrders#COLLECTION}. Public state and the event only get
+     * the commitments of the orders, and the fills are left out of the market
+     * data. Orders are not read from public state, they have to be
+     * {@link #disclose disclosed}.
+     */
+    public void keepPrivate() {
+        this.confidential = true;
+    }
+
+    /**
+     * Makes a private order whose detail was checked by {@link PrivateOrders#disclose} available to {@link #order}.
+     */
+    public void disclose(Order order) {
+        disclosed.put(order.getOrderId(), order);
+    }
+
+    public Order order(String orderId) {
+        Order order = confidential ? disclosed.get(orderId) : cache.getOrder(orderId);
+        if (order == null) {
+            throw new RuntimeException("The order " + orderId + " does not exist");
+        }
+        return order;
+    }
+
+    /**
+     * Registers a newly created order, it is written on commit together with the settled ones.
+     */
+    public void add(Order order) {
+        changedOrders.put(order.getOrderId(), order);
+        added.add(order.getOrderId());
+    }
+
+    /**
+     * Takes an order off the book without filling its remainder.
+     *
+     * @param reason {@link Order#CANCELLED} or {@link Order#EXPIRED}
+     */
+    public void close(Order order, String reason) {
+        order.close(reason);
+        changedOrders.put(order.getOrderId(), order);
+    }
+
+    /**
+     * @return the transaction time in epoch seconds, which orders expire against
+     */
+    public long now() {
+        return cache.getStub().getTxTimestamp().getEpochSecond();
+    }
+
+    /**
+     * Leaves the open remainder of the order in the book on commit.
+     */
+    public void rest(Order order) {
+        resting.put(order.getOrderId(), order);
+    }
+
+    /**
+     * Cash available to the trader. For traders in delta mode this sums their
+     * committed deltas once per transaction, a range read that makes the
+     * transaction conflict with any other that moves their cash in the same
+     * block. Only debits are checked, so credits still write their deltas
+     * without reading.
+     */
+    public long cashOf(String hin) {
+        Trader trader = trader(hin);
+        long balance = trader.getBalance();
+        if (trader.isDeltaMode()) {
+            long committed = committedDeltas.computeIfAbsent(hin, h -> BalanceDeltas.sum(cache, h));
+            balance = FixedPoint.add(balance, FixedPoint.add(committed, cashDeltas.getOrDefault(hin, 0L)));
+        }
+        return balance;
+    }
+
+    private void modCash(Trader trader, long amount) {
+        cashChanges.merge(trader.getHin(), amount, FixedPoint::add);
+        if (trader.isDeltaMode()) {
+            cashDeltas.merge(trader.getHin(), amount, FixedPoint::add);
+        } else {
+            trader.modBalance(amount);
+            changedTraders.put(trader.getHin(), trader);
+        }
+    }
+
+    public long positionOf(String symbol, String hin) {
+        return security(symbol).getBalanceOf(cache, hin);
+    }
+
+    /**
+     * Checks that the owner of the order can pay for, or deliver, its remaining quantity.
+     */
+    public boolean isCovered(Order order) {
+        if (order.isBuy()) {
+            return canPay(order, order.getPrice(), order.getRemaining());
+        }
+        return canDeliver(order, order.getRemaining());
+    }
+
+    public boolean canPay(Order buy, long price, long quantity) {
+        int priceScale = security(buy.getSymbol()).getPriceScale();
+        return cashOf(buy.getTraderHin()) >= FixedPoint.notional(quantity, price, priceScale);
+    }
+
+    public boolean canDeliver(Order sell, long quantity) {
+        return positionOf(sell.getSymbol(), sell.getTraderHin()) >= quantity;
+    }
+
+    /**
+     * Settles a pair that was matched outside of the book after checking it
+     * against the stored orders: sides, symbol, both open and unexpired,
+     * different owners and the price between both limits.
+     */
+    public Fill settle(Order buy, Order sell, String symbol, long price, long quantity) {
+        if (!buy.isBuy() || sell.isBuy() || !buy.isOpen() || !sell.isOpen() || buy.isExpired(now()) || sell.isExpired(now())
+                || !symbol.equals(buy.getSymbol()) || !symbol.equals(sell.getSymbol())) {
+            throw new RuntimeException("The orders " + buy.getOrderId() + " and " + sell.getOrderId() + " do not form a pair");
+        }
+        if (buy.getTraderHin().equals(sell.getTraderHin())) {
+            throw new RuntimeException("The orders " + buy.getOrderId() + " and " + sell.getOrderId() + " both belong to " + buy.getTraderHin());
+        }
+        if (price > buy.getPrice() || price < sell.getPrice()) {
+            throw new RuntimeException("The price " + price + " is outside the limits of " + buy.getOrderId() + " and " + sell.getOrderId());
+        }
+        return fill(buy, sell, price, quantity);
+    }
+
+    public Fill fill(Order buy, Order sell, long price, long quantity) {
+        if (quantity <= 0 || price <= 0) {
+            throw new RuntimeException("Price and quantity have to be positive, got " + price + " and " + quantity);
+        }
+        if (!canPay(buy, price, quantity)) {
+            throw new RuntimeException("The trader " + buy.getTraderHin() + " cannot pay for order " + buy.getOrderId());
+        }
+        if (!canDeliver(sell, quantity)) {
+            throw new RuntimeException("The trader " + sell.getTraderHin() + " cannot deliver order " + sell.getOrderId());
+        }
+        buy.fill(quantity);
+        sell.fill(quantity);
+        changedOrders.put(buy.getOrderId(), buy);
+        changedOrders.put(sell.getOrderId(), sell);
+
+        Security security = security(buy.getSymbol());
+        security.transfer(cache, sell.getTraderHin(), buy.getTraderHin(), quantity);
+        Map<String, Long> holders = positions.computeIfAbsent(security.getSymbol(), symbol -> new LinkedHashMap<>());
+        holders.put(sell.getTraderHin(), security.getBalanceOf(cache, sell.getTraderHin()));
+        holders.put(buy.getTraderHin(), security.getBalanceOf(cache, buy.getTraderHin()));
+
+        Fill fill = new Fill(buy.getOrderId(), sell.getOrderId(), buy.getSymbol(), price, security.getPriceScale(), quantity);
+        long total = fill.getNotional();
+        modCash(trader(buy.getTraderHin()), -total);
+        modCash(trader(sell.getTraderHin()), total);
+
+        fills.add(fill);
+        leaves.add(Merkle.leaf(fill, buy.getHash(), sell.getHash()));
+        return fill;
+    }
+
+    /**
+     * Sells units from the inventory of a listing to the buyer at the issue
+     * price. The issuer is paid like any seller, in delta mode without
+     * touching its trader record.
+     *
+     * @return the shards the units were taken from
+     */
+    public List<Integer> buyFromIssuer(Security security, Inventory inventory, String buyerHin, long quantity) {
+        long total = FixedPoint.notional(quantity, inventory.getPrice(), security.getPriceScale());
+        if (cashOf(buyerHin) < total) {
+            throw new RuntimeException("The trader " + buyerHin + " cannot pay for " + quantity + " of " + security.getSymbol());
+        }
+        List<Integer> drawn = inventory.take(cache, cache.getStub().getTxId(), quantity);
+        long position = FixedPoint.add(security.getBalanceOf(cache, buyerHin), quantity);
+        security.putBalanceOf(cache, buyerHin, position);
+        positions.computeIfAbsent(security.getSymbol(), symbol -> new LinkedHashMap<>()).put(buyerHin, position);
+        modCash(trader(buyerHin), -total);
+        modCash(trader(security.getOwner()), total);
+        return drawn;
+    }
+
+    public List<Fill> getFills() {
+        return fills;
+    }
+
+    /**
+     * @return the Merkle root over the fills as hex, null without fills
+     */
+    public String getRoot() {
+        return leaves.isEmpty() ? null : Digests.hex(Merkle.root(leaves));
+    }
+
+    /**
+     * The event of the settled transaction, with every changed order, fill,
+     * position and cash balance.
+     */
+    public ExchangeEvent event(String type) {
+        ExchangeEvent event = new ExchangeEvent(type);
+        for (Order order : changedOrders.values()) {
+            if (confidential) {
+                event.commitment(order);
+            } else {
+                event.order(order, security(order.getSymbol()).getPriceScale());
+            }
+        }
+        if (!confidential) {
+            for (Fill fill : fills) {
+                event.fill(fill);
+            }
+        }
+        for (Map.Entry<String, Map<String, Long>> holders : positions.entrySet()) {
+            for (Map.Entry<String, Long> position : holders.getValue().entrySet()) {
+                event.position(holders.getKey(), position.getKey(), position.getValue());
+            }
+        }
+        for (Map.Entry<String, Long> change : cashChanges.entrySet()) {
+            event.cash(change.getKey(), change.getValue());
+        }
+        return event;
+    }
+
+    public void commit() {
+        for (Trader trader : changedTraders.values()) {
+            cache.putTrader(trader);
+        }
+        for (Map.Entry<String, Long> delta : cashDeltas.entrySet()) {
+            BalanceDeltas.write(cache, delta.getKey(), delta.getValue());
+        }
+        for (Order order : changedOrders.values()) {
+            if (confidential) {
+                PrivateOrders.put(cache, order, security(order.getSymbol()).getPriceScale());
+                continue;
+            }
+            cache.putOrder(order);
+            if (added.contains(order.getOrderId())) {
+                OrderIndex.add(cache, order);
+            } else if (!order.isOpen()) {
+                OrderIndex.close(cache, order);
+            }
+            if (!order.isOpen()) {
+                cache.delState(Keys.book(cache, order));
+            } else if (resting.containsKey(order.getOrderId())) {
+                cache.putStringState(Keys.book(cache, order), order.getOrderId());
+            }
+        }
+        if (confidential) {
+            if (!fills.isEmpty()) {
+                PrivateOrders.putFills(cache, fills);
+            }
+        } else {
+            MarketData.record(cache, fills);
+        }
+        if (!leaves.isEmpty()) {
+            JSONArray hashes = new JSONArray();
+            for (byte[] leaf : leaves) {
+                hashes.put(Digests.hex(leaf));
+            }
+            JSONObject tree = new JSONObject();
+            tree.put("root", getRoot());
+            tree.put("count", leaves.size());
+            tree.put("leaves", hashes);
+            cache.putStringState(Keys.settlement(cache, cache.getStub().getTxId()), CanonicalJson.write(tree));
+        }
+    }
+}
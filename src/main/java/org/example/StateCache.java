@@ -0,0 +1,314 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Read-through, write-back view on the world state for a single transaction.
+ * Every key is fetched from the peer at most once, writes are buffered and
+ * sent on {@link #flush()}, and reads see the transaction's own pending writes.
+ * Range scans go straight to the peer and, as in Fabric itself, do not see
+ * pending writes. State calls, bytes and codec time are counted in the
+ * transaction's {@link TransactionMetrics}. A read-only cache, as used by
+ * evaluate-only functions, rejects every write. Private data writes are
+ * buffered the same way, per collection.
+ */
+public class StateCache {
+
+    private static final byte[] DELETED = new byte[0];
+
+    private final ChaincodeStub stub;
+    private final Codecs codecs;
+    private final TransactionMetrics metrics;
+
+    private final Map<String, byte[]> reads = new HashMap<>();
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+    private final Map<String, Object> entities = new HashMap<>();
+    private final Map<String, Map<String, byte[]>> privateWrites = new LinkedHashMap<>();
+    private String readOnly;
+
+    public StateCache(ChaincodeStub stub, Codecs codecs) {
+        this(stub, codecs, TransactionMetrics.DISABLED);
+    }
+
+    public StateCache(ChaincodeStub stub, Codecs codecs, TransactionMetrics metrics) {
+        this.stub = stub;
+        this.codecs = codecs;
+        this.metrics = metrics;
+    }
+
+    public ChaincodeStub getStub() {
+        return stub;
+    }
+
+    public Codecs getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Rejects all further writes, naming the function in the error.
+     */
+    public void setReadOnly(String function) {
+        this.readOnly = function;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly != null;
+    }
+
+    private void checkWritable(String key) {
+        if (readOnly != null) {
+            throw new RuntimeException("The function " + readOnly + " is evaluate-only and cannot write " + key);
+        }
+    }
+
+    public String createCompositeKey(String objectType, String... attributes) {
+        return stub.createCompositeKey(objectType, attributes).toString();
+    }
+
+    public byte[] getState(String key) {
+        byte[] pending = writes.get(key);
+        if (pending != null) {
+            return pending == DELETED ? null : pending;
+        }
+        if (reads.containsKey(key)) {
+            return reads.get(key);
+        }
+        byte[] value = stub.getState(key);
+        metrics.stateRead(value);
+        if (value != null && value.length == 0) {
+            value = null;
+        }
+        reads.put(key, value);
+        return value;
+    }
+
+    public String getStringState(String key) {
+        byte[] value = getState(key);
+        return value == null ? null : new String(value, UTF_8);
+    }
+
+    public boolean exists(String key) {
+        return getState(key) != null;
+    }
+
+    public void putState(String key, byte[] value) {
+        checkWritable(key);
+        writes.put(key, value);
+        entities.remove(key);
+    }
+
+    public void putStringState(String key, String value) {
+        putState(key, value.getBytes(UTF_8));
+    }
+
+    public void delState(String key) {
+        checkWritable(key);
+        writes.put(key, DELETED);
+        entities.remove(key);
+    }
+
+    /**
+     * Reads private data, which only peers of the collection's members hold.
+     *
+     * @return the pending or stored value, null if there is none
+     */
+    public byte[] getPrivateData(String collection, String key) {
+        byte[] pending = privateWrites.getOrDefault(collection, Collections.emptyMap()).get(key);
+        if (pending != null) {
+            return pending;
+        }
+        byte[] value = stub.getPrivateData(collection, key);
+        metrics.stateRead(value);
+        return value == null || value.length == 0 ? null : value;
+    }
+
+    /**
+     * The SHA-256 of private data, which every peer of the channel holds.
+     *
+     * @return the hash of the pending or stored value, null if there is none
+     */
+    public byte[] getPrivateDataHash(String collection, String key) {
+        byte[] pending = privateWrites.getOrDefault(collection, Collections.emptyMap()).get(key);
+        if (pending != null) {
+            return Digests.local().digest(pending);
+        }
+        byte[] hash = stub.getPrivateDataHash(collection, key);
+        return hash == null || hash.length == 0 ? null : hash;
+    }
+
+    public void putPrivateData(String collection, String key, byte[] value) {
+        checkWritable(key);
+        privateWrites.computeIfAbsent(collection, c -> new LinkedHashMap<>()).put(key, value);
+    }
+
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        metrics.rangeQuery();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(objectType, attributes);
+        return metrics.isEnabled() ? new MeteredResults(results, metrics) : results;
+    }
+
+    /**
+     * A scan over simple keys, from startKey inclusive to endKey exclusive, an
+     * empty endKey meaning no upper bound. Composite keys are not included.
+     */
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        metrics.rangeQuery();
+        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        return metrics.isEnabled() ? new MeteredResults(results, metrics) : results;
+    }
+
+    /**
+     * One page of a partial key scan. Fabric only allows these in transactions
+     * that write nothing, so they are for queries.
+     */
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(int pageSize, String bookmark,
+            String objectType, String... attributes) {
+        metrics.rangeQuery();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                stub.createCompositeKey(objectType, attributes), pageSize, bookmark);
+        return metrics.isEnabled() ? new MeteredResults(results, metrics) : results;
+    }
+
+    public Trader getTrader(String hin) {
+        return getEntity(Keys.trader(this, hin), codecs.getTraderCodec());
+    }
+
+    public Security getSecurity(String symbol) {
+        return getEntity(Keys.security(this, symbol), codecs.getSecurityCodec());
+    }
+
+    public Order getOrder(String orderId) {
+        return getEntity(Keys.order(this, orderId), codecs.getOrderCodec());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getEntity(String key, StateCodec<T> codec) {
+        T entity = (T) entities.get(key);
+        if (entity == null) {
+            byte[] state = getState(key);
+            long clock = metrics.clock();
+            entity = codec.decode(state);
+            metrics.serialized(clock);
+            if (entity != null) {
+                entities.put(key, entity);
+            }
+        }
+        return entity;
+    }
+
+    public void putTrader(Trader trader) {
+        putEntity(Keys.trader(this, trader.getHin()), trader, codecs.getTraderCodec());
+    }
+
+    public void putSecurity(Security security) {
+        putEntity(Keys.security(this, security.getSymbol()), security, codecs.getSecurityCodec());
+    }
+
+    public void putOrder(Order order) {
+        putEntity(Keys.order(this, order.getOrderId()), order, codecs.getOrderCodec());
+    }
+
+    private <T> void putEntity(String key, T entity, StateCodec<T> codec) {
+        long clock = metrics.clock();
+        byte[] state = codec.encode(entity);
+        metrics.serialized(clock);
+        putState(key, state);
+        entities.put(key, entity);
+    }
+
+    /**
+     * @return the amount stored under the key, 0 if there is none
+     */
+    public long getAmount(String key) {
+        Long amount = codecs.getAmountCodec().decode(getState(key));
+        return amount == null ? 0 : amount;
+    }
+
+    public void putAmount(String key, long amount) {
+        putState(key, codecs.getAmountCodec().encode(amount));
+    }
+
+    /**
+     * Sends the buffered writes to the peer, each key once.
+     */
+    public void flush() {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == DELETED) {
+                stub.delState(write.getKey());
+                metrics.stateDeleted();
+            } else {
+                stub.putState(write.getKey(), write.getValue());
+                metrics.stateWritten(write.getValue());
+            }
+        }
+        writes.clear();
+        for (Map.Entry<String, Map<String, byte[]>> collection : privateWrites.entrySet()) {
+            for (Map.Entry<String, byte[]> write : collection.getValue().entrySet()) {
+                stub.putPrivateData(collection.getKey(), write.getKey(), write.getValue());
+                metrics.stateWritten(write.getValue());
+            }
+        }
+        privateWrites.clear();
+    }
+
+    /**
+     * Range results that count what the transaction actually reads.
+     */
+    private static final class MeteredResults implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final QueryResultsIterator<KeyValue> results;
+        private final TransactionMetrics metrics;
+
+        MeteredResults(QueryResultsIterator<KeyValue> results, TransactionMetrics metrics) {
+            this.results = results;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ChaincodeShim.QueryResponseMetadata getMetadata() {
+            return results instanceof QueryResultsIteratorWithMetadata
+                    ? ((QueryResultsIteratorWithMetadata<KeyValue>) results).getMetadata()
+                    : null;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            Iterator<KeyValue> iterator = results.iterator();
+            return new Iterator<KeyValue>() {
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    KeyValue next = iterator.next();
+                    metrics.rangeResult(next.getValue());
+                    return next;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws Exception {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+/**
+ * Converts a ledger value to and from the bytes passed to putState/getState.
+ */
+public interface StateCodec<T> {
+
+    byte[] encode(T value);
+
+    /**
+     * @return the decoded value, or null for a missing key
+     */
+    T decode(byte[] state);
+}
@@ -6,14 +6,11 @@ package org.example;
 
 import java.util.Objects;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.json.JSONObject;
-import org.json.JSONArray;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import com.owlike.genson.annotation.JsonCreator;
 import com.owlike.genson.annotation.JsonProperty;
 
 @DataType()
@@ -22,23 +19,34 @@ public class Trader {
     @Property()
     private final String hin;
 
+    /** Cash in minor units at {@link FixedPoint#CASH_SCALE}. */
     @Property()
-    private String balance;
+    private long balance;
 
     @Property()
     private String isMember;
 
-    public Trader(@JsonProperty("hin") final String hin, @JsonProperty("balance") String balance){
+    @Property()
+    private String deltaMode;
+
+    public Trader(final String hin, long balance){
+        this(hin, balance, "false");
+    }
+
+    @JsonCreator
+    public Trader(@JsonProperty("hin") final String hin, @JsonProperty("balance") long balance,
+            @JsonProperty("deltaMode") String deltaMode){
         this.hin = hin;
         this.balance = balance;
         this.isMember = "true";
+        this.deltaMode = deltaMode;
     }
 
     public String getHin() {
         return hin;
     }
 
-    public String getBalance() {
+    public long getBalance() {
         return balance;
     }
 
@@ -46,9 +54,24 @@ public class Trader {
         return isMember;
     }
 
-    public void modBalance(@JsonProperty("amount") int amount) {
-        int intBalance = Integer.parseInt(this.balance) + amount;
-        this.balance = Integer.toString(intBalance);
+    /**
+     * In delta mode settlements credit and debit the cash balance through
+     * {@link BalanceDeltas} instead of rewriting this record.
+     */
+    public String getDeltaMode() {
+        return deltaMode;
+    }
+
+    public boolean isDeltaMode() {
+        return "true".equals(deltaMode);
+    }
+
+    public void setDeltaMode(boolean deltaMode) {
+        this.deltaMode = Boolean.toString(deltaMode);
+    }
+
+    public void modBalance(@JsonProperty("amount") long amount) {
+        this.balance = FixedPoint.add(this.balance, amount);
     }
 
     @Override
@@ -59,7 +82,7 @@ public class Trader {
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + " [hin=" + hin + ", balance="
-                + balance + "]";
+                + FixedPoint.format(balance, FixedPoint.CASH_SCALE) + "]";
     }
 
     @Override
@@ -77,11 +100,16 @@ public class Trader {
         return Objects.deepEquals(new String[] {getHin()}, new String[] {other.getHin()});
     }
 
+    /**
+     * Reads a trader stored as JSON before the binary format, when balances
+     * were whole currency units kept as strings.
+     */
     public static Trader fromJSONString(String json) {
         JSONObject jobj = new JSONObject(json);
         String hin = jobj.getString("hin");
-        String balance = jobj.getString("balance");
+        long balance = FixedPoint.parse(jobj.get("balance").toString(), FixedPoint.CASH_SCALE);
         Trader trader = new Trader(hin, balance);
+        trader.setDeltaMode("true".equals(jobj.optString("deltaMode")));
         return trader;
     }
 }
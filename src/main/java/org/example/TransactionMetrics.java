@@ -0,0 +1,182 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.example;
+
+import org.json.JSONObject;
+
+/**
+ * Counters of a single transaction: wall time, state calls, bytes moved,
+ * time spent in codecs and the size of the emitted event. The shared
+ * {@link #DISABLED} instance ignores every call, so a transaction without
+ * metrics allocates nothing for them.
+ */
+public class TransactionMetrics {
+
+    public static final TransactionMetrics DISABLED = new TransactionMetrics(false);
+
+    private final boolean enabled;
+
+    private String txId;
+    private String function;
+    private long startNanos;
+    private long wallNanos;
+    private int getStateCalls;
+    private int putStateCalls;
+    private int delStateCalls;
+    private int rangeQueries;
+    private int rangeResults;
+    private long bytesRead;
+    private long bytesWritten;
+    private long serializationNanos;
+    private int eventBytes;
+
+    public TransactionMetrics() {
+        this(true);
+    }
+
+    private TransactionMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void start(String txId, String function) {
+        if (enabled) {
+            this.txId = txId;
+            this.function = function;
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    void finish() {
+        if (enabled) {
+            wallNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    void stateRead(byte[] value) {
+        if (enabled) {
+            getStateCalls++;
+            bytesRead += value == null ? 0 : value.length;
+        }
+    }
+
+    void stateWritten(byte[] value) {
+        if (enabled) {
+            putStateCalls++;
+            bytesWritten += value.length;
+        }
+    }
+
+    void stateDeleted() {
+        if (enabled) {
+            delStateCalls++;
+        }
+    }
+
+    void rangeQuery() {
+        if (enabled) {
+            rangeQueries++;
+        }
+    }
+
+    void rangeResult(byte[] value) {
+        if (enabled) {
+            rangeResults++;
+            bytesRead += value == null ? 0 : value.length;
+        }
+    }
+
+    /**
+     * @return a start time for {@link #serialized(long)}, 0 when disabled
+     */
+    long clock() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void serialized(long clock) {
+        if (enabled) {
+            serializationNanos += System.nanoTime() - clock;
+        }
+    }
+
+    void event(byte[] payload) {
+        if (enabled) {
+            eventBytes = payload == null ? 0 : payload.length;
+        }
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public int getGetStateCalls() {
+        return getStateCalls;
+    }
+
+    public int getPutStateCalls() {
+        return putStateCalls;
+    }
+
+    public int getDelStateCalls() {
+        return delStateCalls;
+    }
+
+    public int getRangeQueries() {
+        return rangeQueries;
+    }
+
+    public int getRangeResults() {
+        return rangeResults;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    public int getEventBytes() {
+        return eventBytes;
+    }
+
+    public String toJSON() {
+        JSONObject obj = new JSONObject();
+        obj.put("txId", txId);
+        obj.put("function", function);
+        obj.put("wallMicros", wallNanos / 1000);
+        obj.put("getState", getStateCalls);
+        obj.put("putState", putStateCalls);
+        obj.put("delState", delStateCalls);
+        obj.put("rangeQueries", rangeQueries);
+        obj.put("rangeResults", rangeResults);
+        obj.put("bytesRead", bytesRead);
+        obj.put("bytesWritten", bytesWritten);
+        obj.put("serializationMicros", serializationNanos / 1000);
+        obj.put("eventBytes", eventBytes);
+        return obj.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@" + Integer.toHexString(this.hashCode()) + " " + toJSON();
+    }
+}
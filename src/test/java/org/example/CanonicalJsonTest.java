@@ -0,0 +1,150 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class CanonicalJsonTest {
+
+    private static final List<String> NAMES = Arrays.asList("symbol", "hin", "quantity", "price", "owner", "status",
+            "orderId", "timestamp", "Zulu", "a", "aa", "\u00e9t\u00e9");
+
+    /**
+     * The same members as a JSONObject or a map, each built in its own order.
+     */
+    private static Object build(Random random, int depth) {
+        List<String> names = new ArrayList<>(NAMES);
+        Collections.shuffle(names, random);
+        boolean asMap = random.nextBoolean();
+        JSONObject obj = new JSONObject();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (String name : names) {
+            Object value = depth > 0 && name.equals("owner") ? build(random, depth - 1) : valueOf(random, name);
+            if (asMap) {
+                map.put(name, value);
+            } else {
+                obj.put(name, value);
+            }
+        }
+        return asMap ? map : obj;
+    }
+
+    /**
+     * The value of a member, as one of the numbers that are equal to it.
+     */
+    private static Object valueOf(Random random, String name) {
+        switch (name) {
+            case "quantity":
+                return random.nextBoolean() ? (Object) 250 : (Object) 250L;
+            case "price":
+                return random.nextBoolean() ? new BigDecimal("50.10") : new BigDecimal("50.1");
+            case "timestamp":
+                return random.nextBoolean() ? (Object) 1700000000L : (Object) new BigDecimal("1700000000.000");
+            case "status":
+                return new JSONArray(Arrays.asList("open", true, JSONObject.NULL));
+            default:
+                return name + "\"\\\n";
+        }
+    }
+
+    @Test
+    public void writesTheSameBytesWhateverTheConstructionOrder() {
+        Random random = new Random(22);
+        String first = CanonicalJson.write(build(random, 2));
+        for (int i = 0; i < 500; i++) {
+            assertThat(CanonicalJson.write(build(random, 2))).isEqualTo(first);
+        }
+        assertThat(first).startsWith("{\"Zulu\":\"Zulu\\\"\\\\\\n\",\"a\":\"a");
+        assertThat(first).contains("\"price\":50.1,\"quantity\":250,");
+        assertThat(first).contains("\"timestamp\":1700000000,");
+        assertThat(first).doesNotContain(" ");
+    }
+
+    @Test
+    public void writesEqualNumbersAlike() {
+        assertThat(CanonicalJson.write(Arrays.asList(1, 1L, new BigDecimal("1.00"), 1.0d, new BigDecimal("0.000"), -0.0d)))
+                .isEqualTo("[1,1,1,1,0,0]");
+        assertThat(CanonicalJson.write(Arrays.asList(new BigDecimal("1E+3"), 2.5f, new BigDecimal("-0.0500"))))
+                .isEqualTo("[1000,2.5,-0.05]");
+        assertThatThrownBy(() -> CanonicalJson.write(Double.NaN)).hasMessageContaining("NaN");
+        assertThatThrownBy(() -> CanonicalJson.write(Double.POSITIVE_INFINITY)).hasMessageContaining("Infinity");
+    }
+
+    @Test
+    public void escapesOnlyQuotesBackslashesAndControlCharacters() {
+        assertThat(CanonicalJson.write("a\"b\\c/d\u0001\t\u00e9"))
+                .isEqualTo("\"a\\\"b\\\\c/d\\u0001\\t\u00e9\"");
+    }
+
+    @Test
+    public void rewritesJsonFromOtherWriters() {
+        assertThat(CanonicalJson.normalize("{ \"b\" : 1.50, \"a\" : [true, null, {\"y\": \"\\u0041\", \"x\": 2}] }"))
+                .isEqualTo("{\"a\":[true,null,{\"x\":2,\"y\":\"A\"}],\"b\":1.5}");
+        assertThat(CanonicalJson.normalize(" [3, \"z\"] ")).isEqualTo("[3,\"z\"]");
+        assertThatThrownBy(() -> CanonicalJson.write(new Object())).hasMessageContaining("Cannot write");
+    }
+
+    @Test
+    public void storesEntitiesAlikeWhicheverWayTheyWereRead() {
+        Order built = new Order("sell-1", "ACME", 10, 5000, Order.SELL, 1700000000L, "true", "false", "alice-hin");
+        byte[] expected = Codecs.binary().getOrderCodec().encode(built);
+        Random random = new Random(22);
+        List<String> names = Arrays.asList("orderId", "symbol", "quantity", "price", "method", "timestamp", "traderHin");
+        for (int i = 0; i < 50; i++) {
+            List<String> order = new ArrayList<>(names);
+            Collections.shuffle(order, random);
+            StringBuilder legacy = new StringBuilder("{");
+            for (String name : order) {
+                legacy.append(legacy.length() > 1 ? "," : "").append('"').append(name).append("\":");
+                switch (name) {
+                    case "quantity":
+                        legacy.append(random.nextBoolean() ? "10" : "\"10\"");
+                        break;
+                    case "price":
+                        legacy.append(random.nextBoolean() ? "50" : "\"50.00\"");
+                        break;
+                    case "timestamp":
+                        legacy.append("1700000000");
+                        break;
+                    case "traderHin":
+                        legacy.append("\"alice-hin\"");
+                        break;
+                    case "method":
+                        legacy.append('"').append(Order.SELL).append('"');
+                        break;
+                    default:
+                        legacy.append(name.equals("orderId") ? "\"sell-1\"" : "\"ACME\"");
+                }
+            }
+            Order read = Order.fromJSONString(legacy.append('}').toString());
+
+            assertThat(Codecs.binary().getOrderCodec().encode(read)).isEqualTo(expected);
+        }
+    }
+}
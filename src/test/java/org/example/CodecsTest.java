@@ -0,0 +1,167 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class CodecsTest {
+
+    private final Codecs codecs = Codecs.binary();
+
+    @Nested
+    class Binary {
+
+        @Test
+        public void roundTripsTrader() {
+            Trader trader = new Trader("A2010", -250);
+            trader.setDeltaMode(true);
+
+            Trader decoded = codecs.getTraderCodec().decode(codecs.getTraderCodec().encode(trader));
+
+            assertThat(decoded.getHin()).isEqualTo("A2010");
+            assertThat(decoded.getBalance()).isEqualTo(-250);
+            assertThat(decoded.isDeltaMode()).isTrue();
+        }
+
+        @Test
+        public void roundTripsSecurity() {
+            Security security = new Security("A2010", "AAPL", "Apple Inc.", 100);
+
+            Security decoded = codecs.getSecurityCodec().decode(codecs.getSecurityCodec().encode(security));
+
+            assertThat(decoded).isEqualTo(security);
+        }
+
+        @Test
+        public void roundTripsOrder() {
+            Order order = new Order("1", "AAPL", 5, 1000, Order.BUY, 1590400763L, "true", "false", "A2010");
+            order.fill(2);
+
+            Order decoded = codecs.getOrderCodec().decode(codecs.getOrderCodec().encode(order));
+
+            assertThat(decoded).isEqualTo(order);
+            assertThat(decoded.getRemaining()).isEqualTo(3);
+            assertThat(decoded.getStatus()).isEqualTo(Order.PARTIALLY_FILLED);
+        }
+
+        @Test
+        public void roundTripsCandle() {
+            Candle candle = new Candle(1590400800L, 2);
+            candle.add(1590400801000L, new Fill("b", "s", "AAPL", 1000, 2, 5));
+
+            Candle decoded = codecs.getCandleCodec().decode(codecs.getCandleCodec().encode(candle));
+
+            assertThat(decoded.toJSON().toString()).isEqualTo(candle.toJSON().toString());
+            assertThat(decoded.getCloseTime()).isEqualTo(1590400801000L);
+        }
+
+        @Test
+        public void keepsCloseReasonAndExpiry() {
+            Order order = new Order("1", "AAPL", 5, 1000, Order.BUY, 1590400763L, "true", "false", "A2010", 5, Order.OPEN, 1590400800L);
+            order.close(Order.EXPIRED);
+
+            Order decoded = codecs.getOrderCodec().decode(codecs.getOrderCodec().encode(order));
+
+            assertThat(decoded.getStatus()).isEqualTo(Order.EXPIRED);
+            assertThat(decoded.getExpiry()).isEqualTo(1590400800L);
+        }
+
+        @Test
+        public void roundTripsAmounts() {
+            for (long amount : new long[] {0, 1, -1, 63, 64, -65, Long.MAX_VALUE, Long.MIN_VALUE}) {
+                assertThat(codecs.getAmountCodec().decode(codecs.getAmountCodec().encode(amount))).isEqualTo(amount);
+            }
+        }
+
+        @Test
+        public void isSmallerThanJson() {
+            Order order = new Order("1", "AAPL", 5, 1000, Order.BUY, 1590400763L, "true", "false", "A2010");
+
+            assertThat(codecs.getOrderCodec().encode(order).length)
+                    .isLessThan(Codecs.json().getOrderCodec().encode(order).length);
+        }
+
+        @Test
+        public void rejectsOtherTypes() {
+            byte[] trader = codecs.getTraderCodec().encode(new Trader("A2010", 100));
+
+            assertThatThrownBy(() -> codecs.getOrderCodec().decode(trader)).isInstanceOf(RuntimeException.class);
+        }
+    }
+
+    @Nested
+    class Legacy {
+
+        @Test
+        public void readsJsonTrader() {
+            byte[] state = "{\"hin\":\"A2010\",\"balance\":\"10000\",\"status\":\"true\"}".getBytes(UTF_8);
+
+            Trader trader = codecs.getTraderCodec().decode(state);
+
+            assertThat(trader.getHin()).isEqualTo("A2010");
+            assertThat(trader.getBalance()).isEqualTo(100000000);
+            assertThat(trader.isDeltaMode()).isFalse();
+        }
+
+        @Test
+        public void readsJsonSecurity() {
+            byte[] state = "{\"owner\":\"A2010\",\"symbol\":\"AAPL\",\"name\":\"Apple Inc.\",\"totalSupply\":\"100\"}".getBytes(UTF_8);
+
+            assertThat(codecs.getSecurityCodec().decode(state)).isEqualTo(new Security("A2010", "AAPL", "Apple Inc.", 100));
+        }
+
+        @Test
+        public void scalesJsonOrderPrices() {
+            byte[] state = ("{\"orderId\":\"1\",\"symbol\":\"AAPL\",\"quantity\":\"5\",\"price\":\"1000\",\"method\":\"0\","
+                    + "\"timestamp\":\"1590400763\",\"traderHin\":\"A2010\"}").getBytes(UTF_8);
+
+            Order order = codecs.getOrderCodec().decode(state);
+
+            assertThat(order.getPrice()).isEqualTo(100000);
+            assertThat(order.getRemaining()).isEqualTo(5);
+        }
+
+        @Test
+        public void scalesDecimalCashDeltas() {
+            assertThat(codecs.getCashCodec().decode("3".getBytes(UTF_8))).isEqualTo(30000L);
+        }
+
+        @Test
+        public void rejectsOtherTypesAndVersions() {
+            byte[] amount = codecs.getAmountCodec().encode(-7L);
+            byte[] trader = codecs.getTraderCodec().encode(new Trader("A2010", 10000));
+            trader[2] = 1;
+
+            assertThatThrownBy(() -> codecs.getCashCodec().decode(amount)).hasMessageContaining("cannot be read as C");
+            assertThatThrownBy(() -> codecs.getTraderCodec().decode(trader)).hasMessageContaining("Version 1 of type T is unknown");
+        }
+
+        @Test
+        public void readsDecimalAmounts() {
+            assertThat(codecs.getAmountCodec().decode("42".getBytes(UTF_8))).isEqualTo(42L);
+        }
+
+        @Test
+        public void readsMissingValuesAsNull() {
+            assertThat(codecs.getTraderCodec().decode(null)).isNull();
+            assertThat(codecs.getAmountCodec().decode(new byte[0])).isNull();
+        }
+    }
+}
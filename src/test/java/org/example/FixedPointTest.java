@@ -0,0 +1,63 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public final class FixedPointTest {
+
+    @Test
+    public void parsesExactly() {
+        assertThat(FixedPoint.parse("12.34", 2)).isEqualTo(1234);
+        assertThat(FixedPoint.parse("12.3", 2)).isEqualTo(1230);
+        assertThat(FixedPoint.parse("12", 2)).isEqualTo(1200);
+        assertThat(FixedPoint.parse("-0.5", 4)).isEqualTo(-5000);
+    }
+
+    @Test
+    public void rejectsExtraDecimals() {
+        assertThatThrownBy(() -> FixedPoint.parse("12.345", 2)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        assertThatThrownBy(() -> FixedPoint.parse("1.2.3", 2)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> FixedPoint.parse("abc", 2)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> FixedPoint.parse("-", 2)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> FixedPoint.parseQuantity("0")).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    public void formatsWithScale() {
+        assertThat(FixedPoint.format(1234, 2)).isEqualTo("12.34");
+        assertThat(FixedPoint.format(-5, 4)).isEqualTo("-0.0005");
+        assertThat(FixedPoint.format(42, 0)).isEqualTo("42");
+    }
+
+    @Test
+    public void computesNotionalAtCashScale() {
+        assertThat(FixedPoint.notional(3, 1250, 2)).isEqualTo(375000);
+    }
+
+    @Test
+    public void failsOnOverflow() {
+        assertThatThrownBy(() -> FixedPoint.parse("99999999999999999999", 0)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> FixedPoint.notional(Long.MAX_VALUE / 2, 3, 0)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> FixedPoint.add(Long.MAX_VALUE, 1)).isInstanceOf(RuntimeException.class);
+    }
+}
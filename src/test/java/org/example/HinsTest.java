@@ -0,0 +1,40 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public final class HinsTest {
+
+    @Test
+    public void isAStableDigest() {
+        assertThat(Hins.of("Org1MSP", "x509::CN=alice")).isEqualTo(Hins.of("Org1MSP", "x509::CN=alice"));
+        assertThat(Hins.of("Org1MSP", "x509::CN=alice")).matches("[0-9a-f]{64}");
+    }
+
+    @Test
+    public void separatesMspsAndSubjects() {
+        assertThat(Hins.of("Org1MSP", "x509::CN=alice")).isNotEqualTo(Hins.of("Org2MSP", "x509::CN=alice"));
+        assertThat(Hins.of("Org1MSP", "x509::CN=alice")).isNotEqualTo(Hins.of("Org1MSP", "x509::CN=bob"));
+        assertThat(Hins.of("Org1", "MSPx")).isNotEqualTo(Hins.of("Org1MSP", "x"));
+    }
+
+    @Test
+    public void keepsTheLegacyForm() {
+        assertThat(Hins.legacy("alice")).isEqualTo(Integer.toString("alice".hashCode()));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public final class JsonScannerTest {
+
+    private static JsonScanner scan(String json) {
+        return new JsonScanner(json.getBytes(UTF_8));
+    }
+
+    @Test
+    public void readsMembersAndSkipsNestedValues() {
+        JsonScanner scanner = scan("{ \"a\" : {\"x\":[1,{\"y\":\"}\"}]}, \"b\":\"caf\\u00e9 \\\"x\\\"\", \"c\":-12 , \"d\":null}");
+
+        assertThat(scanner.beginObject()).isTrue();
+        assertThat(scanner.nextName()).isEqualTo("a");
+        scanner.skipValue();
+        assertThat(scanner.nextName()).isEqualTo("b");
+        assertThat(scanner.nextString()).isEqualTo("caf\u00e9 \"x\"");
+        assertThat(scanner.nextName()).isEqualTo("c");
+        assertThat(scanner.nextLong()).isEqualTo(-12L);
+        assertThat(scanner.nextName()).isEqualTo("d");
+        assertThat(scanner.beginObject()).isFalse();
+        assertThat(scanner.nextName()).isNull();
+    }
+
+    @Test
+    public void readsEmptyObjects() {
+        JsonScanner scanner = scan("{}");
+
+        assertThat(scanner.beginObject()).isTrue();
+        assertThat(scanner.nextName()).isNull();
+    }
+
+    @Test
+    public void rejectsTruncatedInput() {
+        JsonScanner scanner = scan("{\"a\":\"unterminated");
+        scanner.beginObject();
+        scanner.nextName();
+
+        assertThatThrownBy(scanner::skipValue).hasMessageContaining("Malformed JSON");
+    }
+}
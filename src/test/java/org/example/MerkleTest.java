@@ -0,0 +1,65 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public final class MerkleTest {
+
+    private static List<byte[]> leaves(int count) {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Fill fill = new Fill("buy-" + i, "sell-" + i, "ACME", 5000 + i, 2, 1 + i);
+            leaves.add(Merkle.leaf(fill, "buy-commitment", "sell-commitment"));
+        }
+        return leaves;
+    }
+
+    @Test
+    public void provesEveryLeafOfTreesOfAnySize() {
+        for (int count = 1; count <= 9; count++) {
+            List<byte[]> leaves = leaves(count);
+            byte[] root = Merkle.root(leaves);
+            for (int index = 0; index < count; index++) {
+                List<byte[]> proof = Merkle.proof(leaves, index);
+                assertThat(Merkle.verify(leaves.get(index), index, count, proof, root)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void rejectsAnotherLeafOrPosition() {
+        List<byte[]> leaves = leaves(5);
+        byte[] root = Merkle.root(leaves);
+        List<byte[]> proof = Merkle.proof(leaves, 2);
+
+        assertThat(Merkle.verify(leaves.get(3), 2, 5, proof, root)).isFalse();
+        assertThat(Merkle.verify(leaves.get(2), 3, 5, proof, root)).isFalse();
+        assertThat(Merkle.verify(leaves.get(2), 2, 9, proof, root)).isFalse();
+    }
+
+    @Test
+    public void commitsToTheOrders() {
+        Fill fill = new Fill("buy-1", "sell-1", "ACME", 5000, 2, 1);
+
+        assertThat(Merkle.leaf(fill, "a", "b")).isNotEqualTo(Merkle.leaf(fill, "b", "a"));
+        assertThat(Merkle.root(leaves(1))).isEqualTo(leaves(1).get(0));
+    }
+}
@@ -15,6 +15,7 @@
 package org.example;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -26,15 +27,15 @@ public final class OrderTest {
 
         @Test
         public void isReflexive() {
-            Order order = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
 
             assertThat(order).isEqualTo(order);
         }
 
         @Test
         public void isSymmetric() {
-            Order orderA = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
-            Order orderB = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+            Order orderA = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            Order orderB = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
 
             assertThat(orderA).isEqualTo(orderB);
             assertThat(orderB).isEqualTo(orderA);
@@ -42,9 +43,9 @@ public final class OrderTest {
 
         @Test
         public void isTransitive() {
-            Order orderA = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
-            Order orderB = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
-            Order orderC = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+            Order orderA = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            Order orderB = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            Order orderC = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
 
             assertThat(orderA).isEqualTo(orderB);
             assertThat(orderB).isEqualTo(orderC);
@@ -53,15 +54,25 @@ public final class OrderTest {
 
         @Test
         public void handlesInequality() {
-            Order orderA = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
-            Order orderB = new Order("SNAP", "10", "40", "0", "1590400763", "true", "false", "B4020");
+            Order orderA = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            Order orderB = new Order("2", "SNAP", 10, 40, "0", 1590400763L, "true", "false", "B4020");
 
             assertThat(orderA).isNotEqualTo(orderB);
         }
 
+        @Test
+        public void distinguishesRemainders() {
+            Order orderA = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            Order orderB = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010", 3);
+            Order orderC = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010", 5, Order.OPEN, 1590400800L);
+
+            assertThat(orderA).isNotEqualTo(orderB);
+            assertThat(orderA).isNotEqualTo(orderC);
+        }
+
         @Test
         public void handlesOtherObjects() {
-            Order orderA = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+            Order orderA = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
             String orderB = "not an order";
 
             assertThat(orderA).isNotEqualTo(orderB);
@@ -69,7 +80,7 @@ public final class OrderTest {
 
         @Test
         public void handlesNull() {
-            Order order = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
 
             assertThat(order).isNotEqualTo(null);
         }
@@ -77,8 +88,55 @@ public final class OrderTest {
 
     @Test
     public void toStringIdentifiesOrder() {
-        Order order = new Order("AAPL", "5", "1000", "0", "1590400763", "true", "false", "A2010");
+        Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
 
-        assertThat(order.toString()).isEqualTo("Order@" + order.getHash() + " [orderHash=" + order.getHash() + "]");
+        assertThat(order.toString()).isEqualTo("Order@" + Integer.toHexString(order.hashCode())
+                + " [orderId =1, orderHash=" + order.getHash() + "]");
+    }
+
+    @Nested
+    class Fills {
+
+        @Test
+        public void partialFillKeepsOrderOpen() {
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            String openHash = order.getHash();
+            order.fill(2);
+
+            assertThat(order.getHash()).isNotEqualTo(openHash);
+            assertThat(order.getRemaining()).isEqualTo(3);
+            assertThat(order.isOpen()).isTrue();
+            assertThat(order.getStatus()).isEqualTo(Order.PARTIALLY_FILLED);
+        }
+
+        @Test
+        public void completeFillProcessesOrder() {
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            String openHash = order.getHash();
+            order.fill(5);
+
+            assertThat(order.getRemaining()).isEqualTo(0);
+            assertThat(order.isOpen()).isFalse();
+            assertThat(order.getHash()).isNotEqualTo(openHash);
+            assertThat(order.getHash()).matches("[0-9a-f]{64}");
+        }
+
+        @Test
+        public void closingKeepsTheRemainder() {
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+            order.close(Order.CANCELLED);
+
+            assertThat(order.isOpen()).isFalse();
+            assertThat(order.getRemaining()).isEqualTo(5);
+            assertThat(order.getStatus()).isEqualTo(Order.CANCELLED);
+            assertThatThrownBy(() -> order.close(Order.FILLED)).isInstanceOf(RuntimeException.class);
+        }
+
+        @Test
+        public void rejectsOverfill() {
+            Order order = new Order("1", "AAPL", 5, 1000, "0", 1590400763L, "true", "false", "A2010");
+
+            assertThatThrownBy(() -> order.fill(6)).isInstanceOf(RuntimeException.class);
+        }
     }
 }
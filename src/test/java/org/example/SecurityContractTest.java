@@ -0,0 +1,1293 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.example.readmodel.ContractEvent;
+import org.example.readmodel.ReadModel;
+import org.example.sim.SimulatedContext;
+import org.example.sim.SimulatedLedger;
+import org.example.sim.SimulatedTransaction;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public final class SecurityContractTest {
+
+    private final SecurityContract contract = new SecurityContract();
+    private SimulatedLedger ledger;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = new SimulatedLedger();
+    }
+
+    private <T> SimulatedTransaction<T> endorse(String caller, Function<ExchangeContext, T> call) {
+        return ledger.endorse("test", SimulatedContext.invoke(contract, caller, call));
+    }
+
+    private <T> T submit(String caller, Function<ExchangeContext, T> call) {
+        return ledger.submit("test", SimulatedContext.invoke(contract, caller, call)).getResult();
+    }
+
+    private String hinOf(String caller) {
+        return endorse(caller, ctx -> contract.getMyHin(ctx)).getResult();
+    }
+
+    private void listAcme() {
+        submit("alice", ctx -> contract.createTrader(ctx));
+        submit("bob", ctx -> contract.createTrader(ctx));
+        submit("carol", ctx -> contract.createTrader(ctx));
+        submit("alice", ctx -> {
+            contract.createSecurity(ctx, "ACME", "Acme Corp.", "1000");
+            return null;
+        });
+    }
+
+    private SimulatedTransaction<Void> order(String caller, String orderId, String method, String quantity, String price) {
+        return endorse(caller, ctx -> {
+            contract.createOrder(ctx, orderId, method, "ACME", quantity, price, "1");
+            return null;
+        });
+    }
+
+    @Nested
+    class Traders {
+
+        @Test
+        public void startWithTheInitialBalance() {
+            submit("alice", ctx -> contract.createTrader(ctx));
+
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10000.0000");
+        }
+
+        @Test
+        public void cannotRegisterTwice() {
+            submit("alice", ctx -> contract.createTrader(ctx));
+
+            assertThatThrownBy(() -> submit("alice", ctx -> contract.createTrader(ctx)))
+                    .hasMessageContaining("already exists");
+        }
+    }
+
+    @Nested
+    class BalanceModes {
+
+        private void deltaMode(String caller, String enabled) {
+            submit(caller, ctx -> {
+                contract.setBalanceMode(ctx, enabled);
+                return null;
+            });
+        }
+
+        @Test
+        public void deltaModeBuyersCannotSpendTheirCashTwice() {
+            listAcme();
+            deltaMode("bob", "true");
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "300", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "100", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-2", Order.BUY, "100", "50")));
+
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("0.0000");
+            assertThat(order("bob", "buy-3", Order.BUY, "1", "50").getFailure()).hasMessageContaining("cannot cover");
+            assertThat(endorse("bob", ctx -> contract.getMyAccount(ctx).getBalance()).getResult()).isEqualTo(100000000L);
+        }
+
+        @Test
+        public void debitsOfOneDeltaModeTraderInOneBlockConflict() {
+            listAcme();
+            deltaMode("bob", "true");
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "100", "50")));
+            SimulatedTransaction<Void> spend = order("bob", "buy-1", Order.BUY, "100", "50");
+            SimulatedTransaction<Void> bid = order("bob", "buy-2", Order.BUY, "1", "40");
+            ledger.commit(Arrays.asList(spend, bid));
+
+            assertThat(spend.isValid()).isTrue();
+            assertThat(bid.getStatus()).isEqualTo(SimulatedTransaction.Status.PHANTOM_READ_CONFLICT);
+        }
+
+        @Test
+        public void compactionFoldsTheDeltasIntoTheRecord() {
+            listAcme();
+            deltaMode("bob", "true");
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-2", Order.BUY, "2", "50")));
+            String bob = hinOf("bob");
+
+            int folded = submit(SimulatedContext.ADMIN, ctx -> contract.compactBalance(ctx, bob));
+            assertThat(folded).isEqualTo(2);
+            assertThat(endorse("bob", ctx -> contract.getMyAccount(ctx).getBalance()).getResult()).isEqualTo(97000000L);
+            int again = submit(SimulatedContext.ADMIN, ctx -> contract.compactBalance(ctx, bob));
+            assertThat(again).isZero();
+            deltaMode("bob", "false");
+            assertThat(endorse("bob", ctx -> contract.getMyAccount(ctx).isDeltaMode()).getResult()).isFalse();
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9700.0000");
+        }
+
+        @Test
+        public void leavingDeltaModeFoldsUpToTheCompactionLimit() {
+            listAcme();
+            deltaMode("bob", "true");
+            String bob = hinOf("bob");
+            ledger.submit("seed", stub -> {
+                StateCache cache = new StateCache(stub, Codecs.binary());
+                for (int i = 0; i < BalanceDeltas.MAX_COMPACT; i++) {
+                    cache.putState(Keys.balanceDelta(cache, bob, "seed-" + i), cache.getCodecs().getCashCodec().encode(10000L));
+                }
+                cache.flush();
+                return null;
+            });
+
+            deltaMode("bob", "false");
+            assertThat(endorse("bob", ctx -> contract.getMyAccount(ctx).getBalance()).getResult()).isEqualTo(110000000L);
+
+            deltaMode("bob", "true");
+            ledger.submit("seed", stub -> {
+                StateCache cache = new StateCache(stub, Codecs.binary());
+                for (int i = 0; i <= BalanceDeltas.MAX_COMPACT; i++) {
+                    cache.putState(Keys.balanceDelta(cache, bob, "more-" + i), cache.getCodecs().getCashCodec().encode(10000L));
+                }
+                cache.flush();
+                return null;
+            });
+            assertThatThrownBy(() -> deltaMode("bob", "false")).hasMessageContaining("run compactBalance first");
+        }
+    }
+
+    @Nested
+    class Matching {
+
+        private final Instant start = Instant.parse("2020-05-25T10:00:00Z");
+
+        @BeforeEach
+        public void setUp() {
+            ledger.setClock(Clock.fixed(start, ZoneOffset.UTC));
+        }
+
+        private SimulatedTransaction<Void> order(String caller, String orderId, String method, String quantity, String price, String timestamp) {
+            return endorse(caller, ctx -> {
+                contract.createOrder(ctx, orderId, method, "ACME", quantity, price, timestamp);
+                return null;
+            });
+        }
+
+        private JSONArray fillsOf(SimulatedTransaction<Void> tx) {
+            return new JSONObject(new String(tx.getEventPayload(), UTF_8)).getJSONArray("fills");
+        }
+
+        @Test
+        public void fillsTheBestPriceAndThenTheOldestOrder() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-a", Order.SELL, "2", "52", "1")));
+            ledger.commit(Arrays.asList(order("alice", "sell-b", Order.SELL, "2", "50", "3")));
+            ledger.commit(Arrays.asList(order("alice", "sell-c", Order.SELL, "2", "50", "2")));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "5", "55", "4");
+            ledger.commit(Arrays.asList(buy));
+
+            JSONArray fills = fillsOf(buy);
+            assertThat(fills.length()).isEqualTo(3);
+            assertThat(fills.getJSONObject(0).getString("sellId")).isEqualTo("sell-b");
+            assertThat(fills.getJSONObject(1).getString("sellId")).isEqualTo("sell-c");
+            assertThat(fills.getJSONObject(2).getString("sellId")).isEqualTo("sell-a");
+            assertThat(fills.getJSONObject(2).getLong("quantity")).isEqualTo(1L);
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-a")).getResult().getRemaining()).isEqualTo(1L);
+        }
+
+        @Test
+        public void clientTimestampsDoNotBuyPriority() {
+            listAcme();
+            ledger.setClock(Clock.fixed(start.plusSeconds(1), ZoneOffset.UTC));
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "2", "50", "900")));
+            ledger.setClock(Clock.fixed(start.plusSeconds(2), ZoneOffset.UTC));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "2", "50", "1")));
+            ledger.setClock(Clock.fixed(start.plusSeconds(3), ZoneOffset.UTC));
+            ledger.commit(Arrays.asList(order("alice", "sell-3", Order.SELL, "2", "50", "500")));
+            ledger.setClock(Clock.fixed(start.plusSeconds(4), ZoneOffset.UTC));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "5", "50", "2");
+            ledger.commit(Arrays.asList(buy));
+
+            JSONArray fills = fillsOf(buy);
+            assertThat(fills.getJSONObject(0).getString("sellId")).isEqualTo("sell-1");
+            assertThat(fills.getJSONObject(1).getString("sellId")).isEqualTo("sell-2");
+            assertThat(fills.getJSONObject(2).getString("sellId")).isEqualTo("sell-3");
+            assertThat(order("alice", "sell-4", Order.SELL, "2", "50", "0").getFailure()).hasMessageContaining("has to be positive");
+            assertThat(order("alice", "sell-4", Order.SELL, "2", "50", "-1").getFailure()).hasMessageContaining("has to be positive");
+        }
+
+        @Test
+        public void stopsAfterTheMatchLimitAndRestsTheRemainder() {
+            listAcme();
+            for (int i = 0; i <= OrderBook.MAX_MATCHES; i++) {
+                ledger.commit(Arrays.asList(order("alice", "sell-" + i, Order.SELL, "1", "50", "1")));
+            }
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "70", "50", "1");
+            ledger.commit(Arrays.asList(buy));
+
+            assertThat(buy.isValid()).isTrue();
+            assertThat(fillsOf(buy).length()).isEqualTo(OrderBook.MAX_MATCHES);
+            Order resting = endorse("bob", ctx -> contract.getOrder(ctx, "buy-1")).getResult();
+            assertThat(resting.getRemaining()).isEqualTo(70L - OrderBook.MAX_MATCHES);
+            assertThat(resting.getStatus()).isEqualTo(Order.PARTIALLY_FILLED);
+            JSONObject bids = new JSONObject(endorse("bob", ctx -> contract.getOrders(ctx, "ACME", Order.BUY, Order.OPEN, "10", "")).getResult());
+            assertThat(bids.getInt("count")).isEqualTo(1);
+            assertThat(bids.getJSONArray("records").getJSONObject(0).getString("orderId")).isEqualTo("buy-1");
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-" + OrderBook.MAX_MATCHES)).getResult().getStatus())
+                    .isEqualTo(Order.OPEN);
+        }
+
+        @Test
+        public void incomingSellsTradeAtTheRestingBid() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "60", "1")));
+            SimulatedTransaction<Void> sell = order("alice", "sell-1", Order.SELL, "4", "50", "2");
+            ledger.commit(Arrays.asList(sell));
+
+            assertThat(fillsOf(sell).getJSONObject(0).getString("price")).isEqualTo("60.00");
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9760.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10240.0000");
+        }
+
+        @Test
+        public void partialFillsLeaveTheRemainderResting() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "2", "50", "1")));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "5", "50", "2");
+            ledger.commit(Arrays.asList(buy));
+
+            Order resting = endorse("bob", ctx -> contract.getOrder(ctx, "buy-1")).getResult();
+            assertThat(resting.getRemaining()).isEqualTo(3L);
+            assertThat(resting.getStatus()).isEqualTo(Order.PARTIALLY_FILLED);
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getStatus()).isEqualTo(Order.FILLED);
+
+            SimulatedTransaction<Void> sell = order("alice", "sell-2", Order.SELL, "4", "45", "3");
+            ledger.commit(Arrays.asList(sell));
+
+            assertThat(fillsOf(sell).getJSONObject(0).getLong("quantity")).isEqualTo(3L);
+            assertThat(fillsOf(sell).getJSONObject(0).getString("price")).isEqualTo("50.00");
+            assertThat(endorse("bob", ctx -> contract.getOrder(ctx, "buy-1")).getResult().getStatus()).isEqualTo(Order.FILLED);
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-2")).getResult().getRemaining()).isEqualTo(1L);
+        }
+
+        @Test
+        public void skipsOrdersOfTheSameTrader() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "2", "50", "1")));
+            SimulatedTransaction<Void> buy = order("alice", "buy-1", Order.BUY, "1", "50", "2");
+            ledger.commit(Arrays.asList(buy));
+
+            assertThat(fillsOf(buy).length()).isZero();
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "buy-1")).getResult().getStatus()).isEqualTo(Order.OPEN);
+        }
+    }
+
+    @Nested
+    class Orders {
+
+        @Test
+        public void crossingOrdersSettleAtTheRestingPrice() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "4", "60");
+            ledger.commit(Arrays.asList(buy));
+            String bob = hinOf("bob");
+
+            assertThat(buy.isValid()).isTrue();
+            JSONObject event = new JSONObject(new String(buy.getEventPayload(), UTF_8));
+            assertThat(buy.getEventName()).isEqualTo("CreatedOrder");
+            assertThat(event.getJSONArray("fills").length()).isEqualTo(1);
+            assertThat(endorse("bob", ctx -> contract.getBalanceOf(ctx, "ACME", bob)).getResult()).isEqualTo(4L);
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9800.0000");
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getRemaining()).isEqualTo(6L);
+        }
+
+        @Test
+        public void fillsAreProvenAgainstTheRootOfTheirTransaction() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "2", "50")));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "2", "51")));
+            ledger.commit(Arrays.asList(order("alice", "sell-3", Order.SELL, "2", "52")));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "6", "60");
+            ledger.commit(Arrays.asList(buy));
+
+            String root = new JSONObject(new String(buy.getEventPayload(), UTF_8)).getString("root");
+            for (int i = 0; i < 3; i++) {
+                int index = i;
+                String result = endorse("carol", ctx -> contract.getFillProof(ctx, buy.getTxId(), Integer.toString(index))).getResult();
+                JSONObject proof = new JSONObject(result);
+                List<byte[]> siblings = new ArrayList<>();
+                for (int j = 0; j < proof.getJSONArray("proof").length(); j++) {
+                    siblings.add(Digests.unhex(proof.getJSONArray("proof").getString(j)));
+                }
+                assertThat(proof.getString("root")).isEqualTo(root);
+                assertThat(Merkle.verify(Digests.unhex(proof.getString("leaf")), index, proof.getInt("count"),
+                        siblings, Digests.unhex(root))).isTrue();
+            }
+            assertThatThrownBy(() -> endorse("carol", ctx -> contract.getFillProof(ctx, "unknown", "0")).getResult())
+                    .hasMessageContaining("settled no fills");
+        }
+
+        @Test
+        public void onlyTheSoleHolderDelistsAnEmptyBook() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "2", "50")));
+
+            assertThatThrownBy(() -> submit("bob", ctx -> {
+                contract.deleteSecurity(ctx, "ACME");
+                return null;
+            })).hasMessageContaining("is owned by");
+            assertThatThrownBy(() -> submit("alice", ctx -> {
+                contract.deleteSecurity(ctx, "ACME");
+                return null;
+            })).hasMessageContaining("resting orders");
+
+            submit("alice", ctx -> {
+                contract.cancelOrder(ctx, "sell-1");
+                return null;
+            });
+            submit("alice", ctx -> {
+                contract.deleteSecurity(ctx, "ACME");
+                return null;
+            });
+            assertThat(endorse("bob", ctx -> contract.securityExists(ctx, "ACME")).getResult()).isFalse();
+        }
+
+        @Test
+        public void concurrentBuysOfTheSameOrderConflict() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            SimulatedTransaction<Void> first = order("bob", "buy-1", Order.BUY, "4", "50");
+            SimulatedTransaction<Void> second = order("carol", "buy-2", Order.BUY, "4", "50");
+            ledger.commit(Arrays.asList(first, second));
+
+            assertThat(first.getStatus()).isEqualTo(SimulatedTransaction.Status.VALID);
+            assertThat(second.getStatus()).isEqualTo(SimulatedTransaction.Status.MVCC_READ_CONFLICT);
+            assertThat(endorse("carol", ctx -> contract.orderExists(ctx, "buy-2")).getResult()).isFalse();
+        }
+
+        @Test
+        public void restingOrdersAreReadAsARange() {
+            listAcme();
+            SimulatedTransaction<Void> scan = order("bob", "buy-1", Order.BUY, "4", "50");
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50"), scan));
+
+            assertThat(scan.getStatus()).isEqualTo(SimulatedTransaction.Status.PHANTOM_READ_CONFLICT);
+            assertThat(scan.getRangeReads()).isNotEmpty();
+        }
+
+        @Test
+        public void bidsOfOneSymbolInOneBlockDoNotConflict() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            SimulatedTransaction<Void> first = order("bob", "buy-1", Order.BUY, "4", "40");
+            SimulatedTransaction<Void> second = order("carol", "buy-2", Order.BUY, "4", "45");
+            ledger.commit(Arrays.asList(first, second));
+
+            assertThat(first.isValid()).isTrue();
+            assertThat(second.isValid()).isTrue();
+        }
+
+        private void seedOffBook(Order... orders) {
+            ledger.submit("seed", stub -> {
+                StateCache cache = new StateCache(stub, Codecs.binary());
+                for (Order order : orders) {
+                    cache.putOrder(order);
+                    OrderIndex.add(cache, order);
+                }
+                cache.flush();
+                return null;
+            });
+        }
+
+        private SimulatedTransaction<Void> settleBatch(String caller, String fills) {
+            return endorse(caller, ctx -> {
+                contract.settleOrders(ctx, fills);
+                return null;
+            });
+        }
+
+        @Test
+        public void operatorsSettleBatchesMatchedOutsideTheBook() {
+            listAcme();
+            seedOffBook(new Order("sell-1", "ACME", 10, 5000, Order.SELL, 1, "true", "false", hinOf("alice")),
+                    new Order("buy-1", "ACME", 4, 6000, Order.BUY, 1, "true", "false", hinOf("bob")),
+                    new Order("buy-2", "ACME", 3, 5500, Order.BUY, 1, "true", "false", hinOf("carol")));
+            String fills = "[{\"buyId\":\"buy-1\",\"sellId\":\"sell-1\",\"price\":\"55\",\"quantity\":\"4\"},"
+                    + "{\"buyId\":\"buy-2\",\"sellId\":\"sell-1\",\"price\":\"50\",\"quantity\":\"3\"}]";
+
+            assertThat(settleBatch("bob", fills).getFailure()).hasMessageContaining("is not an exchange operator");
+            SimulatedTransaction<Void> batch = settleBatch(SimulatedContext.ADMIN, fills);
+            ledger.commit(Arrays.asList(batch));
+
+            assertThat(batch.isValid()).isTrue();
+            assertThat(new JSONObject(new String(batch.getEventPayload(), UTF_8)).getInt("count")).isEqualTo(2);
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9780.0000");
+            assertThat(endorse("carol", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9850.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10370.0000");
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getRemaining()).isEqualTo(3L);
+        }
+
+        @Test
+        public void oneBadFillRejectsTheWholeBatch() {
+            listAcme();
+            String alice = hinOf("alice");
+            seedOffBook(new Order("sell-1", "ACME", 10, 5000, Order.SELL, 1, "true", "false", alice),
+                    new Order("buy-1", "ACME", 4, 6000, Order.BUY, 1, "true", "false", hinOf("bob")),
+                    new Order("buy-2", "ACME", 3, 5500, Order.BUY, 1, "true", "false", alice));
+            String fills = "[{\"buyId\":\"buy-1\",\"sellId\":\"sell-1\",\"price\":\"55\",\"quantity\":\"4\"},"
+                    + "{\"buyId\":\"buy-2\",\"sellId\":\"sell-1\",\"price\":\"50\",\"quantity\":\"3\"}]";
+
+            SimulatedTransaction<Void> batch = settleBatch(SimulatedContext.ADMIN, fills);
+            ledger.commit(Arrays.asList(batch));
+
+            assertThat(batch.getFailure()).hasMessageContaining("both belong to");
+            assertThat(batch.isValid()).isFalse();
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10000.0000");
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getRemaining()).isEqualTo(10L);
+            assertThat(endorse("bob", ctx -> contract.getOrder(ctx, "buy-1")).getResult().getStatus()).isEqualTo(Order.OPEN);
+        }
+
+        @Test
+        public void eventsCarryTheirDeltas() {
+            listAcme();
+            SimulatedTransaction<Void> sell = order("alice", "sell-1", Order.SELL, "10", "50");
+            ledger.commit(Arrays.asList(sell));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "4", "60");
+            ledger.commit(Arrays.asList(buy));
+            String bob = hinOf("bob");
+
+            JSONObject crossed = new JSONObject(new String(buy.getEventPayload(), UTF_8));
+            assertThat(crossed.getInt("version")).isEqualTo(ExchangeEvent.VERSION);
+            assertThat(crossed.getString("type")).isEqualTo("CreatedOrder");
+            assertThat(crossed.has("sequences")).isFalse();
+            assertThat(crossed.getJSONArray("orders").length()).isEqualTo(2);
+            assertThat(crossed.getJSONArray("fills").getJSONObject(0).getString("price")).isEqualTo("50.00");
+            assertThat(crossed.getJSONArray("positions").getJSONObject(1).getString("hin")).isEqualTo(bob);
+            assertThat(crossed.getJSONArray("positions").getJSONObject(1).getLong("quantity")).isEqualTo(4L);
+            assertThat(crossed.getJSONArray("cash").getJSONObject(0).getString("delta")).isEqualTo("-200.0000");
+        }
+    }
+
+    @Nested
+    class Onboarding {
+
+        private String identities(String... callers) {
+            JSONArray batch = new JSONArray();
+            for (String caller : callers) {
+                JSONObject identity = new JSONObject();
+                identity.put("mspId", SimulatedLedger.MSP_ID);
+                identity.put("id", caller);
+                batch.put(identity);
+            }
+            return batch.toString();
+        }
+
+        @Test
+        public void operatorsOpenAccountsInOneTransaction() {
+            SimulatedTransaction<String> tx = ledger.submit("createTraders",
+                    SimulatedContext.invoke(contract, SimulatedContext.ADMIN, ctx -> contract.createTraders(ctx, identities("alice", "bob", "carol"))));
+
+            assertThat(tx.isValid()).isTrue();
+            assertThat(tx.getEventName()).isEqualTo("CreatedTraders");
+            assertThat(new JSONObject(tx.getResult()).getInt("count")).isEqualTo(3);
+            assertThat(new JSONObject(tx.getResult()).getJSONArray("hins").getString(1)).isEqualTo(hinOf("bob"));
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10000.0000");
+        }
+
+        @Test
+        public void rejectsBatchesFromOthersOrWithExistingAccounts() {
+            submit("bob", ctx -> contract.createTrader(ctx));
+
+            assertThatThrownBy(() -> submit("alice", ctx -> contract.createTraders(ctx, identities("carol"))))
+                    .hasMessageContaining("is not an exchange operator");
+            assertThatThrownBy(() -> submit(SimulatedContext.ADMIN, ctx -> contract.createTraders(ctx, identities("alice", "bob"))))
+                    .hasMessageContaining("already exists");
+            assertThatThrownBy(() -> submit(SimulatedContext.ADMIN, ctx -> contract.createTraders(ctx, identities("carol", "carol"))))
+                    .hasMessageContaining("twice");
+            assertThat(endorse("alice", ctx -> contract.traderExists(ctx, hinOf("alice"))).getResult()).isFalse();
+        }
+
+        @Test
+        public void operatorsListABasketWithAllocations() {
+            submit(SimulatedContext.ADMIN, ctx -> contract.createTraders(ctx, identities("alice", "bob")));
+            String alice = hinOf("alice");
+            String bob = hinOf("bob");
+            JSONArray basket = new JSONArray();
+            for (String symbol : Arrays.asList("ACME", "BETA")) {
+                JSONObject listing = new JSONObject();
+                listing.put("symbol", symbol);
+                listing.put("name", symbol + " Corp.");
+                listing.put("totalSupply", "1000");
+                listing.put("owner", alice);
+                JSONObject allocations = new JSONObject();
+                allocations.put(bob, "250");
+                listing.put("allocations", allocations);
+                basket.put(listing);
+            }
+
+            SimulatedTransaction<String> tx = ledger.submit("createSecurities",
+                    SimulatedContext.invoke(contract, SimulatedContext.ADMIN, ctx -> contract.createSecurities(ctx, basket.toString())));
+
+            assertThat(tx.getEventName()).isEqualTo("CreatedSecurities");
+            assertThat(new JSONObject(tx.getResult()).getInt("count")).isEqualTo(2);
+            assertThat(endorse("bob", ctx -> contract.getBalanceOf(ctx, "BETA", alice)).getResult()).isEqualTo(750L);
+            assertThat(endorse("bob", ctx -> contract.getBalanceOf(ctx, "BETA", bob)).getResult()).isEqualTo(250L);
+            assertThatThrownBy(() -> submit(SimulatedContext.ADMIN, ctx -> contract.createSecurities(ctx, basket.toString())))
+                    .hasMessageContaining("already exists");
+        }
+
+        private SimulatedTransaction<String> listOn(SimulatedLedger peer, String basket) {
+            peer.setClock(Clock.fixed(Instant.parse("2024-01-02T09:30:00Z"), ZoneOffset.UTC));
+            peer.submit("createTraders", SimulatedContext.invoke(contract, SimulatedContext.ADMIN,
+                    ctx -> contract.createTraders(ctx, identities("alice", "bob", "carol"))));
+            return peer.submit("createSecurities", SimulatedContext.invoke(contract, SimulatedContext.ADMIN,
+                    ctx -> contract.createSecurities(ctx, basket)));
+        }
+
+        @Test
+        public void peersEndorseTheSameBytesWhateverTheOrderOfTheRequest() {
+            String alice = hinOf("alice");
+            String bob = hinOf("bob");
+            String carol = hinOf("carol");
+            SimulatedTransaction<String> one = listOn(new SimulatedLedger(), "[{\"symbol\":\"ACME\",\"name\":\"Acme Corp.\",\"totalSupply\":\"1000\","
+                    + "\"owner\":\"" + alice + "\",\"allocations\":{\"" + bob + "\":\"250\",\"" + carol + "\":\"100\"}}]");
+            SimulatedTransaction<String> other = listOn(new SimulatedLedger(), "[{\"allocations\":{\"" + carol + "\":100,\"" + bob + "\":250},"
+                    + "\"owner\":\"" + alice + "\",\"totalSupply\":1000,\"name\":\"Acme Corp.\",\"symbol\":\"ACME\"}]");
+
+            String payload = new String(one.getEventPayload(), UTF_8);
+            assertThat(one.isValid()).isTrue();
+            assertThat(other.getResult()).isEqualTo(one.getResult());
+            assertThat(new String(other.getEventPayload(), UTF_8)).isEqualTo(payload);
+            assertThat(CanonicalJson.normalize(payload)).isEqualTo(payload);
+            assertThat(CanonicalJson.normalize(one.getResult())).isEqualTo(one.getResult());
+        }
+    }
+
+    @Nested
+    class ReadModels {
+
+        @Test
+        public void followTheLedgerFromEventsAlone() {
+            ReadModel model = new ReadModel();
+            ledger.addEventListener(tx -> model.accept(new ContractEvent(tx.getEventName(), tx.getTxId(), tx.getBlockNumber(), tx.getTxIndex(),
+                    tx.getEventPayload())));
+            ledger.addBlockListener(block -> model.accept(ContractEvent.endOfBlock(block)));
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "10", "52")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "14", "55")));
+            ledger.commit(Arrays.asList(order("carol", "buy-2", Order.BUY, "3", "40")));
+            submit("carol", ctx -> {
+                contract.cancelOrder(ctx, "buy-2");
+                return null;
+            });
+            String alice = hinOf("alice");
+            String bob = hinOf("bob");
+
+            assertThat(model.getGaps()).isEmpty();
+            assertThat(model.getPosition("ACME", bob)).isEqualTo(endorse("bob", ctx -> contract.getBalanceOf(ctx, "ACME", bob)).getResult());
+            assertThat(model.getPosition("ACME", alice)).isEqualTo(986L);
+            assertThat(model.getCash(bob).toPlainString()).isEqualTo(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult());
+            assertThat(model.getCash(alice).toPlainString()).isEqualTo(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult());
+            assertThat(model.getBook("ACME", Order.SELL)).hasSize(1);
+            assertThat(model.getBook("ACME", Order.SELL).get(0).getRemaining()).isEqualTo(6L);
+            assertThat(model.getBook("ACME", Order.BUY)).isEmpty();
+            assertThat(model.getOrder("buy-2").getStatus()).isEqualTo(Order.CANCELLED);
+        }
+    }
+
+    @Nested
+    class Queries {
+
+        @Test
+        public void queriesAreEvaluateOnly() {
+            assertThat(SecurityContract.evaluateOnly(SecurityContract.class))
+                    .contains("getMyHin", "getMyBalance", "getSecurity", "getOrder", "traderExists", "orderExists", "getOrders")
+                    .doesNotContain("createOrder", "createTrader", "deleteSecurity");
+        }
+
+        @Test
+        public void evaluateOnlyFunctionsCannotWrite() {
+            WritingContract writing = new WritingContract();
+            SimulatedTransaction<Void> tx = ledger.endorse("SecurityContract:touch", SimulatedContext.invoke(writing, "alice", ctx -> {
+                writing.touch(ctx);
+                return null;
+            }));
+
+            assertThatThrownBy(tx::getResult).hasMessageContaining("evaluate-only");
+            assertThat(tx.getWriteSet()).isEmpty();
+        }
+
+        @Test
+        public void listOpenOrdersInPriceOrder() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "52")));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "10", "51")));
+
+            JSONObject page = new JSONObject(endorse("bob", ctx -> contract.getOrders(ctx, "ACME", Order.SELL, Order.OPEN, "10", "")).getResult());
+
+            assertThat(page.getInt("count")).isEqualTo(2);
+            assertThat(page.getJSONArray("records").getJSONObject(0).getString("orderId")).isEqualTo("sell-2");
+            assertThat(page.getString("bookmark")).isEmpty();
+        }
+
+        @Test
+        public void listClosedOrdersAndOwnOrders() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "4", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "50")));
+
+            JSONObject closed = new JSONObject(endorse("bob", ctx -> contract.getOrders(ctx, "ACME", Order.BUY, Order.FILLED, "10", "")).getResult());
+            JSONObject mine = new JSONObject(endorse("alice", ctx -> contract.getMyOrders(ctx, "10", "")).getResult());
+
+            assertThat(closed.getJSONArray("records").getJSONObject(0).getString("orderId")).isEqualTo("buy-1");
+            assertThat(mine.getInt("count")).isEqualTo(1);
+            assertThat(mine.getJSONArray("records").getJSONObject(0).getString("status")).isEqualTo(Order.FILLED);
+        }
+
+        @Test
+        public void portfolioListsCashAndPositions() {
+            listAcme();
+            submit("alice", ctx -> {
+                contract.createSecurity(ctx, "BETA", "Beta Ltd.", "500");
+                return null;
+            });
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "4", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "50")));
+
+            JSONObject alice = new JSONObject(endorse("alice", ctx -> contract.getMyPortfolio(ctx)).getResult());
+            JSONObject bob = new JSONObject(endorse("bob", ctx -> contract.getMyPortfolio(ctx)).getResult());
+
+            assertThat(alice.getJSONArray("positions").length()).isEqualTo(2);
+            assertThat(alice.getJSONArray("positions").getJSONObject(0).getLong("quantity")).isEqualTo(996L);
+            assertThat(alice.getString("cash")).isEqualTo("10200.0000");
+            assertThat(bob.getJSONArray("positions").length()).isEqualTo(1);
+            assertThat(bob.getJSONArray("positions").getJSONObject(0).getString("symbol")).isEqualTo("ACME");
+        }
+
+        @Test
+        public void pageThroughHolders() {
+            listAcme();
+            String bob = hinOf("bob");
+            String alice = hinOf("alice");
+            submit("alice", ctx -> contract.changeBalances(ctx, "ACME", bob, alice, "10"));
+
+            JSONObject first = new JSONObject(endorse("bob", ctx -> contract.getHolders(ctx, "ACME", "1", "")).getResult());
+            JSONObject second = new JSONObject(endorse("bob", ctx -> contract.getHolders(ctx, "ACME", "1", first.getString("bookmark"))).getResult());
+
+            assertThat(first.getInt("count")).isEqualTo(1);
+            assertThat(first.getString("bookmark")).isNotEmpty();
+            assertThat(second.getInt("count")).isEqualTo(1);
+            assertThat(second.getString("bookmark")).isEmpty();
+            assertThat(first.getJSONArray("records").getJSONObject(0).getString("hin"))
+                    .isNotEqualTo(second.getJSONArray("records").getJSONObject(0).getString("hin"));
+        }
+    }
+
+    @Nested
+    class PrimaryDistribution {
+
+        private void list(String symbol, String quantity, String shards) {
+            submit("alice", ctx -> {
+                contract.listSecurity(ctx, symbol, symbol + " Inc.", quantity, "2.50", shards);
+                return null;
+            });
+        }
+
+        private SimulatedTransaction<Void> buy(String caller, String symbol, String quantity) {
+            return endorse(caller, ctx -> {
+                contract.buyFromIssuer(ctx, symbol, quantity);
+                return null;
+            });
+        }
+
+        @Test
+        public void buyersDrawFromTheInventoryAtTheIssuePrice() {
+            submit("alice", ctx -> contract.createTrader(ctx));
+            submit("bob", ctx -> contract.createTrader(ctx));
+            list("NEWCO", "1000", "8");
+            SimulatedTransaction<Void> buy = buy("bob", "NEWCO", "10");
+            ledger.commit(Arrays.asList(buy));
+            String alice = hinOf("alice");
+            String bob = hinOf("bob");
+
+            JSONObject inventory = new JSONObject(endorse("bob", ctx -> contract.getIssuerInventory(ctx, "NEWCO")).getResult());
+            assertThat(inventory.getLong("remaining")).isEqualTo(990L);
+            assertThat(inventory.getInt("shards")).isEqualTo(8);
+            assertThat(inventory.getString("price")).isEqualTo("2.50");
+            assertThat(endorse("bob", ctx -> contract.getBalanceOf(ctx, "NEWCO", bob)).getResult()).isEqualTo(10L);
+            assertThat(endorse("bob", ctx -> contract.getBalanceOf(ctx, "NEWCO", alice)).getResult()).isEqualTo(0L);
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9975.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10025.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyAccount(ctx).isDeltaMode()).getResult()).isFalse();
+            JSONObject event = new JSONObject(new String(buy.getEventPayload(), UTF_8));
+            assertThat(event.getString("type")).isEqualTo("BoughtFromIssuer");
+            assertThat(event.getJSONArray("shards").length()).isEqualTo(1);
+        }
+
+        @Test
+        public void salesInOneBlockScaleWithTheShards() {
+            submit("alice", ctx -> contract.createTrader(ctx));
+            List<String> buyers = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                buyers.add("buyer-" + i);
+                submit("buyer-" + i, ctx -> contract.createTrader(ctx));
+            }
+            submit("alice", ctx -> {
+                contract.setBalanceMode(ctx, "true");
+                return null;
+            });
+            list("ONE", "1000", "1");
+            list("MANY", "1000", "32");
+
+            long[] valid = new long[2];
+            List<String> symbols = Arrays.asList("ONE", "MANY");
+            for (int s = 0; s < symbols.size(); s++) {
+                List<SimulatedTransaction<Void>> block = new ArrayList<>();
+                for (String buyer : buyers) {
+                    block.add(buy(buyer, symbols.get(s), "5"));
+                }
+                ledger.commit(block);
+                valid[s] = block.stream().filter(SimulatedTransaction::isValid).count();
+            }
+
+            assertThat(valid[0]).isEqualTo(1L);
+            assertThat(valid[1]).isGreaterThan(8L);
+            long sold = 5 * valid[1];
+            assertThat(new JSONObject(endorse("alice", ctx -> contract.getIssuerInventory(ctx, "MANY")).getResult()).getLong("remaining"))
+                    .isEqualTo(1000 - sold);
+        }
+
+        @Test
+        public void largeBuysSpillOverIntoTheNextShards() {
+            submit("alice", ctx -> contract.createTrader(ctx));
+            submit("bob", ctx -> contract.createTrader(ctx));
+            list("NEWCO", "10", "4");
+
+            assertThatThrownBy(() -> submit("bob", ctx -> {
+                contract.buyFromIssuer(ctx, "NEWCO", "11");
+                return null;
+            })).hasMessageContaining("has only 10 left");
+            SimulatedTransaction<Void> all = buy("bob", "NEWCO", "10");
+            ledger.commit(Arrays.asList(all));
+
+            assertThat(all.isValid()).isTrue();
+            assertThat(new JSONObject(new String(all.getEventPayload(), UTF_8)).getJSONArray("shards").length()).isEqualTo(4);
+            assertThat(new JSONObject(endorse("bob", ctx -> contract.getIssuerInventory(ctx, "NEWCO")).getResult()).getLong("remaining"))
+                    .isEqualTo(0L);
+            assertThatThrownBy(() -> submit("bob", ctx -> {
+                contract.buyFromIssuer(ctx, "ACME", "1");
+                return null;
+            })).hasMessageContaining("does not exist");
+            assertThatThrownBy(() -> submit("alice", ctx -> {
+                contract.listSecurity(ctx, "BAD", "Bad", "10", "1", "0");
+                return null;
+            })).hasMessageContaining("between 1 and");
+        }
+    }
+
+    @Nested
+    class PrivateOrderDetail {
+
+        private SimulatedTransaction<Void> privateOrder(String caller, String orderId, String method, String quantity, String price) {
+            return privateOrder(caller, orderId, method, quantity, price, String.format("%032x", orderId.hashCode()));
+        }
+
+        private SimulatedTransaction<Void> privateOrder(String caller, String orderId, String method, String quantity, String price,
+                String salt) {
+            JSONObject terms = new JSONObject();
+            terms.put("method", method);
+            terms.put("symbol", "ACME");
+            terms.put("quantity", quantity);
+            terms.put("price", price);
+            terms.put("timestamp", "1");
+            terms.put("salt", salt);
+            Map<String, byte[]> transientData = new HashMap<>();
+            transientData.put("order", terms.toString().getBytes(UTF_8));
+            return ledger.endorse("createPrivateOrder", transientData, SimulatedContext.invoke(contract, caller, ctx -> {
+                contract.createPrivateOrder(ctx, orderId);
+                return null;
+            }));
+        }
+
+        private String detailOf(String orderId) {
+            return endorse(SimulatedContext.ADMIN, ctx -> contract.getPrivateOrder(ctx, orderId)).getResult();
+        }
+
+        private SimulatedTransaction<Void> settle(String orders, String fills) {
+            return settle(SimulatedContext.ADMIN, orders, fills);
+        }
+
+        private SimulatedTransaction<Void> settle(String caller, String orders, String fills) {
+            Map<String, byte[]> transientData = new HashMap<>();
+            transientData.put("orders", orders.getBytes(UTF_8));
+            transientData.put("fills", fills.getBytes(UTF_8));
+            return ledger.endorse("settlePrivateOrders", transientData, SimulatedContext.invoke(contract, caller, ctx -> {
+                contract.settlePrivateOrders(ctx);
+                return null;
+            }));
+        }
+
+        private SimulatedTransaction<Void> cancel(String caller, String orderId, String detail) {
+            Map<String, byte[]> transientData = new HashMap<>();
+            transientData.put("order", detail.getBytes(UTF_8));
+            return ledger.endorse("cancelPrivateOrder", transientData, SimulatedContext.invoke(contract, caller, ctx -> {
+                contract.cancelPrivateOrder(ctx, orderId);
+                return null;
+            }));
+        }
+
+        @Test
+        public void onlyTheCommitmentReachesPublicState() {
+            listAcme();
+            SimulatedTransaction<Void> sell = privateOrder("alice", "sell-1", Order.SELL, "10", "50");
+            ledger.commit(Arrays.asList(sell));
+
+            assertThat(sell.isValid()).isTrue();
+            assertThat(sell.getWriteSet()).hasSize(1);
+            assertThat(sell.getWriteSet().keySet().iterator().next()).contains(Keys.COMMITMENT).contains("sell-1");
+            assertThat(sell.getPrivateWriteSet().get(PrivateOrders.COLLECTION)).hasSize(1);
+            JSONObject event = new JSONObject(new String(sell.getEventPayload(), UTF_8));
+            assertThat(event.getString("type")).isEqualTo("CreatedPrivateOrder");
+            assertThat(event.getJSONArray("orders").length()).isEqualTo(0);
+            assertThat(event.getJSONArray("commitments").getJSONObject(0).getString("status")).isEqualTo(Order.OPEN);
+            assertThat(new String(sell.getEventPayload(), UTF_8)).doesNotContain("ACME");
+            JSONObject detail = new JSONObject(endorse("alice", ctx -> contract.getPrivateOrder(ctx, "sell-1")).getResult());
+            assertThat(detail.getString("price")).isEqualTo("50.00");
+            assertThat(endorse("bob", ctx -> contract.orderExists(ctx, "sell-1")).getResult()).isTrue();
+            assertThatThrownBy(() -> submit("bob", ctx -> contract.getPrivateOrder(ctx, "sell-1")))
+                    .hasMessageContaining("does not belong to");
+            assertThatThrownBy(() -> submit("bob", ctx -> contract.getOrder(ctx, "sell-1")))
+                    .hasMessageContaining("does not exist");
+        }
+
+        @Test
+        public void settlementChecksTheDisclosedDetailAgainstThePrivateHash() {
+            listAcme();
+            ledger.commit(Arrays.asList(privateOrder("alice", "sell-1", Order.SELL, "10", "50")));
+            ledger.commit(Arrays.asList(privateOrder("bob", "buy-1", Order.BUY, "4", "60")));
+            String fills = "[{\"buyId\":\"buy-1\",\"sellId\":\"sell-1\",\"price\":\"55\",\"quantity\":\"4\"}]";
+            JSONObject sell = new JSONObject(detailOf("sell-1"));
+            JSONObject buy = new JSONObject(detailOf("buy-1"));
+
+            buy.put("price", "70.00");
+            SimulatedTransaction<Void> forged = settle(new JSONArray().put(sell).put(buy).toString(), fills);
+            assertThat(forged.getFailure()).hasMessageContaining("does not match its private data hash");
+            buy = new JSONObject(detailOf("buy-1"));
+            assertThat(settle("bob", new JSONArray().put(sell).put(buy).toString(), fills).getFailure())
+                    .hasMessageContaining("is not an exchange operator");
+            SimulatedTransaction<Void> tx = settle(new JSONArray().put(sell).put(buy).toString(), fills);
+            ledger.commit(Arrays.asList(tx));
+
+            assertThat(tx.isValid()).isTrue();
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9780.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("10220.0000");
+            assertThat(new JSONObject(detailOf("buy-1")).getString("status")).isEqualTo(Order.FILLED);
+            assertThat(new JSONObject(detailOf("sell-1")).getLong("remaining")).isEqualTo(6L);
+            JSONObject event = new JSONObject(new String(tx.getEventPayload(), UTF_8));
+            assertThat(event.getJSONArray("fills").length()).isEqualTo(0);
+            assertThat(event.getJSONArray("commitments").length()).isEqualTo(2);
+            assertThat(event.getString("root")).isNotEmpty();
+            assertThat(tx.getPrivateWriteSet().get(PrivateOrders.COLLECTION)).hasSize(3);
+            assertThat(settle(new JSONArray().put(sell).put(buy).toString(), fills).getFailure())
+                    .hasMessageContaining("does not match its private data hash");
+        }
+
+        @Test
+        public void commitmentsCoverARandomSalt() {
+            listAcme();
+            assertThat(privateOrder("alice", "sell-1", Order.SELL, "10", "50", "").getFailure()).hasMessageContaining("salt");
+            assertThat(privateOrder("alice", "sell-1", Order.SELL, "10", "50", "00ff").getFailure()).hasMessageContaining("salt");
+            SimulatedTransaction<Void> sell = privateOrder("alice", "sell-1", Order.SELL, "10", "50", "00112233445566778899aabbccddeeff");
+            ledger.commit(Arrays.asList(sell));
+
+            JSONObject detail = new JSONObject(detailOf("sell-1"));
+            String commitment = new JSONObject(new String(sell.getEventPayload(), UTF_8)).getJSONArray("commitments").getJSONObject(0)
+                    .getString("hash");
+            assertThat(detail.getString("salt")).isEqualTo("00112233445566778899aabbccddeeff");
+            assertThat(Order.fromJSON(detail, 2).getHash()).isEqualTo(commitment);
+            detail.put("salt", "ffeeddccbbaa99887766554433221100");
+            assertThat(Order.fromJSON(detail, 2).getHash()).isNotEqualTo(commitment);
+        }
+
+        @Test
+        public void ownersCancelPrivateOrders() {
+            listAcme();
+            ledger.commit(Arrays.asList(privateOrder("alice", "sell-1", Order.SELL, "10", "50")));
+            String detail = detailOf("sell-1");
+
+            assertThat(cancel("bob", "sell-1", detail).getFailure()).hasMessageContaining("does not belong to");
+            SimulatedTransaction<Void> tx = cancel("alice", "sell-1", detail);
+            ledger.commit(Arrays.asList(tx));
+
+            assertThat(tx.isValid()).isTrue();
+            assertThat(new JSONObject(detailOf("sell-1")).getString("status")).isEqualTo(Order.CANCELLED);
+            assertThat(new JSONObject(new String(tx.getEventPayload(), UTF_8)).getJSONArray("commitments").getJSONObject(0)
+                    .getString("status")).isEqualTo(Order.CANCELLED);
+            assertThat(cancel("alice", "sell-1", detail).getFailure()).hasMessageContaining("does not match its private data hash");
+            assertThat(cancel("alice", "sell-1", detailOf("sell-1")).getFailure()).hasMessageContaining("is already cancelled");
+        }
+    }
+
+    @Nested
+    class Lifecycle {
+
+        private final Instant start = Instant.parse("2020-05-25T10:00:00Z");
+
+        @BeforeEach
+        public void setUp() {
+            ledger.setClock(Clock.fixed(start, ZoneOffset.UTC));
+        }
+
+        @Test
+        public void ownersCancelLiveOrders() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+
+            assertThatThrownBy(() -> submit("bob", ctx -> {
+                contract.cancelOrder(ctx, "sell-1");
+                return null;
+            })).hasMessageContaining("does not belong");
+            submit("alice", ctx -> {
+                contract.cancelOrder(ctx, "sell-1");
+                return null;
+            });
+
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getStatus()).isEqualTo(Order.CANCELLED);
+            assertThat(new JSONObject(endorse("bob", ctx -> contract.getOrders(ctx, "ACME", Order.SELL, Order.OPEN, "10", "")).getResult()).getInt("count")).isZero();
+        }
+
+        @Test
+        public void expiredOrdersDoNotMatch() {
+            listAcme();
+            long expiry = start.getEpochSecond() + 60;
+            submit("alice", ctx -> {
+                contract.createExpiringOrder(ctx, "sell-1", Order.SELL, "ACME", "10", "50", "1", Long.toString(expiry));
+                return null;
+            });
+            ledger.setClock(Clock.fixed(start.plusSeconds(60), ZoneOffset.UTC));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "50")));
+
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getStatus()).isEqualTo(Order.EXPIRED);
+            assertThat(endorse("bob", ctx -> contract.getOrder(ctx, "buy-1")).getResult().getStatus()).isEqualTo(Order.OPEN);
+        }
+
+        @Test
+        public void archiveTerminalOrdersOfPastDays() {
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "4", "50")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "4", "50")));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "4", "55")));
+            ledger.setClock(Clock.fixed(start.plus(Duration.ofDays(1)), ZoneOffset.UTC));
+
+            String archived = submit("carol", ctx -> contract.archiveOrders(ctx, "20200526", "1"));
+            String rest = submit("carol", ctx -> contract.archiveOrders(ctx, "20200526", "10"));
+            JSONObject records = new JSONObject(endorse("carol", ctx -> contract.getArchivedOrders(ctx, "20200525", "10", "")).getResult());
+
+            assertThat(new JSONObject(archived).getBoolean("more")).isTrue();
+            assertThat(new JSONObject(rest).getInt("archived")).isEqualTo(1);
+            assertThat(new JSONObject(rest).getBoolean("more")).isFalse();
+            assertThat(records.getInt("count")).isEqualTo(2);
+            assertThat(records.getJSONArray("records").getJSONObject(0).getString("digest")).hasSize(64);
+            assertThat(endorse("alice", ctx -> contract.orderExists(ctx, "sell-1")).getResult()).isFalse();
+            assertThat(endorse("alice", ctx -> contract.orderExists(ctx, "sell-2")).getResult()).isTrue();
+            assertThat(new JSONObject(endorse("bob", ctx -> contract.getMyOrders(ctx, "10", "")).getResult()).getInt("count")).isZero();
+        }
+    }
+
+    @Nested
+    class MarketDataQueries {
+
+        private final Instant start = Instant.parse("2020-05-25T10:00:30Z");
+
+        @BeforeEach
+        public void setUp() {
+            ledger.setClock(Clock.fixed(start, ZoneOffset.UTC));
+            listAcme();
+            ledger.commit(Arrays.asList(order("alice", "sell-1", Order.SELL, "10", "50")));
+            ledger.commit(Arrays.asList(order("alice", "sell-2", Order.SELL, "10", "52")));
+            ledger.commit(Arrays.asList(order("bob", "buy-1", Order.BUY, "10", "50")));
+            ledger.setClock(Clock.fixed(start.plusSeconds(60), ZoneOffset.UTC));
+            ledger.commit(Arrays.asList(order("carol", "buy-2", Order.BUY, "5", "52")));
+        }
+
+        @Test
+        public void aggregateFillsIntoCandles() {
+            JSONObject page = new JSONObject(endorse("bob", ctx -> contract.getCandles(ctx, "ACME", MarketData.MINUTE, "20200525", "10", "")).getResult());
+
+            assertThat(page.getInt("count")).isEqualTo(2);
+            assertThat(page.getJSONArray("records").getJSONObject(0).getString("close")).isEqualTo("50.00");
+            assertThat(page.getJSONArray("records").getJSONObject(1).getString("close")).isEqualTo("52.00");
+            JSONObject market = new JSONObject(endorse("bob", ctx -> contract.getMarketData(ctx, "ACME")).getResult());
+            assertThat(market.getString("last")).isEqualTo("52.00");
+            assertThat(market.getString("vwap")).isEqualTo("50.6666");
+            assertThat(market.getLong("volume")).isEqualTo(15L);
+        }
+
+        @Test
+        public void pageThroughCandles() {
+            JSONObject first = new JSONObject(endorse("bob", ctx -> contract.getCandles(ctx, "ACME", MarketData.MINUTE, "20200525", "1", "")).getResult());
+            JSONObject second = new JSONObject(endorse("bob", ctx -> contract.getCandles(ctx, "ACME", MarketData.MINUTE, "20200525", "1", first.getString("bookmark"))).getResult());
+
+            assertThat(first.getString("bookmark")).isNotEmpty();
+            assertThat(second.getJSONArray("records").getJSONObject(0).getString("open")).isEqualTo("52.00");
+            assertThat(second.getString("bookmark")).isEmpty();
+        }
+
+        @Test
+        public void compactionKeepsTheCandles() {
+            String before = endorse("bob", ctx -> contract.getCandles(ctx, "ACME", MarketData.DAY, "2020", "10", "")).getResult();
+            int folded = submit("bob", ctx -> contract.compactCandles(ctx, "ACME", MarketData.DAY, "2020"));
+
+            assertThat(folded).isEqualTo(2);
+            assertThat(endorse("bob", ctx -> contract.getCandles(ctx, "ACME", MarketData.DAY, "2020", "10", "")).getResult()).isEqualTo(before);
+        }
+
+        @Test
+        public void marketDataReadsABoundedDay() {
+            ledger.submit("seed", stub -> {
+                StateCache cache = new StateCache(stub, Codecs.binary());
+                long bucket = MarketData.bucketOf(MarketData.DAY, start);
+                for (int i = 0; i < MarketData.MAX_COMPACT; i++) {
+                    Candle candle = new Candle(bucket, 2);
+                    candle.add(start.toEpochMilli(), new Fill("buy-" + i, "sell-" + i, "ACME", 5000, 2, 1));
+                    cache.putState(Keys.candle(cache, "ACME", MarketData.DAY, "2020", bucket, "seed-" + i),
+                            cache.getCodecs().getCandleCodec().encode(candle));
+                }
+                cache.flush();
+                return null;
+            });
+
+            assertThat(endorse("bob", ctx -> contract.getMarketData(ctx, "ACME")).getFailure()).hasMessageContaining("compactCandles");
+            submit("bob", ctx -> contract.compactCandles(ctx, "ACME", MarketData.DAY, "2020"));
+            JSONObject market = new JSONObject(endorse("bob", ctx -> contract.getMarketData(ctx, "ACME")).getResult());
+            assertThat(market.getLong("volume")).isEqualTo(1015L);
+        }
+    }
+
+    @Nested
+    class Migration {
+
+        private void seedLegacyState(String alice, String bob) {
+            ledger.submit("seed", stub -> {
+                stub.putStringState(alice, "{\"hin\":\"" + alice + "\",\"balance\":\"9500\"}");
+                stub.putStringState("ACME", "{\"owner\":\"" + alice + "\",\"symbol\":\"ACME\",\"name\":\"Acme Corp.\","
+                        + "\"totalSupply\":\"1000\",\"balances\":{\"" + alice + "\":990,\"" + bob + "\":10}}");
+                stub.putStringState("sell-1", "{\"orderId\":\"sell-1\",\"symbol\":\"ACME\",\"quantity\":\"5\",\"price\":\"50\","
+                        + "\"method\":\"" + Order.SELL + "\",\"timestamp\":\"1\",\"processed\":\"true\",\"traderHin\":\"" + alice + "\"}");
+                stub.putStringState("config", "not an entity");
+                return null;
+            });
+        }
+
+        @Test
+        public void movesBareKeysToTypedKeys() {
+            String alice = hinOf("alice");
+            String bob = hinOf("bob");
+            seedLegacyState(alice, bob);
+
+            String migrated = submit("alice", ctx -> contract.migrateKeys(ctx, "", "10"));
+            JSONObject result = new JSONObject(migrated);
+
+            assertThat(result.getInt("migrated")).isEqualTo(3);
+            assertThat(result.getInt("skipped")).isEqualTo(1);
+            assertThat(result.getString("next")).isEmpty();
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9500.0000");
+            assertThat(endorse("alice", ctx -> contract.getBalanceOf(ctx, "ACME", bob)).getResult()).isEqualTo(10L);
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-1")).getResult().getTraderHin()).isEqualTo(alice);
+            assertThat(new JSONObject(endorse("alice", ctx -> contract.getMyOrders(ctx, "10", "")).getResult()).getInt("count")).isEqualTo(1);
+            SimulatedTransaction<Boolean> raw = ledger.endorse("test", stub -> stub.getState("ACME").length == 0 && stub.getState(alice).length == 0);
+            assertThat(raw.getResult()).isTrue();
+        }
+
+        @Test
+        public void restsOpenLegacyOrdersInTheBook() {
+            String alice = hinOf("alice");
+            seedLegacyState(alice, hinOf("bob"));
+            ledger.submit("seed", stub -> {
+                stub.putStringState("sell-2", "{\"orderId\":\"sell-2\",\"symbol\":\"ACME\",\"quantity\":\"5\",\"price\":\"50\","
+                        + "\"method\":\"" + Order.SELL + "\",\"timestamp\":\"2\",\"processed\":\"false\",\"traderHin\":\"" + alice + "\"}");
+                return null;
+            });
+            submit("alice", ctx -> contract.migrateKeys(ctx, "", "10"));
+            submit("bob", ctx -> contract.createTrader(ctx));
+
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "4", "50");
+            ledger.commit(Arrays.asList(buy));
+
+            assertThat(buy.isValid()).isTrue();
+            assertThat(endorse("alice", ctx -> contract.getOrder(ctx, "sell-2")).getResult().getRemaining()).isEqualTo(1L);
+            assertThat(endorse("bob", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9800.0000");
+            assertThat(endorse("alice", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("9700.0000");
+        }
+
+        @Test
+        public void indexesPortfoliosOfExistingPositions() {
+            listAcme();
+            String alice = hinOf("alice");
+            ledger.submit("seed", stub -> {
+                stub.delState(stub.createCompositeKey(Keys.PORTFOLIO, alice, "ACME").toString());
+                return null;
+            });
+
+            String indexed = submit("alice", ctx -> contract.migratePortfolios(ctx, "ACME", "", "10"));
+            JSONObject portfolio = new JSONObject(endorse("alice", ctx -> contract.getMyPortfolio(ctx)).getResult());
+
+            assertThat(new JSONObject(indexed).getInt("indexed")).isEqualTo(1);
+            assertThat(portfolio.getJSONArray("positions").getJSONObject(0).getLong("quantity")).isEqualTo(1000L);
+        }
+
+        @Test
+        public void movesLegacyAccountsToTheirNewHin() {
+            listAcme();
+            String legacy = Hins.legacy("dave");
+            ledger.submit("seed", stub -> {
+                StateCache cache = new StateCache(stub, Codecs.binary());
+                cache.putTrader(new Trader(legacy, FixedPoint.parse("5000", FixedPoint.CASH_SCALE)));
+                cache.getSecurity("ACME").putBalanceOf(cache, legacy, 10);
+                Order order = new Order("sell-1", "ACME", 10, 5000, Order.SELL, 1, "true", "false", legacy);
+                cache.putOrder(order);
+                OrderIndex.add(cache, order);
+                cache.putStringState(Keys.book(cache, order), order.getOrderId());
+                cache.flush();
+                return null;
+            });
+
+            assertThatThrownBy(() -> submit("dave", ctx -> contract.createTrader(ctx))).hasMessageContaining("migrateMyHin");
+            String hin = submit("dave", ctx -> contract.migrateMyHin(ctx));
+            SimulatedTransaction<Void> buy = order("bob", "buy-1", Order.BUY, "4", "50");
+            ledger.commit(Arrays.asList(buy));
+
+            assertThat(hin).hasSize(64).isEqualTo(hinOf("dave"));
+            assertThat(buy.isValid()).isTrue();
+            assertThat(endorse("dave", ctx -> contract.getMyBalance(ctx)).getResult()).isEqualTo("5200.0000");
+            assertThat(endorse("dave", ctx -> contract.getBalanceOf(ctx, "ACME", hin)).getResult()).isEqualTo(6L);
+            assertThat(endorse("dave", ctx -> contract.traderExists(ctx, legacy)).getResult()).isFalse();
+            assertThat(new JSONObject(endorse("dave", ctx -> contract.getMyOrders(ctx, "10", "")).getResult()).getInt("count")).isEqualTo(1);
+        }
+
+        @Test
+        public void continuesFromTheNextKey() {
+            seedLegacyState(hinOf("alice"), hinOf("bob"));
+
+            String firstBatch = submit("alice", ctx -> contract.migrateKeys(ctx, "", "2"));
+            JSONObject first = new JSONObject(firstBatch);
+            String secondBatch = submit("alice", ctx -> contract.migrateKeys(ctx, first.getString("next"), "2"));
+            JSONObject second = new JSONObject(secondBatch);
+
+            assertThat(first.getString("next")).isNotEmpty();
+            assertThat(first.getInt("migrated") + second.getInt("migrated")).isEqualTo(3);
+            assertThat(second.getString("next")).isEmpty();
+        }
+    }
+
+    @Nested
+    class Metrics {
+
+        @Test
+        public void areRecordedPerTransaction() {
+            List<TransactionMetrics> recorded = new ArrayList<>();
+            SecurityContract metered = new SecurityContract(recorded::add);
+            ledger.submit("createTrader", stub -> {
+                SimulatedContext ctx = new SimulatedContext(stub, "alice", new TransactionMetrics());
+                metered.beforeTransaction(ctx);
+                metered.afterTransaction(ctx, metered.createTrader(ctx));
+                return null;
+            });
+
+            assertThat(recorded).hasSize(1);
+            assertThat(recorded.get(0).getFunction()).isEqualTo("createTrader");
+            assertThat(recorded.get(0).getGetStateCalls()).isEqualTo(2);
+            assertThat(recorded.get(0).getPutStateCalls()).isEqualTo(1);
+            assertThat(recorded.get(0).getBytesWritten()).isPositive();
+        }
+    }
+
+    @Nested
+    class Simulator {
+
+        @Test
+        public void doesNotShowPendingWrites() {
+            SimulatedTransaction<Integer> tx = ledger.endorse("test", stub -> {
+                stub.putStringState("key", "value");
+                return stub.getState("key").length;
+            });
+
+            assertThat(tx.getResult()).isEqualTo(0);
+            assertThat(tx.getWriteSet()).containsKey("key");
+        }
+
+        @Test
+        public void rejectsWritesAfterPaginatedQueries() {
+            SimulatedTransaction<Void> tx = ledger.endorse("test", stub -> {
+                stub.getStateByPartialCompositeKeyWithPagination(stub.createCompositeKey("book"), 10, "");
+                stub.putStringState("key", "value");
+                return null;
+            });
+
+            assertThat(tx.getStatus()).isEqualTo(SimulatedTransaction.Status.ENDORSEMENT_FAILURE);
+        }
+
+        @Test
+        public void validatesOnlyTheConsumedPartOfARange() {
+            ledger.submit("test", stub -> {
+                stub.putStringState(stub.createCompositeKey("book", "b").toString(), "b");
+                return null;
+            });
+            SimulatedTransaction<Void> first = ledger.endorse("test", stub -> {
+                try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey("book")) {
+                    results.iterator().next();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            });
+            SimulatedTransaction<Void> insert = ledger.endorse("test", stub -> {
+                stub.putStringState(stub.createCompositeKey("book", "c").toString(), "c");
+                return null;
+            });
+            ledger.commit(Arrays.asList(insert, first));
+
+            assertThat(first.getStatus()).isEqualTo(SimulatedTransaction.Status.VALID);
+        }
+    }
+
+    private static final class WritingContract extends SecurityContract {
+
+        @Transaction(submit = false)
+        public void touch(final ExchangeContext ctx) {
+            ctx.getCache().putStringState("touched", "true");
+        }
+    }
+}
@@ -14,8 +14,22 @@
 
 package org.example;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
-
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
@@ -26,15 +40,15 @@ public final class SecurityTest {
 
         @Test
         public void isReflexive() {
-            Security security = new Security("AAPL", "Apple Inc.", "100");
+            Security security = new Security("A2010", "AAPL", "Apple Inc.", 100);
 
             assertThat(security).isEqualTo(security);
         }
 
         @Test
         public void isSymmetric() {
-            Security secA = new Security("AAPL", "Apple Inc.", "100");
-            Security secB = new Security("AAPL", "Apple Inc.", "100");
+            Security secA = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            Security secB = new Security("A2010", "AAPL", "Apple Inc.", 100);
 
             assertThat(secA).isEqualTo(secB);
             assertThat(secB).isEqualTo(secA);
@@ -42,9 +56,9 @@ public final class SecurityTest {
 
         @Test
         public void isTransitive() {
-            Security secA = new Security("AAPL", "Apple Inc.", "100");
-            Security secB = new Security("AAPL", "Apple Inc.", "100");
-            Security secC = new Security("AAPL", "Apple Inc.", "100");
+            Security secA = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            Security secB = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            Security secC = new Security("A2010", "AAPL", "Apple Inc.", 100);
 
             assertThat(secA).isEqualTo(secB);
             assertThat(secB).isEqualTo(secC);
@@ -53,15 +67,15 @@ public final class SecurityTest {
 
         @Test
         public void handlesInequality() {
-            Security secA = new Security("AAPL", "Apple Inc.", "100");
-            Security secB = new Security("SNAP", "Snap Inc.", "50");
+            Security secA = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            Security secB = new Security("B4020", "SNAP", "Snap Inc.", 50);
 
             assertThat(secA).isNotEqualTo(secB);
         }
 
         @Test
         public void handlesOtherObjects() {
-            Security secA = new Security("AAPL", "Apple Inc.", "100");
+            Security secA = new Security("A2010", "AAPL", "Apple Inc.", 100);
             String secB = "not a security";
 
             assertThat(secA).isNotEqualTo(secB);
@@ -69,7 +83,7 @@ public final class SecurityTest {
 
         @Test
         public void handlesNull() {
-            Security sec = new Security("AAPL", "Apple Inc.", "100");
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
 
             assertThat(sec).isNotEqualTo(null);
         }
@@ -77,8 +91,103 @@ public final class SecurityTest {
 
     @Test
     public void toStringIdentifiesSecurity() {
-        Security sec = new Security("AAPL", "Apple Inc.", "100");
+        Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+
+        assertThat(sec.toString()).isEqualTo("Security@" + Integer.toHexString(sec.hashCode())
+                + " [owner=A2010, symbol=AAPL, name=Apple Inc., totalSupply=100, priceScale=2]");
+    }
+
+    @Nested
+    class Legacy {
+
+        private final byte[] json = ("{\"balances\":{\"A2010\":90,\"B4020\":10},\"name\":\"Apple \\\"Inc.\\\"\","
+                + "\"owner\":\"A2010\",\"symbol\":\"AAPL\",\"totalSupply\":\"100\"}").getBytes(UTF_8);
+
+        @Test
+        public void readsTheDocumentPastItsBalances() {
+            assertThat(Security.fromJSON(json)).isEqualTo(new Security("A2010", "AAPL", "Apple \"Inc.\"", 100));
+        }
+
+        @Test
+        public void streamsTheBalances() {
+            Map<String, Long> balances = new HashMap<>();
+            Security.readLegacyBalances(json, balances::put);
+
+            assertThat(balances).containsEntry("A2010", 90L).containsEntry("B4020", 10L).hasSize(2);
+        }
+    }
+
+    @Nested
+    class Holdings {
+
+        private final Map<String, byte[]> state = new HashMap<>();
+        private final ChaincodeStub stub = mock(ChaincodeStub.class);
+        private StateCache cache;
+
+        @BeforeEach
+        public void setUp() {
+            when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+                Object[] args = invocation.getArguments();
+                String[] attributes = Arrays.copyOfRange(args, 1, args.length, String[].class);
+                return new CompositeKey((String) args[0], attributes);
+            });
+            when(stub.getState(anyString())).thenAnswer(invocation -> state.get(invocation.getArgument(0)));
+            doAnswer(invocation -> state.put(invocation.getArgument(0), invocation.getArgument(1)))
+                    .when(stub).putState(anyString(), any(byte[].class));
+            doAnswer(invocation -> state.remove(invocation.getArgument(0))).when(stub).delState(anyString());
+            cache = new StateCache(stub, Codecs.binary());
+        }
 
-        assertThat(sec.toString()).isEqualTo("Security@" + sec.hashCode() + " [symbol=AAPL, name=Apple Inc., quantity=100]");
+        @Test
+        public void issueCreditsOwner() {
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            sec.issue(cache);
+
+            assertThat(sec.getBalanceOf(cache, "A2010")).isEqualTo(100);
+            assertThat(sec.getBalanceOf(cache, "B4020")).isEqualTo(0);
+        }
+
+        @Test
+        public void transferTouchesOnlyTwoPositions() {
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            sec.issue(cache);
+            sec.transfer(cache, "A2010", "B4020", 40);
+            cache.flush();
+
+            assertThat(sec.getBalanceOf(cache, "A2010")).isEqualTo(60);
+            assertThat(sec.getBalanceOf(cache, "B4020")).isEqualTo(40);
+            assertThat(state).hasSize(4);
+        }
+
+        @Test
+        public void transferKeepsPortfoliosInStep() {
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            sec.issue(cache);
+            sec.transfer(cache, "A2010", "B4020", 40);
+
+            assertThat(cache.getAmount(Keys.portfolio(cache, "A2010", "AAPL"))).isEqualTo(60);
+            assertThat(cache.getAmount(Keys.portfolio(cache, "B4020", "AAPL"))).isEqualTo(40);
+        }
+
+        @Test
+        public void transferRemovesEmptyPositions() {
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            sec.issue(cache);
+            cache.flush();
+            sec.transfer(cache, "A2010", "B4020", 100);
+            cache.flush();
+
+            assertThat(state).hasSize(2);
+            assertThat(sec.getBalanceOf(cache, "B4020")).isEqualTo(100);
+        }
+
+        @Test
+        public void transferRejectsInsufficientBalance() {
+            Security sec = new Security("A2010", "AAPL", "Apple Inc.", 100);
+            sec.issue(cache);
+
+            assertThatThrownBy(() -> sec.transfer(cache, "A2010", "B4020", 101)).isInstanceOf(RuntimeException.class);
+            assertThat(sec.getBalanceOf(cache, "A2010")).isEqualTo(100);
+        }
     }
 }
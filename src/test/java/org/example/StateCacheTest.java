@@ -0,0 +1,153 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class StateCacheTest {
+
+    private final ChaincodeStub stub = mock(ChaincodeStub.class);
+    private final StateCache cache = new StateCache(stub, Codecs.binary());
+    private final String traderKey = new CompositeKey(Keys.TRADER, "A2010").toString();
+    private final String securityKey = new CompositeKey(Keys.SECURITY, "AAPL").toString();
+
+    @BeforeEach
+    public void setUp() {
+        when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            String[] attributes = Arrays.copyOfRange(args, 1, args.length, String[].class);
+            return new CompositeKey((String) args[0], attributes);
+        });
+    }
+
+    @Test
+    public void readsEveryKeyOnce() {
+        when(stub.getState(traderKey)).thenReturn("{\"hin\":\"A2010\",\"balance\":\"100\"}".getBytes(UTF_8));
+
+        cache.getStringState(traderKey);
+        cache.exists(traderKey);
+        cache.getTrader("A2010");
+
+        verify(stub, times(1)).getState(traderKey);
+    }
+
+    @Test
+    public void cachesMissingKeys() {
+        assertThat(cache.exists(securityKey)).isFalse();
+        assertThat(cache.getSecurity("AAPL")).isNull();
+
+        verify(stub, times(1)).getState(securityKey);
+    }
+
+    @Test
+    public void keepsEntitiesInTheirOwnNamespace() {
+        cache.putTrader(new Trader("AAPL", 0));
+
+        assertThat(cache.getSecurity("AAPL")).isNull();
+        assertThat(cache.exists(new CompositeKey(Keys.TRADER, "AAPL").toString())).isTrue();
+        assertThat(cache.exists("AAPL")).isFalse();
+    }
+
+    @Test
+    public void buffersPrivateDataUntilFlushed() {
+        byte[] detail = "{\"orderId\":\"o-1\"}".getBytes(UTF_8);
+        cache.putPrivateData(PrivateOrders.COLLECTION, "o-1", detail);
+
+        assertThat(cache.getPrivateData(PrivateOrders.COLLECTION, "o-1")).isSameAs(detail);
+        assertThat(cache.getPrivateDataHash(PrivateOrders.COLLECTION, "o-1")).isEqualTo(Digests.sha256().digest(detail));
+        verify(stub, never()).putPrivateData(anyString(), anyString(), any(byte[].class));
+        cache.flush();
+        verify(stub, times(1)).putPrivateData(PrivateOrders.COLLECTION, "o-1", detail);
+        verify(stub, never()).getPrivateDataHash(anyString(), anyString());
+    }
+
+    @Test
+    public void readsOwnWrites() {
+        cache.putStringState("AAPL", "x");
+        assertThat(cache.getStringState("AAPL")).isEqualTo("x");
+
+        cache.delState("AAPL");
+        assertThat(cache.exists("AAPL")).isFalse();
+
+        verify(stub, never()).getState(anyString());
+    }
+
+    @Test
+    public void memoizesEntities() {
+        when(stub.getState(traderKey)).thenReturn("{\"hin\":\"A2010\",\"balance\":\"100\"}".getBytes(UTF_8));
+
+        assertThat(cache.getTrader("A2010")).isSameAs(cache.getTrader("A2010"));
+    }
+
+    @Test
+    public void buffersWritesUntilFlush() {
+        cache.putStringState("AAPL", "1");
+        cache.putStringState("AAPL", "2");
+        cache.delState("SNAP");
+
+        verify(stub, never()).putState(anyString(), any(byte[].class));
+
+        cache.flush();
+
+        verify(stub, times(1)).putState("AAPL", "2".getBytes(UTF_8));
+        verify(stub, times(1)).delState("SNAP");
+    }
+
+    @Test
+    public void countsStateCallsAndBytes() {
+        TransactionMetrics metrics = new TransactionMetrics();
+        StateCache metered = new StateCache(stub, Codecs.binary(), metrics);
+        when(stub.getState("A2010")).thenReturn("abc".getBytes(UTF_8));
+
+        metered.getState("A2010");
+        metered.getState("A2010");
+        metered.putStringState("AAPL", "1234");
+        metered.delState("SNAP");
+        metered.flush();
+
+        assertThat(metrics.getGetStateCalls()).isEqualTo(1);
+        assertThat(metrics.getBytesRead()).isEqualTo(3);
+        assertThat(metrics.getPutStateCalls()).isEqualTo(1);
+        assertThat(metrics.getBytesWritten()).isEqualTo(4);
+        assertThat(metrics.getDelStateCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void leavesDisabledMetricsUntouched() {
+        when(stub.getState("A2010")).thenReturn("abc".getBytes(UTF_8));
+
+        cache.getState("A2010");
+        cache.putStringState("AAPL", "1234");
+        cache.flush();
+
+        assertThat(TransactionMetrics.DISABLED.getGetStateCalls()).isZero();
+        assertThat(TransactionMetrics.DISABLED.getBytesWritten()).isZero();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.example.ExchangeContext;
+import org.example.Order;
+import org.example.SecurityContract;
+
+/**
+ * Drives {@link SecurityContract} on a {@link SimulatedLedger} with the
+ * workloads of our Caliper benchmarks: worker threads endorse transactions
+ * concurrently, a block cutter orders them into blocks and the ledger
+ * validates each block, so conflicting transactions fail as on a peer.
+ * <p>
+ * Options are passed as {@code --name=value}: threads, traders, symbols,
+ * seconds, blockSize, blockTimeout (milliseconds) and mix, a list of
+ * {@code operation:weight} pairs over createTrader, createOrder (resting),
+ * matchOrder (crossing the spread, settled on-chain), settleOrder (off-book
+ * pair settlement) and query.
+ */
+public final class LoadGenerator {
+
+    private static final String DEFAULT_MIX = "createTrader:2,createOrder:50,matchOrder:30,settleOrder:0,query:18";
+
+    private final SecurityContract contract = new SecurityContract();
+    private final SimulatedLedger ledger = new SimulatedLedger();
+    private final BlockingQueue<Pending> orderer = new LinkedBlockingQueue<>();
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    private final List<String> traders = new ArrayList<>();
+    private final List<String> hins = new ArrayList<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReference<Order> lastBuy = new AtomicReference<>();
+    private final AtomicReference<Order> lastSell = new AtomicReference<>();
+    private final AtomicLong blocks = new AtomicLong();
+    private final int threads;
+    private final int traderCount;
+    private final int symbolCount;
+    private final long seconds;
+    private final int blockSize;
+    private final long blockTimeout;
+    private volatile boolean running = true;
+    private volatile boolean ordering = true;
+
+    LoadGenerator(Map<String, String> options) {
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        this.traderCount = Integer.parseInt(options.getOrDefault("traders", "100"));
+        this.symbolCount = Integer.parseInt(options.getOrDefault("symbols", "4"));
+        this.seconds = Long.parseLong(options.getOrDefault("seconds", "20"));
+        this.blockSize = Integer.parseInt(options.getOrDefault("blockSize", "50"));
+        this.blockTimeout = Long.parseLong(options.getOrDefault("blockTimeout", "20"));
+        for (String entry : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+            String[] pair = entry.split(":");
+            mix.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        for (String operation : Arrays.asList("createTrader", "createOrder", "matchOrder", "settleOrder", "query")) {
+            mix.putIfAbsent(operation, 0);
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        Logger.getLogger(SecurityContract.class.getName()).setLevel(Level.WARNING);
+        LoadGenerator generator = new LoadGenerator(options);
+        generator.setUp();
+        generator.run();
+    }
+
+    /**
+     * Registers the traders, issues the securities from the first trader and
+     * hands every trader an initial position, one transaction per block.
+     */
+    void setUp() {
+        for (int i = 0; i < traderCount; i++) {
+            String trader = "trader-" + i;
+            submit("createTrader", trader, ctx -> contract.createTrader(ctx));
+            traders.add(trader);
+            hins.add(submit("getMyHin", trader, ctx -> contract.getMyHin(ctx)));
+        }
+        for (int s = 0; s < symbolCount; s++) {
+            String symbol = "SYM" + s;
+            symbols.add(symbol);
+            submit("createSecurity", traders.get(0), ctx -> {
+                contract.createSecurity(ctx, symbol, "Simulated security " + symbol, Long.toString(1000L * traderCount));
+                return null;
+            });
+            for (int i = 1; i < traderCount; i++) {
+                String hin = hins.get(i);
+                submit("changeBalances", traders.get(0), ctx -> contract.changeBalances(ctx, symbol, hin, hins.get(0), "500"));
+            }
+        }
+        System.out.printf("set up %d traders and %d securities in %d blocks, %d keys%n",
+                traderCount, symbolCount, ledger.getHeight(), ledger.size());
+    }
+
+    void run() throws InterruptedException {
+        Thread cutter = new Thread(this::cutBlocks, "block-cutter");
+        cutter.start();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "worker-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(seconds);
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        ordering = false;
+        cutter.join();
+        report(elapsed);
+    }
+
+    private <T> T submit(String function, String caller, Function<ExchangeContext, T> call) {
+        SimulatedTransaction<T> tx = ledger.submit(function, SimulatedContext.invoke(contract, caller, call));
+        if (!tx.isValid()) {
+            throw new IllegalStateException("Set up transaction " + function + " failed: " + tx, tx.getFailure());
+        }
+        return tx.getResult();
+    }
+
+    // ----------------- Workers -------------------
+
+    private void work() {
+        Random random = ThreadLocalRandom.current();
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        while (running) {
+            String operation = pick(random.nextInt(total));
+            long start = System.nanoTime();
+            SimulatedTransaction<?> tx = endorse(operation, random);
+            if (tx == null) {
+                continue;
+            }
+            if (!"query".equals(operation) && tx.getStatus() == SimulatedTransaction.Status.ENDORSED) {
+                Pending pending = new Pending(tx);
+                orderer.add(pending);
+                try {
+                    pending.committed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            SimulatedTransaction.Status status = tx.getStatus() == SimulatedTransaction.Status.ENDORSED
+                    ? SimulatedTransaction.Status.VALID
+                    : tx.getStatus();
+            stats.get(operation).record(status, System.nanoTime() - start);
+        }
+    }
+
+    private String pick(int ticket) {
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            ticket -= entry.getValue();
+            if (ticket < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private SimulatedTransaction<?> endorse(String operation, Random random) {
+        String trader = traders.get(random.nextInt(traders.size()));
+        String symbol = symbols.get(random.nextInt(symbols.size()));
+        switch (operation) {
+            case "createTrader":
+                return ledger.endorse("createTrader",
+                        SimulatedContext.invoke(contract, "trader-new-" + sequence.incrementAndGet(), ctx -> contract.createTrader(ctx)));
+            case "createOrder":
+            case "matchOrder":
+                boolean buy = random.nextBoolean();
+                boolean crossing = "matchOrder".equals(operation);
+                int offset = 1 + random.nextInt(10);
+                String price = Integer.toString(crossing == buy ? 100 + offset : 100 - offset);
+                String quantity = Integer.toString(1 + random.nextInt(10));
+                String orderId = "ord-" + sequence.incrementAndGet();
+                String timestamp = Long.toString(System.currentTimeMillis());
+                SimulatedTransaction<?> tx = ledger.endorse("createOrder", SimulatedContext.invoke(contract, trader, ctx -> {
+                    contract.createOrder(ctx, orderId, buy ? Order.BUY : Order.SELL, symbol, quantity, price, timestamp);
+                    return contract.getMyHin(ctx);
+                }));
+                if (!crossing && tx.getFailure() == null) {
+                    Order order = new Order(orderId, symbol, Long.parseLong(quantity), 0, buy ? Order.BUY : Order.SELL,
+                            Long.parseLong(timestamp), "true", "false", (String) tx.getResult());
+                    (buy ? lastBuy : lastSell).set(order);
+                }
+                return tx;
+            case "settleOrder":
+                Order buyOrder = lastBuy.get();
+                Order sellOrder = lastSell.get();
+                if (buyOrder == null || sellOrder == null) {
+                    return null;
+                }
+                String buyer = traders.get(hins.indexOf(buyOrder.getTraderHin()));
+                return ledger.endorse("settleOrder", SimulatedContext.invoke(contract, buyer, ctx -> {
+                    contract.settleOrder(ctx, buyOrder.getOrderId(), sellOrder.getOrderId(), buyOrder.getSymbol(), "100",
+                            "1", Long.toString(buyOrder.getTimestamp()), Long.toString(sellOrder.getTimestamp()), sellOrder.getTraderHin());
+                    return null;
+                }));
+            case "query":
+                return ledger.endorse("query", SimulatedContext.invoke(contract, trader, ctx -> {
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            return contract.getMyBalance(ctx);
+                        case 1:
+                            return contract.getSecurity(ctx, symbol);
+                        default:
+                            return contract.getBalanceOf(ctx, symbol, contract.getMyHin(ctx));
+                    }
+                }));
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    // ----------------- Ordering -------------------
+
+    /**
+     * Cuts a block once it holds blockSize transactions or the first of them
+     * waited blockTimeout milliseconds, then validates and commits it.
+     */
+    private void cutBlocks() {
+        List<Pending> block = new ArrayList<>();
+        try {
+            while (ordering || !orderer.isEmpty()) {
+                Pending first = orderer.poll(blockTimeout, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                block.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                while (block.size() < blockSize) {
+                    Pending next = orderer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    block.add(next);
+                }
+                List<SimulatedTransaction<?>> transactions = new ArrayList<>();
+                for (Pending pending : block) {
+                    transactions.add(pending.tx);
+                }
+                ledger.commit(transactions);
+                blocks.incrementAndGet();
+                for (Pending pending : block) {
+                    pending.committed.countDown();
+                }
+                block.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Pending {
+
+        private final SimulatedTransaction<?> tx;
+        private final CountDownLatch committed = new CountDownLatch(1);
+
+        Pending(SimulatedTransaction<?> tx) {
+            this.tx = tx;
+        }
+    }
+
+    // ----------------- Reporting -------------------
+
+    private void report(double elapsed) {
+        long valid = 0;
+        long ordered = 0;
+        long conflicts = 0;
+        System.out.printf("%d threads, block size %d, %d blocks in %.1f s%n", threads, blockSize, blocks.get(), elapsed);
+        System.out.printf("%-13s %8s %8s %8s %8s %8s %9s %9s %9s%n",
+                "operation", "total", "valid", "mvcc", "phantom", "failed", "p50 ms", "p95 ms", "p99 ms");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            if (s.total() == 0) {
+                continue;
+            }
+            System.out.printf("%-13s %8d %8d %8d %8d %8d %9.2f %9.2f %9.2f%n", entry.getKey(), s.total(),
+                    s.count(SimulatedTransaction.Status.VALID), s.count(SimulatedTransaction.Status.MVCC_READ_CONFLICT),
+                    s.count(SimulatedTransaction.Status.PHANTOM_READ_CONFLICT), s.count(SimulatedTransaction.Status.ENDORSEMENT_FAILURE),
+                    s.percentile(0.50), s.percentile(0.95), s.percentile(0.99));
+            if (!"query".equals(entry.getKey())) {
+                long conflicted = s.count(SimulatedTransaction.Status.MVCC_READ_CONFLICT) + s.count(SimulatedTransaction.Status.PHANTOM_READ_CONFLICT);
+                valid += s.count(SimulatedTransaction.Status.VALID);
+                conflicts += conflicted;
+                ordered += s.count(SimulatedTransaction.Status.VALID) + conflicted;
+            }
+        }
+        long queries = stats.get("query").total();
+        System.out.printf("throughput %.1f valid tx/s, %.1f queries/s, conflict rate %.2f %%%n",
+                valid / elapsed, queries / elapsed, ordered == 0 ? 0 : 100.0 * conflicts / ordered);
+    }
+
+    /**
+     * Outcome counts and latencies of one operation.
+     */
+    private static final class Stats {
+
+        private final Map<SimulatedTransaction.Status, Long> counts = new EnumMap<>(SimulatedTransaction.Status.class);
+        private final List<Long> latencies = new ArrayList<>();
+
+        synchronized void record(SimulatedTransaction.Status status, long nanos) {
+            counts.merge(status, 1L, Long::sum);
+            latencies.add(nanos);
+        }
+
+        synchronized long count(SimulatedTransaction.Status status) {
+            return counts.getOrDefault(status, 0L);
+        }
+
+        synchronized long total() {
+            return latencies.size();
+        }
+
+        synchronized double percentile(double p) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<>(latencies);
+            sorted.sort(null);
+            return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1)) / 1e6;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.sim;
+
+import java.util.function.Function;
+
+import org.example.Codecs;
+import org.example.ExchangeContext;
+import org.example.SecurityContract;
+import org.example.TransactionMetrics;
+
+/**
+ * Transaction context for a simulated client. Every simulated transaction is
+ * signed with the same certificate of {@link SimulatedLedger#MSP_ID}, the
+ * caller id tells the clients apart. The caller {@link #ADMIN} is the
+ * exchange's operator.
+ */
+public class SimulatedContext extends ExchangeContext {
+
+    public static final String ADMIN = "admin";
+
+    private final String callerId;
+
+    public SimulatedContext(SimulatedStub stub, String callerId) {
+        this(stub, callerId, TransactionMetrics.DISABLED);
+    }
+
+    public SimulatedContext(SimulatedStub stub, String callerId, TransactionMetrics metrics) {
+        super(stub, Codecs.binary(), metrics);
+        this.callerId = callerId;
+    }
+
+    @Override
+    public String getCallerId() {
+        return callerId;
+    }
+
+    @Override
+    public String getCallerMspId() {
+        return SimulatedLedger.MSP_ID;
+    }
+
+    @Override
+    public boolean isAdmin() {
+        return ADMIN.equals(callerId);
+    }
+
+    /**
+     * Transaction body running a contract function the way the contract
+     * runtime does, including the before and after hooks.
+     */
+    public static <T> Function<SimulatedStub, T> invoke(SecurityContract contract, String callerId, Function<ExchangeContext, T> call) {
+        return stub -> {
+            SimulatedContext ctx = new SimulatedContext(stub, callerId);
+            contract.beforeTransaction(ctx);
+            T result = call.apply(ctx);
+            contract.afterTransaction(ctx, result);
+            return result;
+        };
+    }
+}
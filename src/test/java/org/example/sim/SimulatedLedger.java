@@ -0,0 +1,286 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import com.google.protobuf.ByteString;
+
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+
+/**
+ * In-memory world state of a single channel. Transactions are endorsed against
+ * the committed state, collecting read and write sets like a peer does, and
+ * validated in blocks: a transaction whose reads or range reads changed since
+ * endorsement is marked invalid and its writes are dropped.
+ */
+public final class SimulatedLedger {
+
+    public static final String CHANNEL = "simchannel";
+    public static final String MSP_ID = "Org1MSP";
+
+    /** Upper bound for partial composite key ranges, as used by the peer. */
+    static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+
+    private final TreeMap<String, Versioned> state = new TreeMap<>();
+    private final Map<String, TreeMap<String, Versioned>> privateState = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong txCounter = new AtomicLong();
+    private final List<Consumer<SimulatedTransaction<?>>> eventListeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> blockListeners = new CopyOnWriteArrayList<>();
+    private final byte[] creator;
+    private volatile Clock clock = Clock.systemUTC();
+    private long version;
+    private long height;
+
+    public SimulatedLedger() {
+        this.creator = SerializedIdentity.newBuilder()
+                .setMspid(MSP_ID)
+                .setIdBytes(ByteString.copyFrom(readCertificate()))
+                .build()
+                .toByteArray();
+    }
+
+    /**
+     * Registers a listener for the events of valid transactions, called in
+     * commit order like the peer's event service.
+     */
+    public void addEventListener(Consumer<SimulatedTransaction<?>> listener) {
+        eventListeners.add(listener);
+    }
+
+    /**
+     * Registers a listener for the number of every committed block, called
+     * after the events of its transactions.
+     */
+    public void addBlockListener(LongConsumer listener) {
+        blockListeners.add(listener);
+    }
+
+    /**
+     * Sets the clock that stamps the proposals of later endorsements.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Executes a transaction body against the committed state. The returned
+     * transaction carries the body's result or failure and, once passed to
+     * {@link #commit(List)}, its validation status.
+     */
+    public <T> SimulatedTransaction<T> endorse(String function, Map<String, byte[]> transientData, Function<SimulatedStub, T> body) {
+        String txId = String.format("%064x", txCounter.incrementAndGet());
+        SimulatedStub stub = new SimulatedStub(this, txId, function, Instant.now(clock), creator, transientData);
+        lock.readLock().lock();
+        try {
+            T result = body.apply(stub);
+            return stub.toTransaction(result, null);
+        } catch (RuntimeException e) {
+            return stub.toTransaction(null, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public <T> SimulatedTransaction<T> endorse(String function, Function<SimulatedStub, T> body) {
+        return endorse(function, Collections.emptyMap(), body);
+    }
+
+    /**
+     * Validates a block of endorsed transactions in order and applies the
+     * writes of the valid ones. Transactions that failed endorsement never
+     * reach the orderer in Fabric, they are skipped here.
+     */
+    public void commit(List<? extends SimulatedTransaction<?>> block) {
+        lock.writeLock().lock();
+        try {
+            height++;
+            int index = 0;
+            for (SimulatedTransaction<?> tx : block) {
+                if (tx.getStatus() == SimulatedTransaction.Status.ENDORSEMENT_FAILURE) {
+                    continue;
+                }
+                SimulatedTransaction.Status status = validate(tx);
+                tx.setStatus(status, height, index++);
+                if (status == SimulatedTransaction.Status.VALID) {
+                    apply(tx);
+                    if (tx.getEventName() != null) {
+                        for (Consumer<SimulatedTransaction<?>> listener : eventListeners) {
+                            listener.accept(tx);
+                        }
+                    }
+                }
+            }
+            for (LongConsumer listener : blockListeners) {
+                listener.accept(height);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Endorses and commits a transaction in a block of its own.
+     */
+    public <T> SimulatedTransaction<T> submit(String function, Function<SimulatedStub, T> body) {
+        SimulatedTransaction<T> tx = endorse(function, body);
+        commit(Collections.singletonList(tx));
+        return tx;
+    }
+
+    public long getHeight() {
+        lock.readLock().lock();
+        try {
+            return height;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ----------------- Reads used by the stub while endorsing -------------------
+
+    Versioned read(String key) {
+        return state.get(key);
+    }
+
+    Versioned readPrivate(String collection, String key) {
+        TreeMap<String, Versioned> data = privateState.get(collection);
+        return data == null ? null : data.get(key);
+    }
+
+    /**
+     * Entries between startKey (inclusive) and endKey (exclusive), an empty end
+     * key meaning unbounded. Simple key ranges skip composite keys like the peer.
+     */
+    List<Map.Entry<String, Versioned>> range(String startKey, String endKey, boolean compositeOnly) {
+        return range(state, startKey, endKey, compositeOnly);
+    }
+
+    List<Map.Entry<String, Versioned>> rangePrivate(String collection, String startKey, String endKey, boolean compositeOnly) {
+        TreeMap<String, Versioned> data = privateState.get(collection);
+        return data == null ? Collections.emptyList() : range(data, startKey, endKey, compositeOnly);
+    }
+
+    private static List<Map.Entry<String, Versioned>> range(TreeMap<String, Versioned> data, String startKey, String endKey, boolean compositeOnly) {
+        NavigableMap<String, Versioned> view = endKey.isEmpty()
+                ? data.tailMap(startKey, true)
+                : data.subMap(startKey, true, endKey, false);
+        List<Map.Entry<String, Versioned>> entries = new ArrayList<>();
+        for (Map.Entry<String, Versioned> entry : view.entrySet()) {
+            if (compositeOnly || !SimulatedStub.isCompositeKey(entry.getKey())) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // ----------------- Validation -------------------
+
+    private SimulatedTransaction.Status validate(SimulatedTransaction<?> tx) {
+        for (Map.Entry<String, Long> read : tx.getReadSet().entrySet()) {
+            if (versionOf(state.get(read.getKey())) != read.getValue()) {
+                return SimulatedTransaction.Status.MVCC_READ_CONFLICT;
+            }
+        }
+        for (SimulatedTransaction.RangeRead rangeRead : tx.getRangeReads()) {
+            if (!rangeRead.matches(range(rangeRead.getStartKey(), rangeRead.getEndKey(), rangeRead.isComposite()))) {
+                return SimulatedTransaction.Status.PHANTOM_READ_CONFLICT;
+            }
+        }
+        return SimulatedTransaction.Status.VALID;
+    }
+
+    private void apply(SimulatedTransaction<?> tx) {
+        version++;
+        for (Map.Entry<String, byte[]> write : tx.getWriteSet().entrySet()) {
+            if (write.getValue() == null) {
+                state.remove(write.getKey());
+            } else {
+                state.put(write.getKey(), new Versioned(write.getValue(), version));
+            }
+        }
+        for (Map.Entry<String, Map<String, byte[]>> collection : tx.getPrivateWriteSet().entrySet()) {
+            TreeMap<String, Versioned> data = privateState.computeIfAbsent(collection.getKey(), c -> new TreeMap<>());
+            for (Map.Entry<String, byte[]> write : collection.getValue().entrySet()) {
+                if (write.getValue() == null) {
+                    data.remove(write.getKey());
+                } else {
+                    data.put(write.getKey(), new Versioned(write.getValue(), version));
+                }
+            }
+        }
+    }
+
+    static long versionOf(Versioned versioned) {
+        return versioned == null ? 0 : versioned.version;
+    }
+
+    private static byte[] readCertificate() {
+        try (InputStream in = SimulatedLedger.class.getResourceAsStream("client.pem")) {
+            if (in == null) {
+                throw new IllegalStateException("The simulated client certificate is missing");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the simulated client certificate", e);
+        }
+    }
+
+    /**
+     * A committed value with the number of the transaction that wrote it.
+     */
+    static final class Versioned {
+
+        final byte[] value;
+        final long version;
+
+        Versioned(byte[] value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
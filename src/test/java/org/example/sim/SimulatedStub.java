@@ -0,0 +1,459 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.sim;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.protobuf.ByteString;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * {@link ChaincodeStub} of a single simulated transaction. Like the peer it
+ * reads committed state only, a transaction does not see its own writes, and
+ * records every read version and range read for validation at commit.
+ */
+public final class SimulatedStub implements ChaincodeStub {
+
+    private static final String COMPOSITE_KEY_NAMESPACE = "\u0000";
+
+    private final SimulatedLedger ledger;
+    private final String txId;
+    private final String function;
+    private final Instant timestamp;
+    private final byte[] creator;
+    private final Map<String, byte[]> transientData;
+    private final Map<String, Long> readSet = new LinkedHashMap<>();
+    private final List<SimulatedTransaction.RangeRead> rangeReads = new ArrayList<>();
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+    private final Map<String, Map<String, byte[]>> privateWriteSet = new LinkedHashMap<>();
+    private boolean paginated;
+    private String eventName;
+    private byte[] eventPayload;
+
+    SimulatedStub(SimulatedLedger ledger, String txId, String function, Instant timestamp, byte[] creator, Map<String, byte[]> transientData) {
+        this.ledger = ledger;
+        this.txId = txId;
+        this.function = function;
+        this.timestamp = timestamp;
+        this.creator = creator;
+        this.transientData = transientData;
+    }
+
+    static boolean isCompositeKey(String key) {
+        return key.startsWith(COMPOSITE_KEY_NAMESPACE);
+    }
+
+    <T> SimulatedTransaction<T> toTransaction(T result, RuntimeException failure) {
+        if (failure == null && paginated && !(writeSet.isEmpty() && privateWriteSet.isEmpty())) {
+            failure = new IllegalStateException("Paginated queries are supported only in a read-only transaction");
+        }
+        return new SimulatedTransaction<>(txId, function, result, failure, readSet, rangeReads, writeSet,
+                privateWriteSet, eventName, eventPayload);
+    }
+
+    // ----------------- Transaction metadata -------------------
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.singletonList(function.getBytes(UTF_8));
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.singletonList(function);
+    }
+
+    @Override
+    public String getFunction() {
+        return function;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return SimulatedLedger.CHANNEL;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return creator;
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return transientData;
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        throw new UnsupportedOperationException("The simulator does not create signed proposals");
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        throw new UnsupportedOperationException("The simulator runs a single chaincode");
+    }
+
+    // ----------------- Public state -------------------
+
+    @Override
+    public byte[] getState(String key) {
+        SimulatedLedger.Versioned versioned = ledger.read(key);
+        readSet.putIfAbsent(key, SimulatedLedger.versionOf(versioned));
+        return versioned == null ? new byte[0] : versioned.value;
+    }
+
+    @Override
+    public String getStringState(String key) {
+        return new String(getState(key), UTF_8);
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        validateKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("The value of " + key + " must not be null");
+        }
+        writeSet.put(key, value);
+    }
+
+    @Override
+    public void putStringState(String key, String value) {
+        putState(key, value.getBytes(UTF_8));
+    }
+
+    @Override
+    public void delState(String key) {
+        validateKey(key);
+        writeSet.put(key, null);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        return null;
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        throw new UnsupportedOperationException("The simulator has no key level endorsement");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return rangeQuery(startKey, endKey, false);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return page(ledger.range(start(startKey, bookmark), endKey, false), pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        String prefix = isCompositeKey(compositeKey) ? compositeKey : new CompositeKey(compositeKey).toString();
+        return rangeQuery(prefix, prefix + SimulatedLedger.MAX_UNICODE_RUNE, true);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize, String bookmark) {
+        String prefix = compositeKey.toString();
+        return page(ledger.range(start(prefix, bookmark), prefix + SimulatedLedger.MAX_UNICODE_RUNE, true), pageSize);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB, the simulator models LevelDB");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB, the simulator models LevelDB");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        throw new UnsupportedOperationException("The simulator keeps no history");
+    }
+
+    // ----------------- Private data -------------------
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        SimulatedLedger.Versioned versioned = ledger.readPrivate(collection, key);
+        return versioned == null ? new byte[0] : versioned.value;
+    }
+
+    public byte[] getPrivateDataHash(String collection, String key) {
+        SimulatedLedger.Versioned versioned = ledger.readPrivate(collection, key);
+        if (versioned == null) {
+            return new byte[0];
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(versioned.value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        return null;
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        validateKey(key);
+        privateWriteSet.computeIfAbsent(collection, c -> new LinkedHashMap<>()).put(key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        throw new UnsupportedOperationException("The simulator has no key level endorsement");
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        validateKey(key);
+        privateWriteSet.computeIfAbsent(collection, c -> new LinkedHashMap<>()).put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        return new Results(ledger.rangePrivate(collection, startKey, endKey, false), null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        String prefix = isCompositeKey(compositeKey) ? compositeKey : new CompositeKey(compositeKey).toString();
+        return new Results(ledger.rangePrivate(collection, prefix, prefix + SimulatedLedger.MAX_UNICODE_RUNE, true), null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        return getPrivateDataByPartialCompositeKey(collection, compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB, the simulator models LevelDB");
+    }
+
+    // ----------------- Events -------------------
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("The event name must not be empty");
+        }
+        this.eventName = name;
+        this.eventPayload = payload;
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        if (eventName == null) {
+            return null;
+        }
+        return ChaincodeEvent.newBuilder()
+                .setEventName(eventName)
+                .setTxId(txId)
+                .setPayload(ByteString.copyFrom(eventPayload == null ? new byte[0] : eventPayload))
+                .build();
+    }
+
+    // ----------------- Helpers -------------------
+
+    private static void validateKey(String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("The key must not be empty");
+        }
+    }
+
+    private static String start(String startKey, String bookmark) {
+        return bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+    }
+
+    private QueryResultsIterator<KeyValue> rangeQuery(String startKey, String endKey, boolean composite) {
+        SimulatedTransaction.RangeRead rangeRead = new SimulatedTransaction.RangeRead(startKey, endKey, composite,
+                new ArrayList<>(), new ArrayList<>());
+        rangeReads.add(rangeRead);
+        return new Results(ledger.range(startKey, endKey, composite), rangeRead);
+    }
+
+    private QueryResultsIteratorWithMetadata<KeyValue> page(List<Map.Entry<String, SimulatedLedger.Versioned>> entries, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size has to be positive");
+        }
+        paginated = true;
+        List<Map.Entry<String, SimulatedLedger.Versioned>> page = entries.subList(0, Math.min(pageSize, entries.size()));
+        String bookmark = entries.size() > pageSize ? entries.get(pageSize).getKey() : "";
+        QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(page.size())
+                .setBookmark(bookmark)
+                .build();
+        return new Results(page, null) {
+            @Override
+            public QueryResponseMetadata getMetadata() {
+                return metadata;
+            }
+        };
+    }
+
+    /**
+     * Iterator over a snapshot of a range, recording what the transaction
+     * actually consumed when it belongs to a validated range read.
+     */
+    private static class Results implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<Map.Entry<String, SimulatedLedger.Versioned>> entries;
+        private final SimulatedTransaction.RangeRead rangeRead;
+
+        Results(List<Map.Entry<String, SimulatedLedger.Versioned>> entries, SimulatedTransaction.RangeRead rangeRead) {
+            this.entries = entries;
+            this.rangeRead = rangeRead;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return null;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return new Iterator<KeyValue>() {
+
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    boolean hasNext = next < entries.size();
+                    if (!hasNext && rangeRead != null) {
+                        rangeRead.exhausted();
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public KeyValue next() {
+                    if (next >= entries.size()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, SimulatedLedger.Versioned> entry = entries.get(next++);
+                    if (rangeRead != null) {
+                        rangeRead.read(entry.getKey(), entry.getValue().version);
+                    }
+                    return new SimulatedKeyValue(entry.getKey(), entry.getValue().value);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class SimulatedKeyValue implements KeyValue {
+
+        private final String key;
+        private final byte[] value;
+
+        SimulatedKeyValue(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+    }
+}
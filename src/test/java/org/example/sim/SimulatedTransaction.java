@@ -0,0 +1,212 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.example.sim;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An endorsed transaction: the result of the transaction function together
+ * with the read set, range reads and write set it produced.
+ */
+public final class SimulatedTransaction<T> {
+
+    public enum Status {
+        /** Endorsed, waiting to be committed. */
+        ENDORSED,
+        /** The transaction function threw, nothing is submitted. */
+        ENDORSEMENT_FAILURE,
+        VALID,
+        /** A key read during endorsement was written before this transaction committed. */
+        MVCC_READ_CONFLICT,
+        /** A range read during endorsement returns different keys at commit time. */
+        PHANTOM_READ_CONFLICT
+    }
+
+    private final String txId;
+    private final String function;
+    private final T result;
+    private final RuntimeException failure;
+    private final Map<String, Long> readSet;
+    private final List<RangeRead> rangeReads;
+    private final Map<String, byte[]> writeSet;
+    private final Map<String, Map<String, byte[]>> privateWriteSet;
+    private final String eventName;
+    private final byte[] eventPayload;
+    private volatile Status status;
+    private volatile long blockNumber;
+    private volatile int txIndex;
+
+    SimulatedTransaction(String txId, String function, T result, RuntimeException failure,
+            Map<String, Long> readSet, List<RangeRead> rangeReads, Map<String, byte[]> writeSet,
+            Map<String, Map<String, byte[]>> privateWriteSet, String eventName, byte[] eventPayload) {
+        this.txId = txId;
+        this.function = function;
+        this.result = result;
+        this.failure = failure;
+        this.readSet = Collections.unmodifiableMap(readSet);
+        this.rangeReads = Collections.unmodifiableList(rangeReads);
+        this.writeSet = Collections.unmodifiableMap(writeSet);
+        this.privateWriteSet = Collections.unmodifiableMap(privateWriteSet);
+        this.eventName = eventName;
+        this.eventPayload = eventPayload;
+        this.status = failure == null ? Status.ENDORSED : Status.ENDORSEMENT_FAILURE;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * The value returned by the transaction function, rethrowing its failure
+     * if endorsement failed.
+     */
+    public T getResult() {
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public Map<String, Long> getReadSet() {
+        return readSet;
+    }
+
+    public List<RangeRead> getRangeReads() {
+        return rangeReads;
+    }
+
+    public Map<String, byte[]> getWriteSet() {
+        return writeSet;
+    }
+
+    public Map<String, Map<String, byte[]>> getPrivateWriteSet() {
+        return privateWriteSet;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public byte[] getEventPayload() {
+        return eventPayload;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * @return the position of the transaction in its block
+     */
+    public int getTxIndex() {
+        return txIndex;
+    }
+
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+
+    public boolean isConflict() {
+        return status == Status.MVCC_READ_CONFLICT || status == Status.PHANTOM_READ_CONFLICT;
+    }
+
+    void setStatus(Status status, long blockNumber, int txIndex) {
+        this.status = status;
+        this.blockNumber = blockNumber;
+        this.txIndex = txIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedTransaction [txId=" + txId + ", function=" + function + ", status=" + status
+                + ", reads=" + readSet.size() + ", rangeReads=" + rangeReads.size() + ", writes=" + writeSet.size() + "]";
+    }
+
+    /**
+     * Keys and versions returned by a range query, up to where the transaction
+     * stopped iterating. Only that part of the range is validated at commit.
+     */
+    public static final class RangeRead {
+
+        private final String startKey;
+        private final String endKey;
+        private final boolean composite;
+        private final List<String> keys;
+        private final List<Long> versions;
+        private boolean exhausted;
+
+        RangeRead(String startKey, String endKey, boolean composite, List<String> keys, List<Long> versions) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+            this.composite = composite;
+            this.keys = keys;
+            this.versions = versions;
+        }
+
+        public String getStartKey() {
+            return startKey;
+        }
+
+        public String getEndKey() {
+            return endKey;
+        }
+
+        public boolean isComposite() {
+            return composite;
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        void read(String key, long version) {
+            keys.add(key);
+            versions.add(version);
+        }
+
+        void exhausted() {
+            exhausted = true;
+        }
+
+        boolean matches(List<Map.Entry<String, SimulatedLedger.Versioned>> current) {
+            int i = 0;
+            for (Map.Entry<String, SimulatedLedger.Versioned> entry : current) {
+                if (i == keys.size()) {
+                    // anything past the last key read only matters if the range was read to its end
+                    return !exhausted;
+                }
+                if (!entry.getKey().equals(keys.get(i)) || entry.getValue().version != versions.get(i)) {
+                    return false;
+                }
+                i++;
+            }
+            return i == keys.size();
+        }
+    }
+}